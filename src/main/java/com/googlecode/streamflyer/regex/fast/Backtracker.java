@@ -0,0 +1,464 @@
+/**
+ * Copyright (C) 2011 rwoo@gmx.de
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.googlecode.streamflyer.regex.fast;
+
+import java.util.Arrays;
+
+/**
+ * Runs a {@link Program} by backtracking over an explicit stack instead of
+ * the call stack of the nodes. {@link Pattern.Backtrack} uses it if the nodes
+ * would recurse too deep.
+ * <p>
+ * The paths of the program are tried depth first in the order of their
+ * priority, i.e. in the order the backtracking nodes try them. So the results
+ * are the same as the results of the nodes if the program is
+ * {@link Program#exact} and {@link Program#exactGroups}. This includes the
+ * values of {@link Matcher#hitEnd()} and {@link Matcher#requireEnd()}.
+ * <p>
+ * The stack holds two kinds of entries of three ints each: a choice point with
+ * the instruction to continue at and a range of positions, and the old value
+ * of a register that is restored when the paths after it have failed. A
+ * register is saved once per choice point only, and no choice point is pushed
+ * for an alternative whose first char does not match. The native stack does
+ * not grow with the length of the match, and the stack and the registers are
+ * reused by the next match.
+ * <p>
+ * A greedy repetition of a single char takes all the chars it can at once
+ * like {@link Pattern.Curly} does. A single choice point then gives them back
+ * one by one. This is not done if the memo is used, because the repetition
+ * would read the same chars again each time it is reached at another
+ * position.
+ * <p>
+ * If the program is {@link Program#ambiguous}, a memo records each
+ * {@link Program#SPLIT} and position that has been visited. There are no
+ * cycles that do not consume a char, so a path that reaches a visited split
+ * at the same position has failed before and fails again. This bounds the
+ * time of a match by the number of splits times the length of the window.
+ * Only the path of an {@link Program#EMPTY_CHECK} depends on the registers,
+ * so a split is not recorded while the body of an enclosing loop has been
+ * entered at the current position.
+ * <p>
+ * The backtracker is not thread-safe. Each {@link Matcher} has its own one.
+ *
+ * @author rwoo
+ *
+ * @since 18.10.2026
+ */
+final class Backtracker {
+
+	final Program program;
+
+	/**
+	 * The number of elements of {@link Matcher#groups}. The locals follow the
+	 * groups in {@link #regs}.
+	 */
+	private final int groupCount;
+
+	/**
+	 * The groups and the locals of the current path.
+	 */
+	private int[] regs;
+
+	/**
+	 * The generation in which each register has been saved last. The
+	 * generation changes whenever a choice point is pushed or resumed.
+	 */
+	private long[] saved;
+
+	private long generation;
+
+	/**
+	 * The groups and the locals that have been saved by
+	 * {@link #save(Matcher)}.
+	 */
+	private int[] snapshot;
+
+	/**
+	 * True for each {@link Program#SPLIT} that starts a greedy repetition of
+	 * a single BMP char without a maximum.
+	 */
+	private final boolean[] star;
+
+	/**
+	 * The choice points and the saved registers. A choice point is the
+	 * instruction, the lowest position and the position to continue at next.
+	 * A saved register is <code>-1 - index</code> and the old value.
+	 */
+	private int[] stack = new int[96];
+
+	/**
+	 * The maximum length of {@link #memo}. A larger window is matched without
+	 * the memo.
+	 */
+	private static final int MAX_MEMO_LENGTH = 1 << 20;
+
+	/**
+	 * The index of each {@link Program#SPLIT} in the memo, -1 for the other
+	 * instructions, or null if the program is not
+	 * {@link Program#ambiguous}.
+	 */
+	private final int[] memoIndex;
+
+	private int memoCount;
+
+	/**
+	 * The register of the loop of each bit of {@link Program#scope}.
+	 */
+	private final int[] loopRegs = new int[64];
+
+	/**
+	 * A bit for each split and each position of the window. The bits of a
+	 * position follow the bits of the previous position.
+	 */
+	private long[] memo = new long[0];
+
+	Backtracker(Program program, int groupCount) {
+		this.program = program;
+		this.groupCount = groupCount;
+		this.regs = new int[groupCount];
+		this.saved = new long[groupCount];
+		this.star = new boolean[program.size];
+		for (int pc = 0; pc + 2 < program.size; pc++) {
+			star[pc] = program.op[pc] == Program.SPLIT
+					&& program.arg[pc] == pc + 1
+					&& program.arg2[pc] == pc + 3
+					&& (program.op[pc + 1] == Program.CHAR
+					|| program.op[pc + 1] == Program.PROPERTY
+					&& program.bmp[pc + 1])
+					&& program.op[pc + 2] == Program.JUMP
+					&& program.arg[pc + 2] == pc;
+		}
+		if (program.ambiguous) {
+			memoIndex = new int[program.size];
+			for (int pc = 0; pc < program.size; pc++) {
+				memoIndex[pc] = program.op[pc] == Program.SPLIT ? memoCount++
+						: -1;
+				if (program.loop[pc] != 0) {
+					loopRegs[Long.numberOfTrailingZeros(program.loop[pc])] =
+							groupCount + program.arg[pc];
+				}
+			}
+		} else {
+			memoIndex = null;
+		}
+	}
+
+	/**
+	 * Matches the program at the given position like the nodes of the
+	 * pattern do. Sets the groups, the end of the match and the flags of the
+	 * matcher.
+	 */
+	boolean match(Matcher matcher, int i, CharSequence seq) {
+		Program program = this.program;
+		int[] op = program.op;
+		int[] arg = program.arg;
+		int groupCount = this.groupCount;
+		int[] locals = matcher.locals;
+		if (regs.length != groupCount + locals.length) {
+			regs = new int[groupCount + locals.length];
+			saved = new long[regs.length];
+		}
+		int[] regs = this.regs;
+		long[] saved = this.saved;
+		long generation = ++this.generation;
+		System.arraycopy(matcher.groups, 0, regs, 0, groupCount);
+		System.arraycopy(locals, 0, regs, groupCount, locals.length);
+		int[] stack = this.stack;
+		int top = 0;
+		int to = matcher.to;
+		int[] memoIndex = this.memoIndex;
+		long[] memo = null;
+		if (memoIndex != null) {
+			long length = ((long) (to - i + 1) * memoCount + 63) >>> 6;
+			if (length <= MAX_MEMO_LENGTH) {
+				if (this.memo.length < length) {
+					this.memo = new long[(int) Math.min(MAX_MEMO_LENGTH,
+							Math.max(length, this.memo.length * 2L))];
+				}
+				memo = this.memo;
+			}
+		}
+		// the memo is cleared up to this word after the match
+		int memoEnd = 0;
+		int pc = 0;
+		int pos = i;
+		for (;;) {
+			switch (op[pc]) {
+			case Program.CHAR:
+				if (pos >= to) {
+					matcher.hitEnd = true;
+				} else if (seq.charAt(pos) == arg[pc]) {
+					pc++;
+					pos++;
+					continue;
+				}
+				break;
+			case Program.PROPERTY:
+				if (pos >= to) {
+					matcher.hitEnd = true;
+				} else if (program.bmp[pc]) {
+					if (program.property[pc].isSatisfiedBy(seq.charAt(pos))) {
+						pc++;
+						pos++;
+						continue;
+					}
+				} else {
+					int ch = Character.codePointAt(seq, pos);
+					if (!program.property[pc].isSatisfiedBy(ch)) {
+						break;
+					}
+					int end = pos + Character.charCount(ch);
+					if (arg[pc] == 1 && end > to) {
+						// a slice must not end after the end
+						matcher.hitEnd = true;
+						break;
+					}
+					pc++;
+					pos = end;
+					continue;
+				}
+				break;
+			case Program.SPLIT:
+				if (memo != null && !entered(pc, pos)) {
+					int bit = (pos - i) * memoCount + memoIndex[pc];
+					if ((memo[bit >>> 6] & 1L << bit) != 0) {
+						// visited before
+						break;
+					}
+					memo[bit >>> 6] |= 1L << bit;
+					memoEnd = Math.max(memoEnd, (bit >>> 6) + 1);
+				}
+				if (top + 3 > stack.length) {
+					stack = grow();
+				}
+				if (star[pc] && memo == null) {
+					// with the memo each position of the repetition is a
+					// split of its own, so the chars are not read again
+					int end = star(pc + 1, pos, to, seq);
+					if (end == to) {
+						matcher.hitEnd = true;
+					}
+					if (end > pos) {
+						stack[top++] = program.arg2[pc];
+						stack[top++] = pos;
+						stack[top++] = end - 1;
+						generation++;
+					}
+					pc = program.arg2[pc];
+					pos = end;
+					continue;
+				}
+				if (fails(arg[pc], pos, to, seq)) {
+					pc = program.arg2[pc];
+					continue;
+				}
+				if (!fails(program.arg2[pc], pos, to, seq)) {
+					stack[top++] = program.arg2[pc];
+					stack[top++] = pos;
+					stack[top++] = pos;
+					generation++;
+				}
+				pc = arg[pc];
+				continue;
+			case Program.JUMP:
+				pc = arg[pc];
+				continue;
+			case Program.GROUP_HEAD:
+				int local = groupCount + arg[pc];
+				if (top > 0 && saved[local] != generation) {
+					if (top + 3 > stack.length) {
+						stack = grow();
+					}
+					stack[top++] = -1 - local;
+					stack[top++] = regs[local];
+					top++;
+					saved[local] = generation;
+				}
+				regs[local] = pos;
+				pc++;
+				continue;
+			case Program.GROUP_TAIL:
+				int groupIndex = program.arg2[pc];
+				if (groupIndex > 0) {
+					if (top > 0 && saved[groupIndex] != generation) {
+						if (top + 6 > stack.length) {
+							stack = grow();
+						}
+						stack[top++] = -1 - groupIndex;
+						stack[top++] = regs[groupIndex];
+						top++;
+						stack[top++] = -2 - groupIndex;
+						stack[top++] = regs[groupIndex + 1];
+						top++;
+						saved[groupIndex] = generation;
+					}
+					regs[groupIndex] = regs[groupCount + arg[pc]];
+					regs[groupIndex + 1] = pos;
+				}
+				pc++;
+				continue;
+			case Program.EMPTY_CHECK:
+				pc = regs[groupCount + arg[pc]] == pos ? program.arg2[pc]
+						: pc + 1;
+				continue;
+			case Program.ASSERT:
+				int result = PikeVm.check(matcher, seq, program.node[pc], pos);
+				if ((result & PikeVm.HIT_END) != 0) {
+					matcher.hitEnd = true;
+					matcher.requireEnd |= (result & PikeVm.REQUIRE_END) != 0;
+				}
+				if ((result & PikeVm.PASS) != 0) {
+					pc++;
+					continue;
+				}
+				break;
+			default:
+				if (arg[pc] == 1 && matcher.acceptMode == Matcher.ENDANCHOR
+						&& pos != to) {
+					break;
+				}
+				this.generation = generation;
+				if (memo != null) {
+					Arrays.fill(memo, 0, memoEnd, 0);
+				}
+				System.arraycopy(regs, 0, matcher.groups, 0, groupCount);
+				matcher.last = pos;
+				matcher.groups[0] = matcher.first;
+				matcher.groups[1] = matcher.last;
+				return true;
+			}
+
+			// the path has failed, continue at the last choice point
+			for (;;) {
+				if (top == 0) {
+					this.generation = generation;
+					if (memo != null) {
+						Arrays.fill(memo, 0, memoEnd, 0);
+					}
+					return false;
+				}
+				int entry = stack[top - 3];
+				if (entry >= 0) {
+					int min = stack[top - 2];
+					pos = stack[top - 1];
+					// skip the chars the next instruction fails after
+					while (pos > min && fails(entry, pos, to, seq)) {
+						pos--;
+					}
+					if (pos > min) {
+						// give back one more char next time
+						stack[top - 1] = pos - 1;
+					} else {
+						top -= 3;
+						if (fails(entry, pos, to, seq)) {
+							continue;
+						}
+					}
+					pc = entry;
+					generation++;
+					break;
+				}
+				regs[-1 - entry] = stack[top - 2];
+				top -= 3;
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the body of a loop that encloses the given instruction
+	 * has been entered at the given position.
+	 */
+	private boolean entered(int pc, int pos) {
+		long loops = program.scope[pc];
+		while (loops != 0) {
+			if (regs[loopRegs[Long.numberOfTrailingZeros(loops)]] == pos) {
+				return true;
+			}
+			loops &= loops - 1;
+		}
+		return false;
+	}
+
+	/**
+	 * Saves the groups and the locals of the given matcher.
+	 */
+	void save(Matcher matcher) {
+		int length = groupCount + matcher.locals.length;
+		if (snapshot == null || snapshot.length != length) {
+			snapshot = new int[length];
+		}
+		System.arraycopy(matcher.groups, 0, snapshot, 0, groupCount);
+		System.arraycopy(matcher.locals, 0, snapshot, groupCount,
+				matcher.locals.length);
+	}
+
+	/**
+	 * Restores the groups and the locals of the given matcher that have been
+	 * saved by {@link #save(Matcher)}.
+	 */
+	void restore(Matcher matcher) {
+		System.arraycopy(snapshot, 0, matcher.groups, 0, groupCount);
+		System.arraycopy(snapshot, groupCount, matcher.locals, 0,
+				matcher.locals.length);
+	}
+
+	/**
+	 * Returns true if the given instruction fails at the given position
+	 * without hitting the end.
+	 */
+	private boolean fails(int pc, int pos, int to, CharSequence seq) {
+		if (pos >= to) {
+			return false;
+		} else if (program.op[pc] == Program.CHAR) {
+			return seq.charAt(pos) != program.arg[pc];
+		} else if (program.op[pc] == Program.PROPERTY && program.bmp[pc]) {
+			return !program.property[pc].isSatisfiedBy(seq.charAt(pos));
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the position after the chars from the given position on that
+	 * match the given {@link Program#CHAR} or {@link Program#PROPERTY}
+	 * instruction.
+	 */
+	private int star(int pc, int pos, int to, CharSequence seq) {
+		if (program.op[pc] == Program.CHAR) {
+			char ch = (char) program.arg[pc];
+			while (pos < to && seq.charAt(pos) == ch) {
+				pos++;
+			}
+		} else {
+			Pattern.CharProperty property = program.property[pc];
+			while (pos < to && property.isSatisfiedBy(seq.charAt(pos))) {
+				pos++;
+			}
+		}
+		return pos;
+	}
+
+	/**
+	 * Doubles the size of the stack.
+	 */
+	private int[] grow() {
+		int[] grown = new int[stack.length * 2];
+		System.arraycopy(stack, 0, grown, 0, stack.length);
+		stack = grown;
+		return grown;
+	}
+}
@@ -17,6 +17,8 @@
  */
 package com.googlecode.streamflyer.regex.fast;
 
+import com.googlecode.streamflyer.core.AfterModification;
+import com.googlecode.streamflyer.regex.MatchProcessor;
 import com.googlecode.streamflyer.regex.OnStreamStandardMatcher;
 import com.googlecode.streamflyer.regex.RegexModifier;
 import com.googlecode.streamflyer.regex.ReplacingProcessor;
@@ -40,24 +42,196 @@ Reader modifyingReader = new ModifyingReader(originalReader, myModifier);
 // use the modifying reader instead of the original reader
 String output = IOUtils.toString(modifyingReader);
 assertEquals("modify stream", output);</pre></code>
+ * <p>
+ * The patterns are taken from {@link PatternCache#getDefault()}, so creating
+ * many modifiers with the same regular expression compiles it only once.
+ * {@link #create(String, int, String, PatternCache)} takes the patterns from
+ * another cache.
+ * <p>
+ * The matcher is leased from the pattern by {@link Pattern#lease()} and
+ * released when the end of the stream has been modified, so the next
+ * modifier for the same pattern reuses it.
+ * <p>
+ * The replacement string is parsed once into a {@link Replacement} when the
+ * modifier is created. It is parsed like {@link ReplacingProcessor} parses
+ * it, see {@link Replacement#compileLikeReplacingProcessor(String)}. A
+ * replacement that has been compiled by
+ * {@link Replacement#compile(String, int)} can be passed to
+ * {@link #FastRegexModifier(Pattern, Replacement, int, int)} to replace like
+ * {@link Matcher#appendReplacement(StringBuffer, String)} instead. If the
+ * replacement does not refer to a capturing group, the pattern is compiled
+ * with {@link Pattern#BOUNDS_ONLY}.
  * 
  * @author rwoo
  * 
  */
 public class FastRegexModifier extends RegexModifier {
 
+	/**
+	 * True if the matcher has hit the end in the last call of
+	 * {@link #modify(StringBuilder, int, boolean)} and more input has been
+	 * requested.
+	 */
+	private boolean continueMatch = false;
+
+	/**
+	 * The pattern the matcher is leased from, or null if the subclass has
+	 * initialized the matcher itself.
+	 */
+	private Pattern pattern;
+
+	/**
+	 * Used by subclasses that call
+	 * {@link #init(com.googlecode.streamflyer.regex.OnStreamMatcher, com.googlecode.streamflyer.regex.MatchProcessor, int, int)}
+	 * themselves.
+	 */
+	protected FastRegexModifier() {
+		super();
+	}
+
 	public FastRegexModifier(String regex, int flags, String replacement) {
 		this(regex, flags, replacement, 0, 2048);
 	}
 
 	public FastRegexModifier(String regex, int flags, String replacement,
 			int minimumLengthOfLookBehind, int newNumberOfChars) {
+		this(PatternCache.getDefault(), regex, flags, Replacement
+				.compileLikeReplacingProcessor(replacement),
+				minimumLengthOfLookBehind, newNumberOfChars);
+	}
+
+	private FastRegexModifier(PatternCache cache, String regex, int flags,
+			Replacement replacement, int minimumLengthOfLookBehind,
+			int newNumberOfChars) {
+		this(compile(cache, regex, flags, replacement), replacement,
+				minimumLengthOfLookBehind, newNumberOfChars);
+	}
+
+	/**
+	 * @param pattern
+	 *            the compiled pattern. The pattern can be shared with other
+	 *            modifiers.
+	 */
+	public FastRegexModifier(Pattern pattern, String replacement,
+			int minimumLengthOfLookBehind, int newNumberOfChars) {
+		this(pattern, Replacement.compileLikeReplacingProcessor(replacement),
+				minimumLengthOfLookBehind, newNumberOfChars);
+	}
+
+	/**
+	 * @param pattern
+	 *            the compiled pattern. The pattern can be shared with other
+	 *            modifiers.
+	 * @param replacement
+	 *            the compiled replacement. The replacement can be shared with
+	 *            other modifiers.
+	 */
+	public FastRegexModifier(Pattern pattern, Replacement replacement,
+			int minimumLengthOfLookBehind, int newNumberOfChars) {
 		super();
 
-		Matcher jdkMatcher = Pattern.compile(regex, flags).matcher("");
+		init(pattern, new ReplacementProcessor(replacement),
+				minimumLengthOfLookBehind, newNumberOfChars);
+	}
+
+	/**
+	 * Returns a modifier that takes its pattern from the given cache.
+	 * 
+	 * @param cache
+	 *            the cache, {@link PatternCache#getDefault()} if null.
+	 */
+	public static FastRegexModifier create(String regex, int flags,
+			String replacement, PatternCache cache) {
+		if (cache == null) {
+			cache = PatternCache.getDefault();
+		}
+		return new FastRegexModifier(cache, regex, flags, Replacement
+				.compileLikeReplacingProcessor(replacement), 0, 2048);
+	}
+
+	/**
+	 * Returns the pattern for the given regular expression. If the
+	 * replacement does not refer to a capturing group and the pattern does
+	 * not contain a back reference, the pattern is compiled with
+	 * {@link Pattern#BOUNDS_ONLY}, so the matcher does not track the groups.
+	 * Only the pattern that is returned is compiled and cached.
+	 */
+	private static Pattern compile(PatternCache cache, String regex,
+			int flags, Replacement replacement) {
+		if (replacement.hasCapturingGroupReferences()) {
+			return cache.compile(regex, flags);
+		}
+		try {
+			return cache.compile(regex, flags | Pattern.BOUNDS_ONLY);
+		} catch (PatternSyntaxException e) {
+			// the pattern contains a back reference, or a syntax error that
+			// is thrown again; nothing has been cached
+			return cache.compile(regex, flags);
+		}
+	}
+
+	/**
+	 * Initializes the modifier with a matcher that is leased from the given
+	 * pattern.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the pattern is null
+	 */
+	protected void init(Pattern pattern, MatchProcessor matchProcessor,
+			int minimumLengthOfLookBehind, int newNumberOfChars) {
+		if (pattern == null) {
+			throw new IllegalArgumentException("pattern must not be null");
+		}
+		this.pattern = pattern;
+		init(new OnStreamExtendedMatcher(lease()), matchProcessor,
+				minimumLengthOfLookBehind, newNumberOfChars);
+	}
+
+	private Matcher lease() {
+		Matcher jdkMatcher = pattern.lease();
 		jdkMatcher.useTransparentBounds(true);
-		init(new OnStreamExtendedMatcher(jdkMatcher), new ReplacingProcessor(
-				replacement), minimumLengthOfLookBehind, newNumberOfChars);
+		return jdkMatcher;
+	}
+
+	/**
+	 * If the matcher hits the end, the next call continues the match with the
+	 * fetched input instead of matching the buffered chars again.
+	 * 
+	 * @see com.googlecode.streamflyer.regex.RegexModifier#modify(java.lang.StringBuilder,
+	 *      int, boolean)
+	 */
+	@Override
+	public AfterModification modify(StringBuilder characterBuffer,
+			int firstModifiableCharacterInBuffer, boolean endOfStreamHit) {
+
+		// a subclass may have initialized another matcher
+		OnStreamExtendedMatcher onStreamMatcher = null;
+		if (matcher instanceof OnStreamExtendedMatcher) {
+			onStreamMatcher = (OnStreamExtendedMatcher) matcher;
+			if (onStreamMatcher.matcher == null) {
+				// modified again after the matcher has been released
+				onStreamMatcher.matcher = lease();
+			}
+			onStreamMatcher.continueNextFind(continueMatch);
+		}
+
+		AfterModification afterModification = super.modify(characterBuffer,
+				firstModifiableCharacterInBuffer, endOfStreamHit);
+
+		// more input is fetched if the matcher has hit the end (the chars
+		// before the position the matcher stopped at are skipped)
+		continueMatch = !endOfStreamHit
+				&& matcher.hitEnd()
+				&& !afterModification.isModifyAgainImmediately()
+				&& afterModification.getNumberOfCharactersToSkip() == matcher
+						.lastFrom() - firstModifiableCharacterInBuffer;
+
+		if (pattern != null && onStreamMatcher != null && endOfStreamHit
+				&& !afterModification.isModifyAgainImmediately()) {
+			pattern.release(onStreamMatcher.matcher);
+			onStreamMatcher.matcher = null;
+		}
+		return afterModification;
 	}
 
 }
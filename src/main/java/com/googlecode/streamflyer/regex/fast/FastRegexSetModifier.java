@@ -0,0 +1,465 @@
+/**
+ * Copyright (C) 2011 rwoo@gmx.de
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.googlecode.streamflyer.regex.fast;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.googlecode.streamflyer.regex.MatchProcessor;
+import com.googlecode.streamflyer.regex.MatchProcessorResult;
+
+/**
+ * Applies an ordered list of rules in a single pass over the stream. Each
+ * rule is a regular expression with its flags and its replacement.
+ * <p>
+ * The rules are compiled into a single pattern that is an alternation of the
+ * rules in the given order. So the leftmost match of any rule is replaced. If
+ * several rules match at the same position, the first of these rules wins,
+ * like the first alternative of an alternation does. Compared to a chain of
+ * {@link FastRegexModifier}s, the stream is buffered and scanned once
+ * instead of once per rule.
+ * <p>
+ * A replacement refers to the groups of its own rule, i.e. <code>$1</code> is
+ * the first group of the rule. The back references of a rule are numbered
+ * the same way. A back reference to a group that follows the reference is not
+ * supported. The flags {@link Pattern#CANON_EQ} and
+ * {@link Pattern#LINEAR_TIME} must be the same for all rules, because they
+ * apply to the combined pattern. The minimum length of the look-behind
+ * applies to all rules, so it must be sufficient for each rule that looks
+ * behind.
+ * <p>
+ * <code><pre class="prettyprint lang-java">List&lt;Rule&gt; rules = new ArrayList&lt;Rule&gt;();
+rules.add(new Rule("edit", 0, "modify"));
+rules.add(new Rule("(\\w+)@example\\.com", 0, "$1@example.org"));
+
+Modifier myModifier = new FastRegexSetModifier(rules);
+Reader modifyingReader = new ModifyingReader(originalReader, myModifier);</pre></code>
+ *
+ * @author rwoo
+ *
+ * @since 18.10.2026
+ */
+public class FastRegexSetModifier extends FastRegexModifier {
+
+	/**
+	 * A regular expression, its flags and its replacement.
+	 */
+	public static class Rule {
+
+		private final String regex;
+
+		private final int flags;
+
+		private final String replacement;
+
+		/**
+		 * @param regex
+		 *            the regular expression.
+		 * @param flags
+		 *            the flags as used by {@link Pattern#compile(String, int)}.
+		 * @param replacement
+		 *            the replacement that may refer to the groups of the
+		 *            regular expression.
+		 */
+		public Rule(String regex, int flags, String replacement) {
+			super();
+			this.regex = regex;
+			this.flags = flags;
+			this.replacement = replacement;
+		}
+
+		public String getRegex() {
+			return regex;
+		}
+
+		public int getFlags() {
+			return flags;
+		}
+
+		public String getReplacement() {
+			return replacement;
+		}
+	}
+
+	/**
+	 * The flags that are written as embedded flags, and the embedded flags.
+	 */
+	private static final int[] EMBEDDED_FLAGS = { Pattern.UNIX_LINES,
+			Pattern.CASE_INSENSITIVE, Pattern.COMMENTS, Pattern.MULTILINE,
+			Pattern.DOTALL, Pattern.UNICODE_CASE };
+
+	private static final String EMBEDDED_FLAG_CHARS = "dixmsu";
+
+	/**
+	 * The flags that cannot be embedded, so they must be the same for all
+	 * rules.
+	 */
+	private static final int COMMON_FLAGS = Pattern.CANON_EQ
+			| Pattern.LINEAR_TIME;
+
+	public FastRegexSetModifier(List<Rule> rules) {
+		this(rules, 0, 2048);
+	}
+
+	public FastRegexSetModifier(List<Rule> rules,
+			int minimumLengthOfLookBehind, int newNumberOfChars) {
+		super();
+
+		if (rules.isEmpty()) {
+			throw new IllegalArgumentException("rules must not be empty");
+		}
+
+		// the first group of each rule is the group around the rule
+		int[] groups = new int[rules.size()];
+		int[] groupCounts = new int[rules.size()];
+		MatchProcessor[] processors = new MatchProcessor[rules.size()];
+		int flags = rules.get(0).getFlags() & COMMON_FLAGS;
+		StringBuilder regex = new StringBuilder();
+		int group = 1;
+		for (int index = 0; index < rules.size(); index++) {
+			Rule rule = rules.get(index);
+			if ((rule.getFlags() & COMMON_FLAGS) != flags) {
+				throw new IllegalArgumentException("the flags CANON_EQ and "
+						+ "LINEAR_TIME must be the same for all rules");
+			}
+
+			// the rule must compile on its own; it is not cached because
+			// only the combined pattern is used
+			Pattern pattern = Pattern.compile(rule.getRegex(), rule
+					.getFlags());
+
+			groups[index] = group;
+			groupCounts[index] = pattern.capturingGroupCount - 1;
+			processors[index] = new ReplacementProcessor(rule.getReplacement());
+
+			if (index > 0) {
+				regex.append('|');
+			}
+			regex.append("((?");
+			for (int n = 0; n < EMBEDDED_FLAGS.length; n++) {
+				if ((rule.getFlags() & EMBEDDED_FLAGS[n]) != 0) {
+					regex.append(EMBEDDED_FLAG_CHARS.charAt(n));
+				}
+			}
+			regex.append(':');
+			if ((rule.getFlags() & Pattern.LITERAL) != 0) {
+				regex.append(Pattern.quote(rule.getRegex()));
+			} else {
+				regex.append(moveBackReferences(rule.getRegex(),
+						rule.getFlags(), group));
+			}
+			regex.append("))");
+			group += groupCounts[index] + 1;
+		}
+
+		Pattern pattern = PatternCache.getDefault().compile(regex.toString(),
+				flags);
+		if (pattern.capturingGroupCount != group) {
+			throw new IllegalArgumentException("cannot combine the rules: "
+					+ regex);
+		}
+		init(pattern, new RuleProcessor(groups, groupCounts, processors),
+				minimumLengthOfLookBehind, newNumberOfChars);
+	}
+
+	/**
+	 * Returns the given regular expression with the back references moved to
+	 * the groups after the given group. The back references are parsed like
+	 * {@link Pattern} does, and the moved back references are enclosed in
+	 * non-capturing groups so that following digits are not taken as part of
+	 * the group number.
+	 *
+	 * <p>
+	 * Embedded flags are tracked like {@link Pattern} tracks them, so that
+	 * whitespace and comments are skipped where {@link Pattern#COMMENTS} is
+	 * set: embedded flags that are followed by <code>)</code> apply to the
+	 * rest of the enclosing group, and embedded flags that are followed by
+	 * <code>:</code> apply to the group they start. If comments are
+	 * skipped at the end, a line separator is appended.
+	 *
+	 * @param flags
+	 *            the flags of the regular expression.
+	 * @param group
+	 *            the group that encloses the regular expression.
+	 */
+	static String moveBackReferences(String regex, int flags, int group) {
+		boolean comments = (flags & Pattern.COMMENTS) != 0;
+		StringBuilder result = new StringBuilder(regex.length() + 16);
+		int length = regex.length();
+		// the number of capturing groups that have been opened
+		int groups = 0;
+		// the flags to restore at the end of each open group
+		int[] savedFlags = new int[8];
+		int open = 0;
+		// the depth of nested char classes
+		int depth = 0;
+		// true if a ] is a literal because the class is still empty
+		boolean classStart = false;
+		int i = 0;
+		while (i < length) {
+			char ch = regex.charAt(i);
+			if (ch == '\\' && i + 1 < length) {
+				char next = regex.charAt(i + 1);
+				if (next == 'Q') {
+					int end = regex.indexOf("\\E", i + 2);
+					end = end < 0 ? length : end + 2;
+					result.append(regex, i, end);
+					i = end;
+				} else if (depth == 0 && next >= '1' && next <= '9') {
+					int ref = next - '0';
+					i += 2;
+					for (;;) {
+						int j = comments ? skipComments(regex, i, flags) : i;
+						if (j == length || regex.charAt(j) < '0'
+								|| regex.charAt(j) > '9'
+								|| ref * 10 + regex.charAt(j) - '0' > groups) {
+							break;
+						}
+						ref = ref * 10 + regex.charAt(j) - '0';
+						i = j + 1;
+					}
+					if (ref > groups) {
+						throw new IllegalArgumentException("back reference \\"
+								+ ref + " to a following group in " + regex);
+					}
+					result.append("(?:\\").append(group + ref).append(')');
+				} else {
+					result.append(ch).append(next);
+					i += 2;
+				}
+				classStart = false;
+				continue;
+			}
+			if (comments && ch == '#') {
+				int end = skipComments(regex, i, flags);
+				result.append(regex, i, end);
+				i = end;
+				continue;
+			}
+			result.append(ch);
+			i++;
+			if (comments && ASCII.isSpace(ch)) {
+				continue;
+			}
+			if (depth > 0) {
+				if (ch == '[') {
+					depth++;
+					classStart = true;
+				} else if (ch == ']' && !classStart) {
+					depth--;
+				} else if (ch != '^' || regex.charAt(i - 2) != '[') {
+					classStart = false;
+				}
+			} else if (ch == '[') {
+				depth++;
+				classStart = true;
+			} else if (ch == '(') {
+				if (open == savedFlags.length) {
+					savedFlags = Arrays.copyOf(savedFlags, open * 2);
+				}
+				savedFlags[open++] = flags;
+				int j = comments ? skipComments(regex, i, flags) : i;
+				if (j == length || regex.charAt(j) != '?') {
+					groups++;
+					continue;
+				}
+				// the embedded flags, if any
+				int embeddedFlags = flags;
+				boolean on = true;
+				for (j++; j < length; j++) {
+					if ((embeddedFlags & Pattern.COMMENTS) != 0) {
+						j = skipComments(regex, j, embeddedFlags);
+						if (j == length) {
+							break;
+						}
+					}
+					char flag = regex.charAt(j);
+					int n = EMBEDDED_FLAG_CHARS.indexOf(flag);
+					if (n >= 0) {
+						embeddedFlags = on ? embeddedFlags | EMBEDDED_FLAGS[n]
+								: embeddedFlags & ~EMBEDDED_FLAGS[n];
+					} else if (flag == '-' && on) {
+						on = false;
+					} else if (flag != 'c') {
+						break;
+					}
+				}
+				if (j < length && regex.charAt(j) == ')') {
+					// the flags apply after the closing parenthesis
+					savedFlags[open - 1] = embeddedFlags;
+				}
+				if (j < length
+						&& (regex.charAt(j) == ')' || regex.charAt(j) == ':')) {
+					flags = embeddedFlags;
+					comments = (flags & Pattern.COMMENTS) != 0;
+				}
+			} else if (ch == ')' && open > 0) {
+				flags = savedFlags[--open];
+				comments = (flags & Pattern.COMMENTS) != 0;
+			}
+		}
+		if (comments) {
+			// a comment at the end must not hide the closing parentheses
+			result.append('\n');
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Returns the position after the whitespace and the comments at the given
+	 * position like {@link Pattern} skips them if {@link Pattern#COMMENTS} is
+	 * set.
+	 */
+	private static int skipComments(String regex, int i, int flags) {
+		int length = regex.length();
+		while (i < length) {
+			char ch = regex.charAt(i);
+			if (ch == '#') {
+				while (i < length && !isLineSeparator(regex.charAt(i), flags)) {
+					i++;
+				}
+			} else if (ASCII.isSpace(ch)) {
+				i++;
+			} else {
+				break;
+			}
+		}
+		return i;
+	}
+
+	/**
+	 * This code is taken from {@link Pattern}.
+	 */
+	private static boolean isLineSeparator(int ch, int flags) {
+		if ((flags & Pattern.UNIX_LINES) != 0) {
+			return ch == '\n';
+		} else {
+			return (ch == '\n' || ch == '\r' || (ch | 1) == '\u2029' || ch == '\u0085');
+		}
+	}
+
+	/**
+	 * Passes a match to the processor of the rule that has matched. The groups
+	 * of the match are numbered like the groups of the rule.
+	 */
+	static class RuleProcessor implements MatchProcessor {
+
+		private final int[] groups;
+
+		private final int[] groupCounts;
+
+		private final MatchProcessor[] processors;
+
+		RuleProcessor(int[] groups, int[] groupCounts,
+				MatchProcessor[] processors) {
+			super();
+			this.groups = groups;
+			this.groupCounts = groupCounts;
+			this.processors = processors;
+		}
+
+		/**
+		 * @see com.googlecode.streamflyer.regex.MatchProcessor#process(java.lang.StringBuilder,
+		 *      int, java.util.regex.MatchResult)
+		 */
+		@Override
+		public MatchProcessorResult process(StringBuilder characterBuffer,
+				int firstModifiableCharacterInBuffer,
+				java.util.regex.MatchResult matchResult) {
+			int rule = 0;
+			while (matchResult.start(groups[rule]) == -1) {
+				rule++;
+			}
+			return processors[rule].process(characterBuffer,
+					firstModifiableCharacterInBuffer, new RuleMatchResult(
+							matchResult, groups[rule], groupCounts[rule]));
+		}
+	}
+
+	/**
+	 * The groups of a match numbered like the groups of the rule that has
+	 * matched.
+	 */
+	static class RuleMatchResult implements java.util.regex.MatchResult {
+
+		private final java.util.regex.MatchResult matchResult;
+
+		private final int group;
+
+		private final int groupCount;
+
+		/**
+		 * @param group
+		 *            the group that encloses the rule.
+		 * @param groupCount
+		 *            the number of groups of the rule.
+		 */
+		RuleMatchResult(java.util.regex.MatchResult matchResult, int group,
+				int groupCount) {
+			super();
+			this.matchResult = matchResult;
+			this.group = group;
+			this.groupCount = groupCount;
+		}
+
+		/**
+		 * Returns the group of the match for the given group of the rule.
+		 */
+		private int toGroup(int group) {
+			if (group < 0 || group > groupCount) {
+				throw new IndexOutOfBoundsException("No group " + group);
+			}
+			return this.group + group;
+		}
+
+		@Override
+		public int start() {
+			return matchResult.start();
+		}
+
+		@Override
+		public int start(int group) {
+			return matchResult.start(toGroup(group));
+		}
+
+		@Override
+		public int end() {
+			return matchResult.end();
+		}
+
+		@Override
+		public int end(int group) {
+			return matchResult.end(toGroup(group));
+		}
+
+		@Override
+		public String group() {
+			return matchResult.group();
+		}
+
+		@Override
+		public String group(int group) {
+			return matchResult.group(toGroup(group));
+		}
+
+		@Override
+		public int groupCount() {
+			return groupCount;
+		}
+	}
+}
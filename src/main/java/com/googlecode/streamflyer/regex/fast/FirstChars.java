@@ -0,0 +1,245 @@
+/**
+ * Copyright (C) 2011 rwoo@gmx.de
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.googlecode.streamflyer.regex.fast;
+
+/**
+ * The set of chars a match of a pattern can start with.
+ * <p>
+ * Matching at a position before the end of the input fails without hitting
+ * the end if the char at this position is not contained in the set. The set
+ * is a bitmap of all BMP chars. A supplementary char is represented by its
+ * high surrogate.
+ * <p>
+ * The set is computed like {@link Pattern.Node#study(Pattern.TreeInfo)}
+ * collects the length of a pattern: each node adds its chars and if it can
+ * match the empty string the chars of its next node are added as well.
+ *
+ * @author rwoo
+ *
+ * @since 18.10.2026
+ */
+final class FirstChars {
+
+	private final long[] bits = new long[1024];
+
+	/**
+	 * True if the set contains all chars.
+	 */
+	private boolean all;
+
+	/**
+	 * True if a match can be empty.
+	 */
+	private boolean empty;
+
+	private FirstChars() {
+		super();
+	}
+
+	/**
+	 * Returns the chars the matches of the given node can start with, or null
+	 * if the node can match the empty string or any char.
+	 */
+	static FirstChars study(Pattern.Node node) {
+		FirstChars first = new FirstChars();
+		if (first.add(node, null) || first.empty || first.all) {
+			return null;
+		}
+		return first;
+	}
+
+	/**
+	 * Returns true if a match might start with the given char.
+	 */
+	boolean contains(int ch) {
+		return (bits[ch >>> 6] & (1L << ch)) != 0;
+	}
+
+	/**
+	 * Returns true if this set and the given set have a char in common.
+	 */
+	boolean intersects(FirstChars other) {
+		for (int i = 0; i < bits.length; i++) {
+			if ((bits[i] & other.bits[i]) != 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void set(int ch) {
+		bits[ch >>> 6] |= 1L << ch;
+	}
+
+	private void setHighSurrogates() {
+		int max = Character.MAX_HIGH_SURROGATE >>> 6;
+		for (int i = Character.MIN_HIGH_SURROGATE >>> 6; i <= max; i++) {
+			bits[i] = -1L;
+		}
+	}
+
+	private void setAll() {
+		all = true;
+		for (int i = 0; i < bits.length; i++) {
+			bits[i] = -1L;
+		}
+	}
+
+	/**
+	 * Adds the chars the matches of the given node and its next nodes up to
+	 * the given end node can start with. Returns true if these matches can be
+	 * empty. In this case the chars that follow the end node must be added as
+	 * well.
+	 */
+	private boolean add(Pattern.Node node, Pattern.Node end) {
+		while (node != null) {
+			if (node == end) {
+				// end of an alternative
+				return true;
+			} else if (node == Pattern.accept || node instanceof Pattern.Loop) {
+				if (end != null) {
+					// an alternative that is parsed into the branch of a
+					// preceding optional group leads to the end of the
+					// enclosing atom or loop, not to the end of its branch
+					setAll();
+					return false;
+				}
+				// end of an atom or of the body of a loop
+				return true;
+			} else if (node instanceof Pattern.LastNode) {
+				// end of the pattern
+				empty = true;
+				return true;
+			} else if (node instanceof Pattern.CharProperty) {
+				if (!((Pattern.CharProperty) node).addBmpChars(bits)) {
+					// asking the class for each BMP char would make
+					// compiling slow
+					setAll();
+					return false;
+				}
+				if (!(node instanceof Pattern.BmpCharProperty)) {
+					setHighSurrogates();
+				}
+				return false;
+			} else if (node instanceof Pattern.SliceNode) {
+				addSlice((Pattern.SliceNode) node);
+				return false;
+			} else if (node instanceof Pattern.Curly) {
+				Pattern.Curly curly = (Pattern.Curly) node;
+				if (!add(curly.atom, null) && curly.cmin > 0) {
+					return false;
+				}
+				node = node.next;
+			} else if (node instanceof Pattern.GroupCurly) {
+				Pattern.GroupCurly curly = (Pattern.GroupCurly) node;
+				if (!add(curly.atom, null) && curly.cmin > 0) {
+					return false;
+				}
+				node = node.next;
+			} else if (node instanceof Pattern.Ques) {
+				Pattern.Ques ques = (Pattern.Ques) node;
+				if (!add(ques.atom, null) && ques.type == Pattern.INDEPENDENT) {
+					return false;
+				}
+				node = node.next;
+			} else if (node instanceof Pattern.Branch) {
+				Pattern.Branch branch = (Pattern.Branch) node;
+				boolean optional = false;
+				for (int n = 0; n < branch.size; n++) {
+					if (branch.atoms[n] == null) {
+						optional = true;
+					} else if (add(branch.atoms[n], branch.conn)) {
+						optional = true;
+					}
+				}
+				if (!optional) {
+					return false;
+				}
+				node = branch.conn.next;
+			} else if (node instanceof Pattern.Prolog) {
+				Pattern.Loop loop = ((Pattern.Prolog) node).loop;
+				if (!add(loop.body, null) && loop.cmin > 0) {
+					return false;
+				}
+				node = loop.next;
+			} else if (node instanceof Pattern.GroupHead
+					|| node instanceof Pattern.GroupTail
+					|| node instanceof Pattern.Caret
+					|| node instanceof Pattern.UnixCaret
+					|| node instanceof Pattern.Begin
+					|| node instanceof Pattern.End
+					|| node instanceof Pattern.LastMatch
+					|| node instanceof Pattern.Bound
+					|| node instanceof Pattern.BranchConn) {
+				// zero-width nodes that do not look at the chars that follow.
+				// An alternative of a branch might lead to the BranchConn of
+				// another branch.
+				node = node.next;
+			} else {
+				// lookarounds, back references and the like
+				setAll();
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void addSlice(Pattern.SliceNode slice) {
+		int first = slice.buffer[0];
+		if (slice instanceof Pattern.Slice) {
+			set(first);
+		} else if (slice instanceof Pattern.SliceS) {
+			set(Character.toChars(first)[0]);
+		} else if (slice instanceof Pattern.SliceI) {
+			addAsciiCase(first);
+		} else if (slice instanceof Pattern.SliceU) {
+			addUnicodeCase(first);
+		} else if (slice instanceof Pattern.SliceUS) {
+			addUnicodeCase(first);
+			setHighSurrogates();
+		} else if (slice instanceof Pattern.SliceIS) {
+			addAsciiCase(first);
+			setHighSurrogates();
+		} else {
+			setAll();
+		}
+	}
+
+	/**
+	 * Adds the given char and the chars whose ASCII lower case it is.
+	 */
+	private void addAsciiCase(int lower) {
+		if (lower <= 0xFFFF) {
+			set(lower);
+		}
+		if (ASCII.isLower(lower)) {
+			set(ASCII.toUpper(lower));
+		}
+	}
+
+	/**
+	 * Adds the given char and the chars whose Unicode lower case of the upper
+	 * case it is.
+	 */
+	private void addUnicodeCase(int lower) {
+		if (lower <= 0xFFFF) {
+			set(lower);
+		}
+		Pattern.CaseFolding.addRelated(bits, lower, lower, null);
+	}
+}
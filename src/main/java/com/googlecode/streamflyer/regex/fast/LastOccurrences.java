@@ -0,0 +1,131 @@
+/**
+ * Copyright (C) 2011 rwoo@gmx.de
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.googlecode.streamflyer.regex.fast;
+
+import java.util.Arrays;
+
+/**
+ * The bad character shift table of {@link Pattern.BnM}: for each char the
+ * index of its last occurrence in the pattern, plus one, or 0 if the char
+ * does not occur in the pattern.
+ * <p>
+ * The table of the JDK uses the lower seven bits of a char only. On Cyrillic,
+ * CJK or accented Latin text many chars alias with the chars of the pattern,
+ * so the shift collapses toward one. This table does not alias BMP chars.
+ * <p>
+ * If the chars of the pattern are close to each other, the table is an array
+ * from the smallest to the largest char of the pattern. Otherwise the table
+ * is split into blocks of 256 chars and the blocks without chars of the
+ * pattern share one empty block.
+ * <p>
+ * A supplementary code point uses the entry of its lower 16 bits. An aliased
+ * entry can only be too large, so the shift is too small but never too large.
+ *
+ * @author rwoo
+ *
+ * @since 18.10.2026
+ */
+final class LastOccurrences {
+
+	/**
+	 * The maximum length of {@link #table}.
+	 */
+	private static final int MAX_TABLE_LENGTH = 4096;
+
+	/**
+	 * The char of the first entry of {@link #table}.
+	 */
+	private final int base;
+
+	/**
+	 * The entries from {@link #base} to the largest char of the pattern, or
+	 * null if the blocks are used.
+	 */
+	private final int[] table;
+
+	/**
+	 * The entry of the char <code>ch</code> is
+	 * <code>blocks[ch >>> 8][ch & 0xFF]</code>, null if the table is used.
+	 */
+	private final int[][] blocks;
+
+	/**
+	 * @param src
+	 *            the chars or code points of the pattern.
+	 */
+	LastOccurrences(int[] src) {
+		this(src, src);
+	}
+
+	/**
+	 * @param src
+	 *            the chars or code points of the pattern.
+	 * @param other
+	 *            the chars that occur at the same index as the chars of
+	 *            <code>src</code>, for example their other case.
+	 */
+	LastOccurrences(int[] src, int[] other) {
+		int min = Integer.MAX_VALUE;
+		int max = Integer.MIN_VALUE;
+		for (int i = 0; i < src.length; i++) {
+			min = Math.min(min, Math.min(src[i] & 0xFFFF, other[i] & 0xFFFF));
+			max = Math.max(max, Math.max(src[i] & 0xFFFF, other[i] & 0xFFFF));
+		}
+		if (max - min < MAX_TABLE_LENGTH) {
+			base = min;
+			table = new int[max - min + 1];
+			blocks = null;
+			for (int i = 0; i < src.length; i++) {
+				table[(src[i] & 0xFFFF) - base] = i + 1;
+				table[(other[i] & 0xFFFF) - base] = i + 1;
+			}
+		} else {
+			base = 0;
+			table = null;
+			int[] empty = new int[256];
+			blocks = new int[256][];
+			Arrays.fill(blocks, empty);
+			for (int i = 0; i < src.length; i++) {
+				put(src[i] & 0xFFFF, i + 1, empty);
+				put(other[i] & 0xFFFF, i + 1, empty);
+			}
+		}
+	}
+
+	private void put(int ch, int entry, int[] empty) {
+		if (blocks[ch >>> 8] == empty) {
+			blocks[ch >>> 8] = new int[256];
+		}
+		blocks[ch >>> 8][ch & 0xFF] = entry;
+	}
+
+	/**
+	 * Returns the index of the last occurrence of the given char in the
+	 * pattern, plus one, or 0 if the char does not occur in the pattern.
+	 *
+	 * @param ch
+	 *            a char or the lower 16 bits of a code point.
+	 */
+	int get(int ch) {
+		if (table != null) {
+			int index = ch - base;
+			return index >= 0 && index < table.length ? table[index] : 0;
+		}
+		return blocks[ch >>> 8][ch & 0xFF];
+	}
+}
@@ -0,0 +1,409 @@
+/**
+ * Copyright (C) 2011 rwoo@gmx.de
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.googlecode.streamflyer.regex.fast;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A deterministic finite automaton that is built lazily from a
+ * {@link Program} while the input is read.
+ * <p>
+ * The automaton decides whether matching the pattern at a given position
+ * might succeed or might hit the end. It ignores the priorities of the
+ * program, the groups and the zero-width assertions, i.e. it follows every
+ * path the backtracking nodes might follow and more. If the automaton says no,
+ * the backtracking nodes fail without hitting the end. If it says yes, the
+ * backtracking nodes have to be run to get the exact match and the exact
+ * values of {@link Matcher#hitEnd()} and {@link Matcher#requireEnd()}.
+ * <p>
+ * Each state is the set of instructions that consume the next char. The
+ * transitions are computed on demand for a class of chars and stored in the
+ * state. So each char of the input costs a table lookup once the states are
+ * known. If there are too many states, the automaton gives up and says yes to
+ * all positions.
+ * <p>
+ * The automaton is not thread-safe. Each {@link Matcher} has its own one.
+ *
+ * @author rwoo
+ *
+ * @since 18.10.2026
+ */
+final class LazyDfa {
+
+	/**
+	 * The maximum number of states.
+	 */
+	private static final int MAX_STATES = 1000;
+
+	/**
+	 * The maximum number of char classes.
+	 */
+	private static final int MAX_CLASSES = 256;
+
+	/**
+	 * A state of the automaton.
+	 */
+	private static final class State {
+
+		/**
+		 * The sorted instructions. The value <code>size + pc</code> stands
+		 * for the {@link Program#PROPERTY} instruction <code>pc</code> that
+		 * has read a high surrogate and waits for the low surrogate.
+		 */
+		final int[] threads;
+
+		/**
+		 * True if the program matches in this state.
+		 */
+		final boolean accepting;
+
+		/**
+		 * True if a {@link Pattern.Dollar} or a {@link Pattern.UnixDollar} is
+		 * checked in this state. They hit the end up to two chars before the
+		 * end.
+		 */
+		final boolean dollar;
+
+		/**
+		 * The target state for each char class, null if not computed yet.
+		 */
+		State[] next = new State[8];
+
+		State(int[] threads, boolean accepting, boolean dollar) {
+			this.threads = threads;
+			this.accepting = accepting;
+			this.dollar = dollar;
+		}
+	}
+
+	/**
+	 * The key of a state in {@link #states}.
+	 */
+	private static final class Key {
+		private final int[] threads;
+		private final boolean dollar;
+
+		Key(int[] threads, boolean dollar) {
+			this.threads = threads;
+			this.dollar = dollar;
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(threads) + (dollar ? 1 : 0);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			Key other = (Key) obj;
+			return dollar == other.dollar
+					&& Arrays.equals(threads, other.threads);
+		}
+	}
+
+	final Program program;
+
+	private final Map<Key, State> states = new HashMap<Key, State>();
+
+	private final State start;
+
+	private final State dead;
+
+	/**
+	 * True if there are too many states or char classes.
+	 */
+	private boolean exploded;
+
+	/**
+	 * The class of each char in blocks of 256 chars, 0 if not known yet. The
+	 * blocks are allocated when a char of the block is read the first time.
+	 */
+	private final char[][] classBlocks = new char[256][];
+
+	/**
+	 * The class for the instructions that match a char, encoded as a string.
+	 */
+	private final Map<String, Integer> classes = new HashMap<String, Integer>();
+
+	/**
+	 * A char of each class. Class 0 is not used.
+	 */
+	private char[] classChars = new char[8];
+
+	// the state that is computed by add()
+
+	private final int[] marks;
+
+	private int mark;
+
+	private final int[] stack;
+
+	private final int[] found;
+
+	private int count;
+
+	private boolean accepting;
+
+	private boolean dollar;
+
+	LazyDfa(Program program) {
+		this.program = program;
+		this.marks = new int[program.size * 2];
+		this.stack = new int[program.size];
+		this.found = new int[program.size * 2];
+		this.dead = new State(new int[0], false, false);
+		begin();
+		this.start = end();
+	}
+
+	/**
+	 * Returns true if there are too many states or char classes. Then the
+	 * automaton says yes to all positions.
+	 */
+	boolean exploded() {
+		return exploded;
+	}
+
+	/**
+	 * Returns false if matching the pattern at the given position fails
+	 * without hitting the end.
+	 *
+	 * @param matcher
+	 *            the matcher that provides the input and its end.
+	 * @param i
+	 *            the position the pattern is matched at.
+	 */
+	boolean mightMatch(Matcher matcher, int i) {
+		CharSequence seq = matcher.text;
+		char[] chars = matcher.chars;
+		int offset = matcher.offset;
+		int to = matcher.to;
+		State state = start;
+		for (;;) {
+			if (state.accepting || i >= to || state.dollar && i >= to - 2) {
+				return true;
+			}
+			char ch = chars != null ? chars[offset + i] : seq.charAt(i);
+			i++;
+			char[] block = classBlocks[ch >>> 8];
+			int cls = block == null ? 0 : block[ch & 0xFF];
+			State target = cls < state.next.length ? state.next[cls] : null;
+			if (target == null) {
+				target = transition(state, ch);
+				if (target == null) {
+					// too many states
+					return true;
+				}
+			}
+			if (target == dead) {
+				return false;
+			}
+			state = target;
+		}
+	}
+
+	/**
+	 * Computes the target state of the given state for the given char.
+	 * Returns null if there are too many states or char classes.
+	 */
+	private State transition(State state, char input) {
+		int cls = classOf(input);
+		if (exploded) {
+			return null;
+		}
+		if (cls < state.next.length && state.next[cls] != null) {
+			return state.next[cls];
+		}
+		char ch = classChars[cls];
+		int size = program.size;
+		mark++;
+		count = 0;
+		accepting = false;
+		dollar = false;
+		for (int thread : state.threads) {
+			if (thread >= size) {
+				if (Character.isLowSurrogate(ch)) {
+					add(thread - size + 1);
+				}
+				continue;
+			}
+			switch (program.op[thread]) {
+			case Program.CHAR:
+				if (ch == program.arg[thread]) {
+					add(thread + 1);
+				}
+				break;
+			case Program.PROPERTY:
+				if (program.property[thread].isSatisfiedBy(ch)) {
+					add(thread + 1);
+				}
+				if (!program.bmp[thread] && Character.isHighSurrogate(ch)
+						&& marks[size + thread] != mark) {
+					marks[size + thread] = mark;
+					found[count++] = size + thread;
+				}
+				break;
+			default:
+				// MATCH
+			}
+		}
+		State target = end();
+		if (target == null) {
+			exploded = true;
+			return null;
+		}
+		if (cls >= state.next.length) {
+			State[] next = new State[Math.max(cls + 1, state.next.length * 2)];
+			System.arraycopy(state.next, 0, next, 0, state.next.length);
+			state.next = next;
+		}
+		state.next[cls] = target;
+		return target;
+	}
+
+	/**
+	 * Returns the class of the given char. Two chars are in the same class if
+	 * they are matched by the same instructions.
+	 */
+	private int classOf(char ch) {
+		char[] block = classBlocks[ch >>> 8];
+		if (block == null) {
+			block = new char[256];
+			classBlocks[ch >>> 8] = block;
+		}
+		if (block[ch & 0xFF] != 0) {
+			return block[ch & 0xFF];
+		}
+		StringBuilder key = new StringBuilder();
+		for (Pattern.CharProperty property : program.properties) {
+			key.append(property.isSatisfiedBy(ch) ? '1' : '0');
+		}
+		if (program.supplementary) {
+			key.append(Character.isHighSurrogate(ch) ? '1' : '0');
+			key.append(Character.isLowSurrogate(ch) ? '1' : '0');
+		}
+		if (Arrays.binarySearch(program.chars, ch) >= 0) {
+			key.append(ch);
+		}
+		Integer cls = classes.get(key.toString());
+		if (cls == null) {
+			cls = classes.size() + 1;
+			if (cls > MAX_CLASSES) {
+				exploded = true;
+				return 0;
+			}
+			classes.put(key.toString(), cls);
+			if (cls >= classChars.length) {
+				char[] chars = new char[classChars.length * 2];
+				System.arraycopy(classChars, 0, chars, 0, classChars.length);
+				classChars = chars;
+			}
+			classChars[cls] = ch;
+		}
+		block[ch & 0xFF] = (char) (int) cls;
+		return cls;
+	}
+
+	private void begin() {
+		mark++;
+		count = 0;
+		accepting = false;
+		dollar = false;
+		add(0);
+	}
+
+	/**
+	 * Adds the instructions that can be reached from the given instruction
+	 * without consuming a char.
+	 */
+	private void add(int pc) {
+		if (marks[pc] == mark) {
+			return;
+		}
+		marks[pc] = mark;
+		int top = 0;
+		stack[top++] = pc;
+		while (top > 0) {
+			pc = stack[--top];
+			int target = pc + 1;
+			int target2 = -1;
+			switch (program.op[pc]) {
+			case Program.CHAR:
+			case Program.PROPERTY:
+				found[count++] = pc;
+				continue;
+			case Program.MATCH:
+				found[count++] = pc;
+				accepting = true;
+				continue;
+			case Program.SPLIT:
+				target = program.arg[pc];
+				target2 = program.arg2[pc];
+				break;
+			case Program.JUMP:
+				target = program.arg[pc];
+				break;
+			case Program.EMPTY_CHECK:
+				target2 = program.arg2[pc];
+				break;
+			case Program.ASSERT:
+				Pattern.Node node = program.node[pc];
+				if (node instanceof Pattern.Dollar
+						|| node instanceof Pattern.UnixDollar) {
+					dollar = true;
+				}
+				break;
+			default:
+				// GROUP_HEAD, GROUP_TAIL
+			}
+			if (target2 >= 0 && marks[target2] != mark) {
+				marks[target2] = mark;
+				stack[top++] = target2;
+			}
+			if (marks[target] != mark) {
+				marks[target] = mark;
+				stack[top++] = target;
+			}
+		}
+	}
+
+	/**
+	 * Returns the state for the instructions that have been added, or null if
+	 * there are too many states.
+	 */
+	private State end() {
+		if (count == 0) {
+			return dead;
+		}
+		int[] threads = new int[count];
+		System.arraycopy(found, 0, threads, 0, count);
+		Arrays.sort(threads);
+		Key key = new Key(threads, dollar);
+		State state = states.get(key);
+		if (state == null) {
+			if (states.size() == MAX_STATES) {
+				return null;
+			}
+			state = new State(threads, accepting, dollar);
+			states.put(key, state);
+		}
+		return state;
+	}
+}
@@ -0,0 +1,337 @@
+/**
+ * Copyright (C) 2011 rwoo@gmx.de
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.googlecode.streamflyer.regex.fast;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The literals of the alternatives of a {@link Pattern.Branch} stored in a
+ * trie that is extended to an Aho-Corasick automaton.
+ * <p>
+ * The states of the trie are numbered. State 0 is the root. Each state knows
+ * the index of the first alternative that ends in this state and the index of
+ * the first alternative that is longer than the state. The latter is the
+ * alternative that would hit the end if the input ends in this state.
+ * <p>
+ * Case insensitive literals are supported if all alternatives use the same
+ * case folding. The chars of the input are folded before they are looked up
+ * in the trie.
+ *
+ * @author rwoo
+ *
+ * @since 18.10.2026
+ */
+final class LiteralSet {
+
+	/**
+	 * Value of {@link #terminal} and {@link #longer} if there is no such
+	 * alternative.
+	 */
+	static final int NONE = Integer.MAX_VALUE;
+
+	private static final int EXACT = 0;
+
+	private static final int ASCII_CASE = 1;
+
+	private static final int UNICODE_CASE = 2;
+
+	private final int folding;
+
+	/**
+	 * The sorted chars of the transitions of each state.
+	 */
+	private final char[][] keys;
+
+	/**
+	 * The target states of the transitions of each state.
+	 */
+	private final int[][] targets;
+
+	/**
+	 * The targets of the transitions of the root for ASCII chars, -1 if there
+	 * is no transition.
+	 */
+	private final int[] asciiTargets = new int[128];
+
+	/**
+	 * The number of chars that lead from the root to each state.
+	 */
+	final int[] depth;
+
+	/**
+	 * The index of the first alternative that ends in each state, or
+	 * {@link #NONE}.
+	 */
+	final int[] terminal;
+
+	/**
+	 * The index of the first alternative that is longer than each state and
+	 * starts with the chars of the state, or {@link #NONE}.
+	 */
+	final int[] longer;
+
+	/**
+	 * The Aho-Corasick failure link of each state: the state for the longest
+	 * proper suffix of the chars of the state.
+	 */
+	private final int[] fail;
+
+	/**
+	 * The length of the longest literal that is a suffix of the chars of each
+	 * state, 0 if there is no such literal.
+	 */
+	final int[] output;
+
+	private LiteralSet(int folding, List<Map<Character, Integer>> trie,
+			int[] depth, int[] terminal) {
+		this.folding = folding;
+		int size = trie.size();
+		this.keys = new char[size][];
+		this.targets = new int[size][];
+		this.depth = depth;
+		this.terminal = terminal;
+		for (int state = 0; state < size; state++) {
+			Map<Character, Integer> transitions = trie.get(state);
+			keys[state] = new char[transitions.size()];
+			targets[state] = new int[transitions.size()];
+			int n = 0;
+			for (Map.Entry<Character, Integer> entry : transitions.entrySet()) {
+				keys[state][n] = entry.getKey();
+				targets[state][n] = entry.getValue();
+				n++;
+			}
+		}
+		for (int ch = 0; ch < 128; ch++) {
+			asciiTargets[ch] = find(0, (char) ch);
+		}
+
+		// children have a greater number than their parents
+		this.longer = new int[size];
+		for (int state = size - 1; state >= 0; state--) {
+			int min = NONE;
+			for (int target : targets[state]) {
+				min = Math.min(min, Math.min(terminal[target], longer[target]));
+			}
+			longer[state] = min;
+		}
+
+		// breadth first, so that the failure links of all shorter states are
+		// known
+		this.fail = new int[size];
+		this.output = new int[size];
+		int[] queue = new int[size];
+		int head = 0, tail = 1;
+		while (head < tail) {
+			int state = queue[head++];
+			for (int n = 0; n < keys[state].length; n++) {
+				int target = targets[state][n];
+				fail[target] = state == 0 ? 0 : next(fail[state], keys[state][n]);
+				output[target] = terminal[target] != NONE ? depth[target]
+						: output[fail[target]];
+				queue[tail++] = target;
+			}
+		}
+	}
+
+	/**
+	 * Returns the literals of the given alternatives, or null if not all
+	 * alternatives are literals that can be stored in the same trie.
+	 *
+	 * @param atoms
+	 *            the alternatives of a branch.
+	 * @param size
+	 *            the number of alternatives.
+	 * @param conn
+	 *            the node each alternative must be followed by.
+	 */
+	static LiteralSet create(Pattern.Node[] atoms, int size, Pattern.Node conn) {
+		int folding = EXACT;
+		int[][] literals = new int[size][];
+		boolean[] caseSensitive = new boolean[size];
+		for (int n = 0; n < size; n++) {
+			Pattern.Node atom = atoms[n];
+			if (atom == null || atom.next != conn) {
+				return null;
+			}
+			int nodeFolding;
+			if (atom instanceof Pattern.Slice) {
+				literals[n] = ((Pattern.Slice) atom).buffer;
+				nodeFolding = EXACT;
+			} else if (atom instanceof Pattern.Single) {
+				literals[n] = new int[] { ((Pattern.Single) atom).c };
+				nodeFolding = EXACT;
+			} else if (atom instanceof Pattern.SliceI) {
+				literals[n] = ((Pattern.SliceI) atom).buffer;
+				nodeFolding = ASCII_CASE;
+			} else if (atom instanceof Pattern.SingleI) {
+				literals[n] = new int[] { ((Pattern.SingleI) atom).lower };
+				nodeFolding = ASCII_CASE;
+			} else if (atom instanceof Pattern.SliceU) {
+				literals[n] = ((Pattern.SliceU) atom).buffer;
+				nodeFolding = UNICODE_CASE;
+			} else if (atom instanceof Pattern.SingleU) {
+				literals[n] = new int[] { ((Pattern.SingleU) atom).lower };
+				nodeFolding = UNICODE_CASE;
+			} else {
+				return null;
+			}
+			if (nodeFolding == EXACT) {
+				caseSensitive[n] = true;
+			} else if (folding == EXACT) {
+				folding = nodeFolding;
+			} else if (folding != nodeFolding) {
+				return null;
+			}
+		}
+
+		// check that each literal char matches exactly the input chars with
+		// the same folded char
+		for (int n = 0; n < size; n++) {
+			for (int ch : literals[n]) {
+				if (fold(folding, ch) != ch) {
+					return null;
+				}
+				if (caseSensitive[n] && isFolded(folding, ch)) {
+					return null;
+				}
+			}
+		}
+
+		List<Map<Character, Integer>> trie = new ArrayList<Map<Character, Integer>>();
+		List<Integer> depth = new ArrayList<Integer>();
+		List<Integer> terminal = new ArrayList<Integer>();
+		trie.add(new TreeMap<Character, Integer>());
+		depth.add(0);
+		terminal.add(NONE);
+		for (int n = 0; n < size; n++) {
+			int state = 0;
+			for (int ch : literals[n]) {
+				Integer target = trie.get(state).get((char) ch);
+				if (target == null) {
+					target = trie.size();
+					trie.get(state).put((char) ch, target);
+					trie.add(new TreeMap<Character, Integer>());
+					depth.add(depth.get(state) + 1);
+					terminal.add(NONE);
+				}
+				state = target;
+			}
+			if (terminal.get(state) == NONE) {
+				terminal.set(state, n);
+			}
+		}
+		return new LiteralSet(folding, trie, toArray(depth), toArray(terminal));
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		int[] array = new int[list.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = list.get(i);
+		}
+		return array;
+	}
+
+	private static int fold(int folding, int ch) {
+		switch (folding) {
+		case ASCII_CASE:
+			return ASCII.toLower(ch);
+		case UNICODE_CASE:
+			return Character.toLowerCase(Character.toUpperCase(ch));
+		default:
+			return ch;
+		}
+	}
+
+	/**
+	 * Returns true if other chars might be folded to the given char.
+	 */
+	private static boolean isFolded(int folding, int ch) {
+		switch (folding) {
+		case ASCII_CASE:
+			return ASCII.isLower(ch);
+		case UNICODE_CASE:
+			return Pattern.CaseFolding.hasRelated(ch);
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Returns the number of states.
+	 */
+	int size() {
+		return depth.length;
+	}
+
+	/**
+	 * Returns the given input char in the form it is stored in the trie.
+	 */
+	int fold(int ch) {
+		return folding == EXACT ? ch : fold(folding, ch);
+	}
+
+	/**
+	 * Returns the state the trie goes to from the given state with the given
+	 * input char, or -1 if there is no such state.
+	 */
+	int child(int state, char ch) {
+		char folded = (char) fold(ch);
+		if (state == 0 && folded < 128) {
+			return asciiTargets[folded];
+		}
+		return find(state, folded);
+	}
+
+	private int find(int state, char ch) {
+		char[] chars = keys[state];
+		int low = 0;
+		int high = chars.length - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (chars[mid] < ch) {
+				low = mid + 1;
+			} else if (chars[mid] > ch) {
+				high = mid - 1;
+			} else {
+				return targets[state][mid];
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the state the automaton goes to from the given state with the
+	 * given folded char. This is the state for the longest suffix of the chars
+	 * read so far that is a prefix of a literal.
+	 */
+	int next(int state, char folded) {
+		for (;;) {
+			int target = state == 0 && folded < 128 ? asciiTargets[folded]
+					: find(state, folded);
+			if (target >= 0) {
+				return target;
+			} else if (state == 0) {
+				return 0;
+			}
+			state = fail[state];
+		}
+	}
+}
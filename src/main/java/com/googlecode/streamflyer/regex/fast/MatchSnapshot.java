@@ -0,0 +1,131 @@
+/**
+ * Copyright (C) 2011 rwoo@gmx.de
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.googlecode.streamflyer.regex.fast;
+
+/**
+ * An immutable snapshot of the last match of a {@link Matcher}, see
+ * {@link Matcher#toMatchResult()}.
+ * <p>
+ * The snapshot copies only the chars from the first to the last char of the
+ * match and its groups into a char array. The groups share this array and
+ * are copied into strings on demand, so taking a snapshot of a match in a
+ * large buffer costs the length of the match, not the length of the buffer.
+ * The offsets are the offsets in the input of the matcher.
+ *
+ * @author rwoo
+ *
+ * @since 18.10.2026
+ */
+final class MatchSnapshot implements MatchResult,
+		java.util.regex.MatchResult {
+
+	/**
+	 * The start and end offsets of the groups, or -1 if a group did not
+	 * participate in the match. Empty if there was no match.
+	 */
+	private final int[] groups;
+
+	private final int groupCount;
+
+	/**
+	 * The chars of the input from {@link #charsStart} that contain the match
+	 * and its groups.
+	 */
+	private final char[] chars;
+
+	/**
+	 * The offset of the first char of {@link #chars} in the input.
+	 */
+	private final int charsStart;
+
+	/**
+	 * Takes a snapshot of the last match of the given matcher.
+	 */
+	MatchSnapshot(Matcher matcher) {
+		groupCount = matcher.groupCount();
+		if (matcher.first < 0) {
+			groups = new int[0];
+			chars = new char[0];
+			charsStart = 0;
+			return;
+		}
+		groups = new int[(groupCount + 1) * 2];
+		System.arraycopy(matcher.groups, 0, groups, 0, groups.length);
+		// a group in a lookaround can lie outside of the match
+		int begin = groups[0];
+		int end = groups[1];
+		for (int group = 1; group <= groupCount; group++) {
+			if (groups[group * 2] != -1 && groups[group * 2 + 1] != -1) {
+				begin = Math.min(begin, groups[group * 2]);
+				end = Math.max(end, groups[group * 2 + 1]);
+			}
+		}
+		chars = new char[end - begin];
+		matcher.getChars(begin, end, chars, 0);
+		charsStart = begin;
+	}
+
+	private void checkGroup(int group) {
+		if (groups.length == 0)
+			throw new IllegalStateException("No match available");
+		if (group < 0 || group > groupCount)
+			throw new IndexOutOfBoundsException("No group " + group);
+	}
+
+	@Override
+	public int start() {
+		return start(0);
+	}
+
+	@Override
+	public int start(int group) {
+		checkGroup(group);
+		return groups[group * 2];
+	}
+
+	@Override
+	public int end() {
+		return end(0);
+	}
+
+	@Override
+	public int end(int group) {
+		checkGroup(group);
+		return groups[group * 2 + 1];
+	}
+
+	@Override
+	public String group() {
+		return group(0);
+	}
+
+	@Override
+	public String group(int group) {
+		checkGroup(group);
+		int start = groups[group * 2];
+		int end = groups[group * 2 + 1];
+		if (start == -1 || end == -1)
+			return null;
+		return new String(chars, start - charsStart, end - start);
+	}
+
+	@Override
+	public int groupCount() {
+		return groupCount;
+	}
+}
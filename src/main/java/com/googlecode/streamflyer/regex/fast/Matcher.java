@@ -25,6 +25,9 @@
 
 package com.googlecode.streamflyer.regex.fast;
 
+import java.io.IOException;
+import java.io.Writer;
+
 /**
  * An engine that performs match operations on a {@link java.lang.CharSequence
  * </code>character sequence<code>} by interpreting a {@link Pattern}.
@@ -150,6 +153,33 @@ public final class Matcher implements MatchResult {
 	 */
 	CharSequence text;
 
+	// NEW BEGIN BY rwoo
+	/**
+	 * The array that holds the chars of {@link #text}, or null if the text is
+	 * not backed by an accessible array. The char at the index <code>i</code>
+	 * of the text is <code>chars[offset + i]</code>. The nodes read this array
+	 * instead of calling {@link CharSequence#charAt(int)}.
+	 */
+	char[] chars;
+
+	/**
+	 * The index of the first char of the text in {@link #chars}.
+	 */
+	int offset;
+
+	/**
+	 * The nodes of a {@link Pattern.Backtrack} node give up at a repetition
+	 * after this position and leave the match to a {@link Backtracker}, so
+	 * that their recursion stays shallow.
+	 */
+	int backtrackAfter = Integer.MAX_VALUE;
+
+	/**
+	 * True if the matcher has been released to the pool of its pattern.
+	 */
+	volatile boolean pooled;
+	// NEW END BY rwoo
+
 	/**
 	 * Matcher state used by the last node. NOANCHOR is used when a match does
 	 * not have to consume all of the input. ENDANCHOR is the mode used for
@@ -220,6 +250,56 @@ public final class Matcher implements MatchResult {
 	 */
 	boolean anchoringBounds = true;
 
+	// NEW BEGIN BY rwoo
+	/**
+	 * The automaton that is used by the {@link Seeker} of the pattern, null if
+	 * not used yet.
+	 */
+	LazyDfa dfa;
+
+	/**
+	 * The VM that runs the {@link Program} of the pattern in linear time,
+	 * null if not used yet.
+	 */
+	private PikeVm pikeVm;
+
+	/**
+	 * Returns the VM for the given program.
+	 */
+	PikeVm pikeVm(Program program) {
+		if (pikeVm == null || pikeVm.program != program) {
+			pikeVm = new PikeVm(program, groups.length);
+		}
+		return pikeVm;
+	}
+
+	/**
+	 * Drops the checkpoint of the VM, which refers to the last input, so that
+	 * {@link #continueUnlessHitEnd(int, int)} cannot continue the last find.
+	 */
+	void discard() {
+		if (pikeVm != null) {
+			pikeVm.discard();
+		}
+	}
+
+	/**
+	 * The backtracker that runs the {@link Program} of the pattern, null if
+	 * not used yet.
+	 */
+	private Backtracker backtracker;
+
+	/**
+	 * Returns the backtracker for the given program.
+	 */
+	Backtracker backtracker(Program program) {
+		if (backtracker == null || backtracker.program != program) {
+			backtracker = new Backtracker(program, groups.length);
+		}
+		return backtracker;
+	}
+	// NEW END BY rwoo
+
 	/**
 	 * No default constructor.
 	 */
@@ -231,10 +311,17 @@ public final class Matcher implements MatchResult {
 	 */
 	Matcher(Pattern parent, CharSequence text) {
 		this.parentPattern = parent;
-		this.text = text;
+		// NEW BEGIN BY rwoo
+		setText(text);
+		// NEW END BY rwoo
 
 		// Allocate state storage
-		int parentGroupCount = Math.max(parent.capturingGroupCount, 10);
+		// NEW BEGIN BY rwoo
+		// only a back reference can refer to a group that does not exist
+		int parentGroupCount = parent.capturingGroupCount;
+		if (parent.hasBackReferences)
+			parentGroupCount = Math.max(parentGroupCount, 10);
+		// NEW END BY rwoo
 		groups = new int[parentGroupCount * 2];
 		locals = new int[parent.localCount];
 
@@ -255,16 +342,17 @@ public final class Matcher implements MatchResult {
 	 * Returns the match state of this matcher as a {@link MatchResult}. The
 	 * result is unaffected by subsequent operations performed upon this
 	 * matcher.
+	 * <p>
+	 * Only the chars of the match and its groups are copied, not the whole
+	 * input. The result also implements {@link java.util.regex.MatchResult}.
 	 * 
 	 * @return a <code>MatchResult</code> with the state of this matcher
 	 * @since 1.5
 	 */
 	public MatchResult toMatchResult() {
-		Matcher result = new Matcher(this.parentPattern, text.toString());
-		result.first = this.first;
-		result.last = this.last;
-		result.groups = (this.groups.clone());
-		return result;
+		// NEW BEGIN BY rwoo
+		return new MatchSnapshot(this);
+		// NEW END BY rwoo
 	}
 
 	/**
@@ -290,13 +378,24 @@ public final class Matcher implements MatchResult {
 		parentPattern = newPattern;
 
 		// Reallocate state storage
-		int parentGroupCount = Math.max(newPattern.capturingGroupCount, 10);
+		// NEW BEGIN BY rwoo
+		// only a back reference can refer to a group that does not exist
+		int parentGroupCount = newPattern.capturingGroupCount;
+		if (newPattern.hasBackReferences)
+			parentGroupCount = Math.max(parentGroupCount, 10);
+		// NEW END BY rwoo
 		groups = new int[parentGroupCount * 2];
 		locals = new int[newPattern.localCount];
 		for (int i = 0; i < groups.length; i++)
 			groups[i] = -1;
 		for (int i = 0; i < locals.length; i++)
 			locals[i] = -1;
+		// NEW BEGIN BY rwoo
+		dfa = null;
+		pikeVm = null;
+		backtracker = null;
+		groupViews = null;
+		// NEW END BY rwoo
 		return this;
 	}
 
@@ -340,10 +439,54 @@ public final class Matcher implements MatchResult {
 	 * @return This matcher
 	 */
 	public Matcher reset(CharSequence input) {
-		text = input;
+		// NEW BEGIN BY rwoo
+		setText(input);
+		// NEW END BY rwoo
 		return reset();
 	}
 
+	// NEW BEGIN BY rwoo
+	/**
+	 * Resets this matcher with the given chars as new input sequence. The
+	 * chars are not copied, so they must not be changed while this matcher
+	 * uses them. The indexes of the input sequence are relative to the given
+	 * offset.
+	 * <p>
+	 * Matching a char array is faster than matching a
+	 * {@link java.lang.CharSequence} because the chars are read from the
+	 * array directly.
+	 * 
+	 * @param chars
+	 *            the array that holds the new input sequence.
+	 * @param offset
+	 *            the index of the first char of the input sequence.
+	 * @param length
+	 *            the length of the input sequence.
+	 * @return This matcher
+	 * @throws IndexOutOfBoundsException
+	 *             If the offset and the length do not fit into the array
+	 */
+	public Matcher reset(char[] chars, int offset, int length) {
+		return reset(java.nio.CharBuffer.wrap(chars, offset, length));
+	}
+
+	/**
+	 * Sets the text and the array that holds the text, if there is any.
+	 */
+	private void setText(CharSequence input) {
+		text = input;
+		if (input instanceof java.nio.CharBuffer
+				&& ((java.nio.CharBuffer) input).hasArray()) {
+			java.nio.CharBuffer buffer = (java.nio.CharBuffer) input;
+			chars = buffer.array();
+			offset = buffer.arrayOffset() + buffer.position();
+		} else {
+			chars = null;
+			offset = 0;
+		}
+	}
+	// NEW END BY rwoo
+
 	/**
 	 * Returns the start index of the previous match. </p>
 	 * 
@@ -525,6 +668,189 @@ public final class Matcher implements MatchResult {
 				.toString();
 	}
 
+	// NEW BEGIN BY rwoo
+	/**
+	 * The views returned by {@link #groupView(int)}, created on demand.
+	 */
+	private GroupView[] groupViews;
+
+	/**
+	 * Returns a view of the input subsequence captured by the given group
+	 * during the previous match operation.
+	 * <p>
+	 * Unlike {@link #group(int)}, this method does not copy the chars into a
+	 * new string. The view is reused and always shows the group of the last
+	 * match of this matcher. So it changes with the next match, and it is
+	 * empty if the group does not participate in the next match. The input
+	 * must not be changed while the view is used. Call
+	 * {@link CharSequence#toString()} to keep the chars.
+	 * 
+	 * @param group
+	 *            The index of a capturing group in this matcher's pattern
+	 * @return A view of the subsequence captured by the group, or
+	 *         <tt>null</tt> if the group failed to match part of the input
+	 * @throws IllegalStateException
+	 *             If no match has yet been attempted, if the previous match
+	 *             operation failed, or if the matcher has been released
+	 * @throws IndexOutOfBoundsException
+	 *             If there is no capturing group in the pattern with the
+	 *             given index
+	 */
+	public CharSequence groupView(int group) {
+		checkNotReleased();
+		if (first < 0)
+			throw new IllegalStateException("No match found");
+		if (group < 0 || group > groupCount())
+			throw new IndexOutOfBoundsException("No group " + group);
+		if ((groups[group * 2] == -1) || (groups[group * 2 + 1] == -1))
+			return null;
+		if (groupViews == null || groupViews.length <= group) {
+			groupViews = new GroupView[groupCount() + 1];
+		}
+		if (groupViews[group] == null) {
+			groupViews[group] = new GroupView(group);
+		}
+		return groupViews[group];
+	}
+
+	/**
+	 * Appends the input subsequence captured by the given group during the
+	 * previous match operation to the given appendable. Nothing is appended
+	 * if the group failed to match part of the input.
+	 * <p>
+	 * Unlike {@link #group(int)}, this method does not copy the chars into a
+	 * new string.
+	 * 
+	 * @param appendable
+	 *            The appendable the subsequence is appended to
+	 * @param group
+	 *            The index of a capturing group in this matcher's pattern
+	 * @throws IOException
+	 *             If the appendable throws it
+	 * @throws IllegalStateException
+	 *             If no match has yet been attempted, if the previous match
+	 *             operation failed, or if the matcher has been released
+	 * @throws IndexOutOfBoundsException
+	 *             If there is no capturing group in the pattern with the
+	 *             given index
+	 */
+	public void appendGroupTo(Appendable appendable, int group)
+			throws IOException {
+		checkNotReleased();
+		if (first < 0)
+			throw new IllegalStateException("No match found");
+		if (group < 0 || group > groupCount())
+			throw new IndexOutOfBoundsException("No group " + group);
+		if ((groups[group * 2] == -1) || (groups[group * 2 + 1] == -1))
+			return;
+		appendTo(appendable, groups[group * 2], groups[group * 2 + 1]);
+	}
+
+	/**
+	 * Throws an IllegalStateException if the matcher has been released by
+	 * {@link Pattern#release(Matcher)} and has not been leased again.
+	 */
+	private void checkNotReleased() {
+		if (pooled)
+			throw new IllegalStateException("Matcher has been released");
+	}
+
+	/**
+	 * Appends the input chars from the given begin index to the given end
+	 * index to the given appendable without creating a string.
+	 */
+	void appendTo(Appendable appendable, int beginIndex, int endIndex)
+			throws IOException {
+		if (chars != null && appendable instanceof StringBuilder) {
+			((StringBuilder) appendable).append(chars, offset + beginIndex,
+					endIndex - beginIndex);
+		} else if (appendable instanceof Writer) {
+			write((Writer) appendable, beginIndex, endIndex);
+		} else {
+			appendable.append(text, beginIndex, endIndex);
+		}
+	}
+
+	/**
+	 * Writes the input chars from the given begin index to the given end
+	 * index with {@link Writer#write(char[], int, int)}. Unlike
+	 * {@link Writer#append(CharSequence, int, int)}, this does not create a
+	 * string for the chars.
+	 */
+	private void write(Writer writer, int beginIndex, int endIndex)
+			throws IOException {
+		if (chars != null) {
+			writer.write(chars, offset + beginIndex, endIndex - beginIndex);
+			return;
+		}
+		if (writeBuffer == null)
+			writeBuffer = new char[WRITE_BUFFER_SIZE];
+		while (beginIndex < endIndex) {
+			int length = Math.min(endIndex - beginIndex, WRITE_BUFFER_SIZE);
+			getChars(beginIndex, beginIndex + length, writeBuffer, 0);
+			writer.write(writeBuffer, 0, length);
+			beginIndex += length;
+		}
+	}
+
+	private static final int WRITE_BUFFER_SIZE = 1024;
+
+	/**
+	 * The chars of the input that are written to a writer, created on demand.
+	 */
+	private char[] writeBuffer;
+
+	/**
+	 * A view of the group of the last match, see {@link #groupView(int)}.
+	 */
+	private final class GroupView implements CharSequence {
+
+		private final int group;
+
+		GroupView(int group) {
+			this.group = group;
+		}
+
+		private int start() {
+			checkNotReleased();
+			return groups[group * 2 + 1] == -1 ? -1 : groups[group * 2];
+		}
+
+		@Override
+		public int length() {
+			int start = start();
+			return start == -1 ? 0 : groups[group * 2 + 1] - start;
+		}
+
+		@Override
+		public char charAt(int index) {
+			if (index < 0 || index >= length())
+				throw new IndexOutOfBoundsException("index " + index);
+			return Matcher.this.charAt(start() + index);
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			if (start < 0 || end > length() || start > end)
+				throw new IndexOutOfBoundsException("start " + start
+						+ ", end " + end);
+			if (start == end)
+				return "";
+			return getSubSequence(start() + start, start() + end);
+		}
+
+		@Override
+		public String toString() {
+			int length = length();
+			if (length == 0)
+				return "";
+			if (chars != null)
+				return new String(chars, offset + start(), length);
+			return getSubSequence(start(), start() + length).toString();
+		}
+	}
+	// NEW END BY rwoo
+
 	/**
 	 * Returns the number of capturing groups in this matcher's pattern.
 	 * 
@@ -772,61 +1098,142 @@ public final class Matcher implements MatchResult {
 		if (first < 0)
 			throw new IllegalStateException("No match available");
 
-		// Process substitution string to replace group references with groups
-		int cursor = 0;
-		StringBuilder result = new StringBuilder();
-
-		while (cursor < replacement.length()) {
-			char nextChar = replacement.charAt(cursor);
-			if (nextChar == '\\') {
-				cursor++;
-				nextChar = replacement.charAt(cursor);
-				result.append(nextChar);
-				cursor++;
-			} else if (nextChar == '$') {
-				// Skip past $
-				cursor++;
-				// The first number is always a group
-				int refNum = replacement.charAt(cursor) - '0';
-				if ((refNum < 0) || (refNum > 9))
-					throw new IllegalArgumentException(
-							"Illegal group reference");
-				cursor++;
-
-				// Capture the largest legal group string
-				boolean done = false;
-				while (!done) {
-					if (cursor >= replacement.length()) {
-						break;
-					}
-					int nextDigit = replacement.charAt(cursor) - '0';
-					if ((nextDigit < 0) || (nextDigit > 9)) { // not a number
-						break;
-					}
-					int newRefNum = (refNum * 10) + nextDigit;
-					if (groupCount() < newRefNum) {
-						done = true;
-					} else {
-						refNum = newRefNum;
-						cursor++;
-					}
-				}
-				// Append group
-				if (start(refNum) != -1 && end(refNum) != -1)
-					result.append(text, start(refNum), end(refNum));
-			} else {
-				result.append(nextChar);
-				cursor++;
-			}
+		// NEW BEGIN BY rwoo
+		return appendReplacement(sb, Replacement.compile(replacement,
+				groupCount()));
+		// NEW END BY rwoo
+	}
+
+	// NEW BEGIN BY rwoo
+	/**
+	 * Implements a non-terminal append-and-replace step with a replacement
+	 * that has been parsed before. Otherwise the same as
+	 * {@link #appendReplacement(StringBuffer, String)}.
+	 * 
+	 * @param sb
+	 *            The target string buffer
+	 * @param replacement
+	 *            The replacement
+	 * @return This matcher
+	 * @throws IllegalStateException
+	 *             If no match has yet been attempted, or if the previous
+	 *             match operation failed
+	 */
+	public Matcher appendReplacement(StringBuffer sb, Replacement replacement) {
+		try {
+			return appendReplacement((Appendable) sb, replacement);
+		} catch (IOException e) {
+			// a string buffer does not throw it
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Implements a non-terminal append-and-replace step. Otherwise the same as
+	 * {@link #appendReplacement(StringBuffer, String)}, but the string builder
+	 * is not synchronized.
+	 * 
+	 * @param sb
+	 *            The target string builder
+	 * @param replacement
+	 *            The replacement string
+	 * @return This matcher
+	 * @throws IllegalStateException
+	 *             If no match has yet been attempted, or if the previous
+	 *             match operation failed
+	 * @throws IndexOutOfBoundsException
+	 *             If the replacement string refers to a capturing group that
+	 *             does not exist in the pattern
+	 */
+	public Matcher appendReplacement(StringBuilder sb, String replacement) {
+		if (first < 0)
+			throw new IllegalStateException("No match available");
+		return appendReplacement(sb, Replacement.compile(replacement,
+				groupCount()));
+	}
+
+	/**
+	 * Implements a non-terminal append-and-replace step with a replacement
+	 * that has been parsed before. Otherwise the same as
+	 * {@link #appendReplacement(StringBuilder, String)}.
+	 * 
+	 * @param sb
+	 *            The target string builder
+	 * @param replacement
+	 *            The replacement
+	 * @return This matcher
+	 * @throws IllegalStateException
+	 *             If no match has yet been attempted, or if the previous
+	 *             match operation failed
+	 */
+	public Matcher appendReplacement(StringBuilder sb, Replacement replacement) {
+		try {
+			return appendReplacement((Appendable) sb, replacement);
+		} catch (IOException e) {
+			// a string builder does not throw it
+			throw new IllegalStateException(e);
 		}
+	}
+
+	/**
+	 * Implements a non-terminal append-and-replace step. Otherwise the same as
+	 * {@link #appendReplacement(StringBuffer, String)}.
+	 * <p>
+	 * If the appendable is a {@link Writer} and the input is a char array or
+	 * a string, the input is written with
+	 * {@link Writer#write(char[], int, int)}, so the chars are not copied
+	 * into a string.
+	 * 
+	 * @param appendable
+	 *            The target appendable
+	 * @param replacement
+	 *            The replacement string
+	 * @return This matcher
+	 * @throws IOException
+	 *             If the appendable throws it
+	 * @throws IllegalStateException
+	 *             If no match has yet been attempted, or if the previous
+	 *             match operation failed
+	 * @throws IndexOutOfBoundsException
+	 *             If the replacement string refers to a capturing group that
+	 *             does not exist in the pattern
+	 */
+	public Matcher appendReplacement(Appendable appendable, String replacement)
+			throws IOException {
+		if (first < 0)
+			throw new IllegalStateException("No match available");
+		return appendReplacement(appendable, Replacement.compile(replacement,
+				groupCount()));
+	}
+
+	/**
+	 * Implements a non-terminal append-and-replace step with a replacement
+	 * that has been parsed before. Otherwise the same as
+	 * {@link #appendReplacement(Appendable, String)}.
+	 * 
+	 * @param appendable
+	 *            The target appendable
+	 * @param replacement
+	 *            The replacement
+	 * @return This matcher
+	 * @throws IOException
+	 *             If the appendable throws it
+	 * @throws IllegalStateException
+	 *             If no match has yet been attempted, or if the previous
+	 *             match operation failed
+	 */
+	public Matcher appendReplacement(Appendable appendable,
+			Replacement replacement) throws IOException {
+		if (first < 0)
+			throw new IllegalStateException("No match available");
 		// Append the intervening text
-		sb.append(text, lastAppendPosition, first);
+		appendTo(appendable, lastAppendPosition, first);
 		// Append the match substitution
-		sb.append(result);
-
+		replacement.appendTo(appendable, this);
 		lastAppendPosition = last;
 		return this;
 	}
+	// NEW END BY rwoo
 
 	/**
 	 * Implements a terminal append-and-replace step.
@@ -849,6 +1256,38 @@ public final class Matcher implements MatchResult {
 		return sb;
 	}
 
+	// NEW BEGIN BY rwoo
+	/**
+	 * Implements a terminal append-and-replace step. Otherwise the same as
+	 * {@link #appendTail(StringBuffer)}.
+	 * 
+	 * @param sb
+	 *            The target string builder
+	 * @return The target string builder
+	 */
+	public StringBuilder appendTail(StringBuilder sb) {
+		sb.append(text, lastAppendPosition, getTextLength());
+		return sb;
+	}
+
+	/**
+	 * Implements a terminal append-and-replace step. Otherwise the same as
+	 * {@link #appendTail(StringBuffer)}. A {@link Writer} gets the chars by
+	 * {@link Writer#write(char[], int, int)}.
+	 * 
+	 * @param appendable
+	 *            The target appendable
+	 * @return The target appendable
+	 * @throws IOException
+	 *             If the appendable throws it
+	 */
+	public <T extends Appendable> T appendTail(T appendable)
+			throws IOException {
+		appendTo(appendable, lastAppendPosition, getTextLength());
+		return appendable;
+	}
+	// NEW END BY rwoo
+
 	/**
 	 * Replaces every subsequence of the input sequence that matches the pattern
 	 * with the given replacement string.
@@ -891,9 +1330,14 @@ public final class Matcher implements MatchResult {
 		reset();
 		boolean result = find();
 		if (result) {
-			StringBuffer sb = new StringBuffer();
+			// NEW BEGIN BY rwoo
+			// the replacement is parsed once for all matches
+			Replacement compiled = Replacement.compile(replacement,
+					groupCount());
+			StringBuilder sb = new StringBuilder();
+			// NEW END BY rwoo
 			do {
-				appendReplacement(sb, replacement);
+				appendReplacement(sb, compiled);
 				result = find();
 			} while (result);
 			appendTail(sb);
@@ -902,6 +1346,60 @@ public final class Matcher implements MatchResult {
 		return text.toString();
 	}
 
+	// NEW BEGIN BY rwoo
+	/**
+	 * Replaces every subsequence of the input sequence that matches the pattern
+	 * with the given replacement string and appends the result to the given
+	 * string builder. Otherwise the same as {@link #replaceAll(String)}.
+	 * 
+	 * @param replacement
+	 *            The replacement string
+	 * @param sb
+	 *            The target string builder
+	 * @return The target string builder
+	 */
+	public StringBuilder replaceAll(String replacement, StringBuilder sb) {
+		try {
+			replaceAll(replacement, (Appendable) sb);
+			return sb;
+		} catch (IOException e) {
+			// a string builder does not throw it
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Replaces every subsequence of the input sequence that matches the pattern
+	 * with the given replacement string and appends the result to the given
+	 * appendable. Otherwise the same as {@link #replaceAll(String)}.
+	 * <p>
+	 * The result is not assembled in memory, so a large input can be written
+	 * to a {@link Writer} directly. The chars between the matches are written
+	 * by {@link Writer#write(char[], int, int)}.
+	 * 
+	 * @param replacement
+	 *            The replacement string
+	 * @param appendable
+	 *            The target appendable
+	 * @return The target appendable
+	 * @throws IOException
+	 *             If the appendable throws it
+	 */
+	public <T extends Appendable> T replaceAll(String replacement,
+			T appendable) throws IOException {
+		reset();
+		if (find()) {
+			// the replacement is parsed once for all matches
+			Replacement compiled = Replacement.compile(replacement,
+					groupCount());
+			do {
+				appendReplacement(appendable, compiled);
+			} while (find());
+		}
+		return appendTail(appendable);
+	}
+	// NEW END BY rwoo
+
 	/**
 	 * Replaces the first subsequence of the input sequence that matches the
 	 * pattern with the given replacement string.
@@ -946,12 +1444,61 @@ public final class Matcher implements MatchResult {
 		reset();
 		if (!find())
 			return text.toString();
-		StringBuffer sb = new StringBuffer();
+		// NEW BEGIN BY rwoo
+		StringBuilder sb = new StringBuilder();
+		// NEW END BY rwoo
 		appendReplacement(sb, replacement);
 		appendTail(sb);
 		return sb.toString();
 	}
 
+	// NEW BEGIN BY rwoo
+	/**
+	 * Replaces the first subsequence of the input sequence that matches the
+	 * pattern with the given replacement string and appends the result to the
+	 * given string builder. Otherwise the same as
+	 * {@link #replaceFirst(String)}.
+	 * 
+	 * @param replacement
+	 *            The replacement string
+	 * @param sb
+	 *            The target string builder
+	 * @return The target string builder
+	 */
+	public StringBuilder replaceFirst(String replacement, StringBuilder sb) {
+		try {
+			replaceFirst(replacement, (Appendable) sb);
+			return sb;
+		} catch (IOException e) {
+			// a string builder does not throw it
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Replaces the first subsequence of the input sequence that matches the
+	 * pattern with the given replacement string and appends the result to the
+	 * given appendable. Otherwise the same as {@link #replaceFirst(String)}.
+	 * 
+	 * @param replacement
+	 *            The replacement string
+	 * @param appendable
+	 *            The target appendable
+	 * @return The target appendable
+	 * @throws IOException
+	 *             If the appendable throws it
+	 */
+	public <T extends Appendable> T replaceFirst(String replacement,
+			T appendable) throws IOException {
+		if (replacement == null)
+			throw new NullPointerException("replacement");
+		reset();
+		if (find())
+			appendReplacement(appendable, replacement);
+		return appendTail(appendable);
+	}
+	// NEW END BY rwoo
+
 	/**
 	 * Sets the limits of this matcher's region. The region is the part of the
 	 * input sequence that will be searched to find a match. Invoking this
@@ -1267,9 +1814,32 @@ public final class Matcher implements MatchResult {
 	 * @return A char from the specified index
 	 */
 	char charAt(int i) {
-		return text.charAt(i);
+		// NEW BEGIN BY rwoo
+		return chars != null ? chars[offset + i] : text.charAt(i);
+		// NEW END BY rwoo
 	}
 
+	// NEW BEGIN BY rwoo
+	/**
+	 * Copies this Matcher's input chars from the given begin index to the
+	 * given end index into the given array.
+	 */
+	void getChars(int beginIndex, int endIndex, char[] dst, int dstBegin) {
+		if (chars != null) {
+			System.arraycopy(chars, offset + beginIndex, dst, dstBegin,
+					endIndex - beginIndex);
+		} else if (text instanceof String) {
+			((String) text).getChars(beginIndex, endIndex, dst, dstBegin);
+		} else if (text instanceof StringBuilder) {
+			((StringBuilder) text).getChars(beginIndex, endIndex, dst,
+					dstBegin);
+		} else {
+			for (int index = beginIndex; index < endIndex; index++)
+				dst[dstBegin++] = text.charAt(index);
+		}
+	}
+	// NEW END BY rwoo
+
 	//
 	// NEW BEGIN BY rwoo
 	//
@@ -1277,9 +1847,55 @@ public final class Matcher implements MatchResult {
 	private int lastFrom;
 
 	/**
-	 * TODO please doc
+	 * Finds the first position from <code>from</code> to
+	 * <code>maxFrom</code> where the pattern matches or where matching hits
+	 * the end of the input.
+	 * <p>
+	 * Unlike {@link #find(int)} this method stops at a position where
+	 * matching hits the end, even if matching fails there, because more
+	 * input might give another result at this position. The position is
+	 * returned by {@link #lastFrom()}, and {@link #hitEnd()} and
+	 * {@link #requireEnd()} tell how matching ended there. Positions where
+	 * matching can neither succeed nor hit the end are skipped without
+	 * matching the pattern at each of them.
+	 *
+	 * @param from
+	 *            the first position a match may start at.
+	 * @param maxFrom
+	 *            the last position a match may start at.
+	 * @return Returns true if the pattern matches at {@link #lastFrom()}.
+	 *         Returns false if matching has hit the end at
+	 *         {@link #lastFrom()} without a match, or if there is no such
+	 *         position, in which case {@link #lastFrom()} is
+	 *         <code>maxFrom + 1</code>.
 	 */
 	public boolean findUnlessHitEnd(int from, int maxFrom) {
+		return findUnlessHitEnd(from, maxFrom, false);
+	}
+
+	/**
+	 * Like {@link #findUnlessHitEnd(int, int)} but continues the last call of
+	 * this method or of {@link #findUnlessHitEnd(int, int)} that has hit the
+	 * end after chars have been appended to the input. The caller guarantees
+	 * that the input is the same object, and that the chars from
+	 * {@link #lastFrom()} to the old end of the input are found unchanged at
+	 * the position <code>from</code>. The chars before may have been removed.
+	 * If the two chars before {@link #lastFrom()} have been removed or
+	 * changed, assertions like <code>\b</code> or <code>^</code> might give
+	 * other results, so the input is read from <code>from</code> again.
+	 * <p>
+	 * The result is the same as the result of
+	 * {@link #findUnlessHitEnd(int, int)}. But if the pattern is matched by a
+	 * {@link PikeVm}, only the chars near the old end and the appended chars
+	 * are read. So each char is read a bounded number of times, no matter how
+	 * few chars are appended each time. Patterns that are matched by
+	 * backtracking are matched at the position again.
+	 */
+	public boolean continueUnlessHitEnd(int from, int maxFrom) {
+		return findUnlessHitEnd(from, maxFrom, true);
+	}
+
+	private boolean findUnlessHitEnd(int from, int maxFrom, boolean resume) {
 
 		// BEGIN this code is taken from Matcher.search(int)
 		this.hitEnd = false;
@@ -1295,12 +1911,43 @@ public final class Matcher implements MatchResult {
 
 		// BEGIN this code is completely new
 		boolean result = false;
-		for (this.lastFrom = from; lastFrom <= maxFrom; lastFrom++) {
+		Program program = resume ? linearProgram() : null;
+		if (program != null) {
+			// continue the threads of the VM at the old end of the input
+			lastFrom = pikeVm(program).resume(this, from, maxFrom, text);
+			if (lastFrom < 0) {
+				lastFrom = pikeVm.stream(this, from, maxFrom, text);
+			}
+			result = pikeVm.matched();
+		} else {
+			if (pikeVm != null) {
+				pikeVm.discard();
+			}
+			Seeker seeker = parentPattern.seeker;
+			for (this.lastFrom = from; lastFrom <= maxFrom; lastFrom++) {
+
+				// skip the positions where matching fails without hitting the
+				// end
+				lastFrom = seeker.seek(this, lastFrom, maxFrom, text);
+				if (lastFrom > maxFrom) {
+					lastFrom = maxFrom + 1;
+					break;
+				}
 
-			result = parentPattern.matchRoot.match(this, lastFrom, text);
+				// matching in linear time finds the position by itself
+				program = linearProgram();
+				if (program != null) {
+					lastFrom = pikeVm(program).stream(this, lastFrom, maxFrom,
+							text);
+					result = pikeVm.matched();
+					break;
+				}
+
+				result = parentPattern.matchRoot.match(this, lastFrom, text);
 
-			if (result || hitEnd()) {
-				break;
+				if (result || hitEnd()) {
+					break;
+				}
 			}
 		}
 		// END this code is completely new
@@ -1322,6 +1969,23 @@ public final class Matcher implements MatchResult {
 		// END this code is taken from Matcher.search(int)
 	}
 
+	/**
+	 * Returns the program that is run by a {@link PikeVm}, or null if the
+	 * pattern is matched by backtracking. The VM is used if the pattern has
+	 * been compiled with {@link Pattern#LINEAR_TIME}, or if the automaton of
+	 * the seeker has too many states and the VM gives the same results as
+	 * backtracking.
+	 */
+	private Program linearProgram() {
+		if (parentPattern.matchRoot instanceof Pattern.Linear) {
+			return ((Pattern.Linear) parentPattern.matchRoot).program;
+		} else if (dfa != null && dfa.exploded() && dfa.program.exact
+				&& dfa.program.exactGroups) {
+			return dfa.program;
+		}
+		return null;
+	}
+
 	public int lastFrom() {
 		return lastFrom;
 	}
@@ -17,6 +17,8 @@
  */
 package com.googlecode.streamflyer.regex.fast;
 
+import java.io.IOException;
+
 import com.googlecode.streamflyer.regex.OnStreamMatcher;
 
 /**
@@ -40,6 +42,16 @@ public class OnStreamExtendedMatcher implements OnStreamMatcher {
 
 	protected Matcher matcher;
 
+	//
+	// state
+	//
+
+	/**
+	 * True if the next call of {@link #findUnlessHitEnd(int, int)} continues
+	 * the last call. See {@link #continueNextFind(boolean)}.
+	 */
+	private boolean continueNextFind = false;
+
 	//
 	// constructors
 	//
@@ -70,9 +82,26 @@ public class OnStreamExtendedMatcher implements OnStreamMatcher {
 	 */
 	@Override
 	public boolean findUnlessHitEnd(int minFrom, int maxFrom) {
+		if (continueNextFind) {
+			continueNextFind = false;
+			return matcher.continueUnlessHitEnd(minFrom, maxFrom);
+		}
 		return matcher.findUnlessHitEnd(minFrom, maxFrom);
 	}
 
+	/**
+	 * Tells whether the next call of {@link #findUnlessHitEnd(int, int)}
+	 * continues the last call because the last call has hit the end and more
+	 * input has been appended. Then <code>minFrom</code> is the position of
+	 * the char that has been at {@link #lastFrom()}, and the chars from there
+	 * to the old end are unchanged.
+	 * 
+	 * @see Matcher#continueUnlessHitEnd(int, int)
+	 */
+	public void continueNextFind(boolean continueNextFind) {
+		this.continueNextFind = continueNextFind;
+	}
+
 	/**
 	 * @see com.googlecode.streamflyer.regex.OnStreamMatcher#lastFrom()
 	 */
@@ -149,6 +178,21 @@ public class OnStreamExtendedMatcher implements OnStreamMatcher {
 		return matcher.group(group);
 	}
 
+	/**
+	 * @see Matcher#groupView(int)
+	 */
+	public CharSequence groupView(int group) {
+		return matcher.groupView(group);
+	}
+
+	/**
+	 * @see Matcher#appendGroupTo(Appendable, int)
+	 */
+	public void appendGroupTo(Appendable appendable, int group)
+			throws IOException {
+		matcher.appendGroupTo(appendable, group);
+	}
+
 	/**
 	 * @see java.util.regex.MatchResult#groupCount()
 	 */
@@ -29,6 +29,11 @@ import java.text.Normalizer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * A compiled representation of a regular expression.
@@ -1122,6 +1127,55 @@ public final class Pattern implements java.io.Serializable {
 	 */
 	public static final int CANON_EQ = 0x80;
 
+	// NEW BEGIN BY rwoo
+	/**
+	 * Enables linear-time matching.
+	 *
+	 * <p>
+	 * When this flag is specified then the pattern is matched by a Pike VM
+	 * instead of the backtracking nodes. Matching takes at most
+	 * <tt>O(n&nbsp;*&nbsp;m)</tt> steps for an input of length <tt>n</tt> and
+	 * a pattern of size <tt>m</tt>, so a pattern like <tt>(a|aa)*b</tt> cannot
+	 * stall on a long run of <tt>a</tt>'s. The matches, the groups and the
+	 * values of {@link Matcher#hitEnd()} and {@link Matcher#requireEnd()} are
+	 * the same as without this flag. Only a group that is nested in a repeated
+	 * group of fixed length might differ: without this flag it keeps the
+	 * value of a failed repetition. A repeated group in the body of another
+	 * repeated group might differ too: without this flag it may keep the value
+	 * of an earlier repetition of the enclosing group.
+	 *
+	 * <p>
+	 * Lookarounds, back references, independent groups, possessive
+	 * quantifiers and groups that can repeat an empty match are not supported
+	 * in this mode. Compiling such a pattern with this flag throws a
+	 * {@link PatternSyntaxException}.
+	 *
+	 * <p>
+	 * There is no embedded flag character for enabling linear-time matching.
+	 */
+	public static final int LINEAR_TIME = 0x200;
+
+	/**
+	 * Disables capturing groups.
+	 *
+	 * <p>
+	 * When this flag is specified then every group is compiled like a
+	 * non-capturing group, so only the bounds of a match are recorded and
+	 * {@link Matcher#groupCount()} returns zero. The matcher neither saves nor
+	 * restores the bounds of groups while it backtracks, and it resets only
+	 * the bounds of the match before each search. Use this flag if only the
+	 * bounds of the matches are needed.
+	 *
+	 * <p>
+	 * Back references are not supported in this mode. Compiling such a
+	 * pattern with this flag throws a {@link PatternSyntaxException}.
+	 *
+	 * <p>
+	 * There is no embedded flag character for disabling capturing groups.
+	 */
+	public static final int BOUNDS_ONLY = 0x400;
+	// NEW END BY rwoo
+
 	/*
 	 * Pattern has only two serialized components: The pattern string and the
 	 * flags, which are all that is needed to recompile the pattern when it is
@@ -1151,6 +1205,19 @@ public final class Pattern implements java.io.Serializable {
 	 */
 	private transient volatile boolean compiled = false;
 
+	// NEW BEGIN BY rwoo
+	/**
+	 * The maximum number of matchers in the {@link #pool}, a power of two.
+	 */
+	private static final int POOL_SIZE = 16;
+
+	/**
+	 * The matchers that have been released, or null if no matcher has been
+	 * released yet.
+	 */
+	private transient volatile AtomicReferenceArray<Matcher> pool;
+	// NEW END BY rwoo
+
 	/**
 	 * The normalized pattern string.
 	 */
@@ -1168,6 +1235,14 @@ public final class Pattern implements java.io.Serializable {
 	 */
 	transient Node matchRoot;
 
+	// NEW BEGIN BY rwoo
+	/**
+	 * Skips positions where {@link #matchRoot} cannot match. Used by
+	 * {@link Matcher#findUnlessHitEnd(int, int)}.
+	 */
+	transient Seeker seeker;
+	// NEW END BY rwoo
+
 	/**
 	 * Temporary storage used by parsing pattern slice.
 	 */
@@ -1189,6 +1264,15 @@ public final class Pattern implements java.io.Serializable {
 	 */
 	transient int capturingGroupCount;
 
+	// NEW BEGIN BY rwoo
+	/**
+	 * True if the pattern contains a back reference. A back reference with a
+	 * single digit may refer to a group that does not exist, so the matchers
+	 * of such a pattern allocate storage for at least ten groups.
+	 */
+	transient boolean hasBackReferences;
+	// NEW END BY rwoo
+
 	/**
 	 * The local variable count used by parsing tree. Used by matchers to
 	 * allocate storage needed to perform a match.
@@ -1286,6 +1370,89 @@ public final class Pattern implements java.io.Serializable {
 		return m;
 	}
 
+	// NEW BEGIN BY rwoo
+	/**
+	 * Creates a matcher that will match the given chars against this pattern.
+	 * The chars are not copied, so they must not be changed while the matcher
+	 * uses them. See {@link Matcher#reset(char[], int, int)}.
+	 * 
+	 * @param chars
+	 *            the array that holds the character sequence to be matched.
+	 * @param offset
+	 *            the index of the first char of the character sequence.
+	 * @param length
+	 *            the length of the character sequence.
+	 * @return A new matcher for this pattern
+	 * @throws IndexOutOfBoundsException
+	 *             If the offset and the length do not fit into the array
+	 */
+	public Matcher matcher(char[] chars, int offset, int length) {
+		return matcher(java.nio.CharBuffer.wrap(chars, offset, length));
+	}
+
+	/**
+	 * Lends a matcher of this pattern. The matcher has been released by
+	 * {@link #release(Matcher)}, or it is created if no released matcher is
+	 * available. Its input is the empty sequence, its region is the entire
+	 * input and its bounds are opaque and anchoring, like the bounds of a new
+	 * matcher.
+	 * <p>
+	 * Unlike {@link #matcher(CharSequence)}, this method does not allocate
+	 * the groups and the automata of the matcher again if many short inputs
+	 * are matched one after another, possibly by different threads.
+	 * 
+	 * @return A matcher for this pattern
+	 */
+	public Matcher lease() {
+		AtomicReferenceArray<Matcher> pool = this.pool;
+		if (pool != null) {
+			// threads that lease at the same time start at different slots
+			int start = (int) Thread.currentThread().getId();
+			for (int n = 0; n < POOL_SIZE; n++) {
+				int slot = (start + n) & (POOL_SIZE - 1);
+				Matcher matcher;
+				if (pool.get(slot) != null
+						&& (matcher = pool.getAndSet(slot, null)) != null) {
+					matcher.pooled = false;
+					return matcher;
+				}
+			}
+		}
+		return matcher("");
+	}
+
+	/**
+	 * Takes back a matcher of this pattern so that {@link #lease()} can lend
+	 * it again. The matcher must not be used after it has been released. It
+	 * is discarded if it uses another pattern or if enough matchers are kept
+	 * already.
+	 */
+	public void release(Matcher matcher) {
+		if (matcher.parentPattern != this || matcher.pooled) {
+			return;
+		}
+		// the matcher must not keep the input alive
+		matcher.reset("");
+		matcher.discard();
+		matcher.useTransparentBounds(false);
+		matcher.useAnchoringBounds(true);
+		AtomicReferenceArray<Matcher> pool = this.pool;
+		if (pool == null) {
+			// a pool that is created by another thread at the same time is
+			// lost with its matchers
+			pool = new AtomicReferenceArray<Matcher>(POOL_SIZE);
+			this.pool = pool;
+		}
+		matcher.pooled = true;
+		for (int slot = 0; slot < POOL_SIZE; slot++) {
+			if (pool.compareAndSet(slot, null, matcher)) {
+				return;
+			}
+		}
+		matcher.pooled = false;
+	}
+	// NEW END BY rwoo
+
 	/**
 	 * Returns this pattern's match flags. </p>
 	 * 
@@ -1922,7 +2089,10 @@ public final class Pattern implements java.io.Serializable {
 		}
 
 		// Peephole optimization
-		if (matchRoot instanceof Slice) {
+		// NEW BEGIN BY rwoo
+		if (matchRoot instanceof Slice || matchRoot instanceof SliceI
+				|| matchRoot instanceof SliceU) {
+			// NEW END BY rwoo
 			root = BnM.optimize(matchRoot);
 			if (root == matchRoot) {
 				root = hasSupplementary ? new StartS(matchRoot) : new Start(
@@ -1934,6 +2104,34 @@ public final class Pattern implements java.io.Serializable {
 			root = hasSupplementary ? new StartS(matchRoot) : new Start(
 					matchRoot);
 		}
+		// NEW BEGIN BY rwoo
+		if (has(LINEAR_TIME)) {
+			Program program = Program.compile(matchRoot);
+			if (program == null || !program.exact) {
+				throw error("Pattern not supported in linear time mode");
+			}
+			// the automaton of the seeker might read the input many times
+			seeker = Seeker.prefilter(matchRoot, root);
+			Linear linear = new Linear(program, matchRoot);
+			if (root instanceof Start) {
+				root = new LinearStart(program, ((Start) root).minLength,
+						root instanceof StartS);
+			} else if (root == matchRoot) {
+				root = linear;
+			}
+			matchRoot = linear;
+		} else {
+			Node nodes = matchRoot;
+			seeker = Seeker.create(matchRoot, root);
+			backtrack();
+			// the programs are compiled from the greedy repetitions
+			Map<Node, FirstChars> studied = new HashMap<Node, FirstChars>();
+			if (root instanceof Start) {
+				studied.put(nodes, ((Start) root).firstChars);
+			}
+			possessive(nodes, studied);
+		}
+		// NEW END BY rwoo
 
 		// Release temporary storage
 		temp = null;
@@ -1943,6 +2141,174 @@ public final class Pattern implements java.io.Serializable {
 		compiled = true;
 	}
 
+	// NEW BEGIN BY rwoo
+	/**
+	 * Guards the nodes by a {@link Backtrack} node if they recurse for each
+	 * repetition of a group. Patterns the program cannot express are not
+	 * guarded.
+	 */
+	private void backtrack() {
+		if (root instanceof BnM) {
+			Backtrack backtrack = backtrack(root.next);
+			if (backtrack != null) {
+				root.next = backtrack;
+			}
+		}
+		Backtrack backtrack = backtrack(matchRoot);
+		if (backtrack == null) {
+			return;
+		}
+		if (root instanceof Start) {
+			root.next = backtrack;
+		} else if (root == matchRoot) {
+			root = backtrack;
+		}
+		matchRoot = backtrack;
+	}
+
+	/**
+	 * Returns the {@link Backtrack} node for the given node and its next
+	 * nodes, or null if they do not recurse or the program does not give the
+	 * same results.
+	 */
+	private static Backtrack backtrack(Node node) {
+		Program program = Program.compile(node);
+		if (program == null || !program.recursive || !program.exact
+				|| !program.exactGroups) {
+			return null;
+		}
+		return new Backtrack(program, node);
+	}
+
+	/**
+	 * Makes the greedy repetitions of the given node and its next nodes
+	 * possessive if giving back chars cannot lead to a match, as in
+	 * <tt>\d+[a-z]</tt> or <tt>[^"]*"</tt>.
+	 * <p>
+	 * A repetition gives back whole matches of its atom. The atom of a
+	 * {@link GroupCurly} is deterministic, so it cannot give back a part of a
+	 * match either. Hence the next node would have to match where a match of
+	 * the atom starts. It cannot if the chars the atom starts with and the
+	 * chars the next node starts with are disjoint.
+	 * <p>
+	 * A {@link GroupCurly} that captures a group is not made possessive: in an
+	 * enclosing repetition the possessive one sets the group in another
+	 * iteration than <tt>java.util.regex</tt> does.
+	 * <p>
+	 * A {@link Program} does not give the same results as possessive
+	 * repetitions, so the programs must be compiled before.
+	 *
+	 * @param studied
+	 *            the chars the matches of the nodes studied so far start
+	 *            with.
+	 */
+	private static void possessive(Node node, Map<Node, FirstChars> studied) {
+		while (node != null && node != accept && !(node instanceof LastNode)
+				&& !(node instanceof Loop) && !(node instanceof BranchConn)) {
+			if (node instanceof Curly) {
+				Curly curly = (Curly) node;
+				if (curly.type == GREEDY && curly.cmax > curly.cmin
+						&& disjoint(curly.atom, curly.next, studied)) {
+					curly.type = POSSESSIVE;
+				}
+				possessive(curly.atom, studied);
+			} else if (node instanceof GroupCurly) {
+				GroupCurly curly = (GroupCurly) node;
+				if (curly.type == GREEDY && curly.cmax > curly.cmin
+						&& !curly.capture && !capturing(curly.atom)
+						&& disjoint(curly.atom, curly.next, studied)) {
+					curly.type = POSSESSIVE;
+				}
+				possessive(curly.atom, studied);
+			} else if (node instanceof Ques) {
+				possessive(((Ques) node).atom, studied);
+			} else if (node instanceof Branch) {
+				Branch branch = (Branch) node;
+				for (int n = 0; n < branch.size; n++) {
+					possessive(branch.atoms[n], studied);
+				}
+				node = branch.conn;
+			} else if (node instanceof Prolog) {
+				Loop loop = ((Prolog) node).loop;
+				possessive(loop.body, studied);
+				node = loop;
+			}
+			node = node.next;
+		}
+	}
+
+	/**
+	 * Returns true if the given node or one of its next nodes captures a
+	 * group.
+	 */
+	private static boolean capturing(Node node) {
+		while (node != null && node != accept && !(node instanceof LastNode)
+				&& !(node instanceof Loop) && !(node instanceof BranchConn)) {
+			if (node instanceof GroupTail) {
+				if (((GroupTail) node).groupIndex > 0) {
+					return true;
+				}
+			} else if (node instanceof Curly) {
+				if (capturing(((Curly) node).atom)) {
+					return true;
+				}
+			} else if (node instanceof GroupCurly) {
+				GroupCurly curly = (GroupCurly) node;
+				if (curly.capture || capturing(curly.atom)) {
+					return true;
+				}
+			} else if (node instanceof Ques) {
+				if (capturing(((Ques) node).atom)) {
+					return true;
+				}
+			} else if (node instanceof Branch) {
+				Branch branch = (Branch) node;
+				for (int n = 0; n < branch.size; n++) {
+					if (capturing(branch.atoms[n])) {
+						return true;
+					}
+				}
+				node = branch.conn;
+			} else if (node instanceof Prolog) {
+				Loop loop = ((Prolog) node).loop;
+				if (capturing(loop.body)) {
+					return true;
+				}
+				node = loop;
+			}
+			node = node.next;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns true if a match of the given next node cannot start with a char
+	 * a match of the given atom starts with.
+	 */
+	private static boolean disjoint(Node atom, Node next,
+			Map<Node, FirstChars> studied) {
+		FirstChars first = study(atom, studied);
+		if (first == null) {
+			return false;
+		}
+		FirstChars following = study(next, studied);
+		return following != null && !first.intersects(following);
+	}
+
+	/**
+	 * Returns the chars the matches of the given node start with, see
+	 * {@link FirstChars#study(Node)}. Each node is studied once.
+	 */
+	private static FirstChars study(Node node, Map<Node, FirstChars> studied) {
+		if (studied.containsKey(node)) {
+			return studied.get(node);
+		}
+		FirstChars first = FirstChars.study(node);
+		studied.put(node, first);
+		return first;
+	}
+
+	// NEW END BY rwoo
 	/**
 	 * Used to print out a subtree of the Pattern to help with debugging.
 	 */
@@ -2237,6 +2603,11 @@ public final class Pattern implements java.io.Serializable {
 				}
 			}
 			if (peek() != '|') {
+				// NEW BEGIN BY rwoo
+				if (prev instanceof Branch) {
+					return LiteralBranch.optimize((Branch) prev);
+				}
+				// NEW END BY rwoo
 				return prev;
 			}
 			next();
@@ -2268,7 +2639,9 @@ public final class Pattern implements java.io.Serializable {
 				tail = root;
 				continue;
 			case '[':
-				node = clazz(true);
+				// NEW BEGIN BY rwoo
+				node = flatten(clazz(true));
+				// NEW END BY rwoo
 				break;
 			case '\\':
 				ch = nextEscaped();
@@ -2281,7 +2654,9 @@ public final class Pattern implements java.io.Serializable {
 					} else {
 						oneLetter = false;
 					}
-					node = family(oneLetter).maybeComplement(comp);
+					// NEW BEGIN BY rwoo
+					node = flatten(family(oneLetter).maybeComplement(comp));
+					// NEW END BY rwoo
 				} else {
 					unread();
 					node = atom();
@@ -2457,6 +2832,13 @@ public final class Pattern implements java.io.Serializable {
 	 * in the regex.
 	 */
 	private Node ref(int refNum) {
+		// NEW BEGIN BY rwoo
+		if (has(BOUNDS_ONLY)) {
+			throw error("Back references are not supported without "
+					+ "capturing groups");
+		}
+		hasBackReferences = true;
+		// NEW END BY rwoo
 		boolean done = false;
 		while (!done) {
 			int ch = peek();
@@ -2754,6 +3136,20 @@ public final class Pattern implements java.io.Serializable {
 		}
 	}
 
+	// NEW BEGIN BY rwoo
+	/**
+	 * Returns a {@link CharTable} for the given class if the class is composed
+	 * of other classes, otherwise the class itself.
+	 */
+	private static CharProperty flatten(CharProperty property) {
+		if (property instanceof CompositeCharProperty) {
+			return new CharTable(property);
+		}
+		return property;
+	}
+
+	// NEW END BY rwoo
+
 	private CharProperty bitsOrSingle(BitClass bits, int ch) {
 		/*
 		 * Bits can only handle codepoints in [u+0000-u+00ff] range. Use
@@ -2885,12 +3281,14 @@ public final class Pattern implements java.io.Serializable {
 		} catch (IllegalArgumentException iae) {
 			throw error("Unknown character block name {" + name + "}");
 		}
-		return new CharProperty() {
+		// NEW BEGIN BY rwoo
+		return CharTable.shared(block, new CharProperty() {
 			@Override
 			boolean isSatisfiedBy(int ch) {
 				return block == Character.UnicodeBlock.of(ch);
 			}
-		};
+		});
+		// NEW END BY rwoo
 	}
 
 	/**
@@ -2986,8 +3384,10 @@ public final class Pattern implements java.io.Serializable {
 				break;
 			}
 		} else { // (xxx) a regular group
-			capturingGroup = true;
-			head = createGroup(false);
+			// NEW BEGIN BY rwoo
+			capturingGroup = !has(BOUNDS_ONLY);
+			head = createGroup(!capturingGroup);
+			// NEW END BY rwoo
 			tail = root;
 			head.next = expr(tail);
 		}
@@ -3399,6 +3799,18 @@ public final class Pattern implements java.io.Serializable {
 		boolean isSatisfiedBy(int ch) {
 			return ch < 256 && bits[ch];
 		}
+
+		// NEW BEGIN BY rwoo
+		@Override
+		boolean addBmpChars(long[] bits) {
+			for (int ch = 0; ch < 256; ch++) {
+				if (this.bits[ch]) {
+					bits[ch >>> 6] |= 1L << ch;
+				}
+			}
+			return true;
+		}
+		// NEW END BY rwoo
 	}
 
 	/**
@@ -3514,12 +3926,21 @@ public final class Pattern implements java.io.Serializable {
 	 */
 	static class Start extends Node {
 		int minLength;
+		// NEW BEGIN BY rwoo
+		/**
+		 * The chars a match can start with, or null if unknown.
+		 */
+		FirstChars firstChars;
+		// NEW END BY rwoo
 
 		Start(Node node) {
 			this.next = node;
 			TreeInfo info = new TreeInfo();
 			next.study(info);
 			minLength = info.minLength;
+			// NEW BEGIN BY rwoo
+			firstChars = FirstChars.study(node);
+			// NEW END BY rwoo
 		}
 
 		@Override
@@ -3531,7 +3952,12 @@ public final class Pattern implements java.io.Serializable {
 			boolean ret = false;
 			int guard = matcher.to - minLength;
 			for (; i <= guard; i++) {
-				if (ret = next.match(matcher, i, seq))
+				// NEW BEGIN BY rwoo
+				// no match can start at a char that is not a first char
+				boolean skip = firstChars != null && i < matcher.to
+						&& !firstChars.contains(matcher.charAt(i));
+				// NEW END BY rwoo
+				if (!skip && (ret = next.match(matcher, i, seq)))
 					break;
 				if (i == guard)
 					matcher.hitEnd = true;
@@ -3570,7 +3996,12 @@ public final class Pattern implements java.io.Serializable {
 			boolean ret = false;
 			int guard = matcher.to - minLength;
 			while (i <= guard) {
-				if ((ret = next.match(matcher, i, seq)) || i == guard)
+				// NEW BEGIN BY rwoo
+				// no match can start at a char that is not a first char
+				boolean skip = firstChars != null && i < matcher.to
+						&& !firstChars.contains(seq.charAt(i));
+				// NEW END BY rwoo
+				if ((ret = !skip && next.match(matcher, i, seq)) || i == guard)
 					break;
 				// Optimization to move to the next character. This is
 				// faster than countChars(seq, i, 1).
@@ -3592,6 +4023,130 @@ public final class Pattern implements java.io.Serializable {
 		}
 	}
 
+	// NEW BEGIN BY rwoo
+	/**
+	 * Matches the pattern with a {@link PikeVm} at a given position. Replaces
+	 * the match root if {@link Pattern#LINEAR_TIME} is set.
+	 */
+	static final class Linear extends Node {
+		final Program program;
+		final Node pattern;
+
+		Linear(Program program, Node pattern) {
+			this.program = program;
+			this.pattern = pattern;
+		}
+
+		@Override
+		boolean match(Matcher matcher, int i, CharSequence seq) {
+			return matcher.pikeVm(program).match(matcher, i, seq);
+		}
+
+		@Override
+		boolean study(TreeInfo info) {
+			return pattern.study(info);
+		}
+	}
+
+	/**
+	 * Guards the nodes of a pattern that recurse for each repetition of a
+	 * group. The nodes match as long as the repetitions stay close to the
+	 * start of the match. If the nodes would recurse deeper, they give up and
+	 * a {@link Backtracker} matches the pattern without recursion.
+	 * <p>
+	 * If the program is {@link Program#ambiguous}, the backtracker always
+	 * matches the pattern. Its memo keeps the nodes from trying the same
+	 * repetition at the same position over and over again.
+	 */
+	static final class Backtrack extends Node {
+		/**
+		 * Thrown by the nodes if a repetition starts after
+		 * {@link Matcher#backtrackAfter}.
+		 */
+		static final class TooDeep extends RuntimeException {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public synchronized Throwable fillInStackTrace() {
+				return this;
+			}
+		}
+
+		static final TooDeep TOO_DEEP = new TooDeep();
+
+		/**
+		 * The maximum number of calls of nodes on the stack, roughly.
+		 */
+		private static final int MAX_CALLS = 4096;
+
+		final Program program;
+		final Node pattern;
+
+		/**
+		 * The number of chars the nodes may match before they give up.
+		 */
+		final int depth;
+
+		Backtrack(Program program, Node pattern) {
+			this.program = program;
+			this.pattern = pattern;
+			this.depth = Math.max(1, MAX_CALLS / program.size);
+		}
+
+		@Override
+		boolean match(Matcher matcher, int i, CharSequence seq) {
+			if (program.ambiguous) {
+				return matcher.backtracker(program).match(matcher, i, seq);
+			}
+			if (matcher.to - i <= depth) {
+				return pattern.match(matcher, i, seq);
+			}
+			Backtracker backtracker = matcher.backtracker(program);
+			backtracker.save(matcher);
+			matcher.backtrackAfter = i + depth;
+			try {
+				return pattern.match(matcher, i, seq);
+			} catch (TooDeep e) {
+				backtracker.restore(matcher);
+				return backtracker.match(matcher, i, seq);
+			} finally {
+				matcher.backtrackAfter = Integer.MAX_VALUE;
+			}
+		}
+
+		@Override
+		boolean study(TreeInfo info) {
+			return pattern.study(info);
+		}
+	}
+
+	/**
+	 * Finds the leftmost match with a {@link PikeVm}. Replaces {@link Start}
+	 * and {@link StartS} if {@link Pattern#LINEAR_TIME} is set.
+	 */
+	static final class LinearStart extends Node {
+		final Program program;
+		final int minLength;
+		final boolean supplementary;
+
+		LinearStart(Program program, int minLength, boolean supplementary) {
+			this.program = program;
+			this.minLength = minLength;
+			this.supplementary = supplementary;
+		}
+
+		@Override
+		boolean match(Matcher matcher, int i, CharSequence seq) {
+			if (i > matcher.to - minLength) {
+				matcher.hitEnd = true;
+				return false;
+			}
+			return matcher.pikeVm(program).find(matcher, i,
+					matcher.to - minLength, seq, supplementary);
+		}
+	}
+
+	// NEW END BY rwoo
 	/**
 	 * Node to anchor at the beginning of input. This object implements the
 	 * match for a \A sequence, and the caret anchor will use this if not in
@@ -3825,11 +4380,25 @@ public final class Pattern implements java.io.Serializable {
 	 * Abstract node class to match one character satisfying some boolean
 	 * property.
 	 */
-	private static abstract class CharProperty extends Node {
+	static abstract class CharProperty extends Node {
 		abstract boolean isSatisfiedBy(int ch);
 
 		CharProperty complement() {
-			return new CharProperty() {
+			// NEW BEGIN BY rwoo
+			return new CompositeCharProperty() {
+				@Override
+				boolean addBmpChars(long[] bits) {
+					long[] chars = new long[BMP_WORDS];
+					if (!CharProperty.this.addBmpChars(chars)) {
+						return false;
+					}
+					for (int i = 0; i < BMP_WORDS; i++) {
+						bits[i] |= ~chars[i];
+					}
+					return true;
+				}
+
+				// NEW END BY rwoo
 				@Override
 				boolean isSatisfiedBy(int ch) {
 					return !CharProperty.this.isSatisfiedBy(ch);
@@ -3841,6 +4410,18 @@ public final class Pattern implements java.io.Serializable {
 			return complement ? complement() : this;
 		}
 
+		// NEW BEGIN BY rwoo
+		/**
+		 * Adds the BMP chars that satisfy this property to the given bitmap.
+		 * Returns false if the chars cannot be listed without asking the
+		 * property for each BMP char, e.g. for a Unicode category. Some
+		 * bits may have been added then.
+		 */
+		boolean addBmpChars(long[] bits) {
+			return false;
+		}
+		// NEW END BY rwoo
+
 		@Override
 		boolean match(Matcher matcher, int i, CharSequence seq) {
 			if (i < matcher.to) {
@@ -3861,15 +4442,253 @@ public final class Pattern implements java.io.Serializable {
 		}
 	}
 
+	// NEW BEGIN BY rwoo
+	/**
+	 * A CharProperty that is composed of other CharProperty nodes, e.g. the
+	 * complement, union, intersection or difference of classes.
+	 */
+	static abstract class CompositeCharProperty extends CharProperty {
+	}
+
+	/**
+	 * The number of longs of a bitmap with a bit for each BMP char.
+	 */
+	static final int BMP_WORDS = 0x10000 >>> 6;
+
+	/**
+	 * Sets the bits of the BMP chars from <code>from</code> to
+	 * <code>to</code>, both inclusive.
+	 */
+	static void setRange(long[] bits, int from, int to) {
+		to = Math.min(to, 0xFFFF);
+		while (from <= to && (from & 63) != 0) {
+			bits[from >>> 6] |= 1L << from;
+			from++;
+		}
+		while (from + 63 <= to) {
+			bits[from >>> 6] = -1L;
+			from += 64;
+		}
+		while (from <= to) {
+			bits[from >>> 6] |= 1L << from;
+			from++;
+		}
+	}
+
+	/**
+	 * The BMP chars that Unicode case-insensitive matching relates to other
+	 * chars. The table is built once, when a pattern needs it.
+	 */
+	static final class CaseFolding {
+
+		/**
+		 * The chars that other chars are related to, in ascending order.
+		 */
+		private static final int[] keys;
+
+		/**
+		 * For each key the BMP chars whose upper case or whose lower case of
+		 * the upper case is the key.
+		 */
+		private static final char[][] related;
+
+		static {
+			TreeMap<Integer, StringBuilder> map =
+					new TreeMap<Integer, StringBuilder>();
+			for (int ch = 0; ch <= 0xFFFF; ch++) {
+				int upper = Character.toUpperCase(ch);
+				int lower = Character.toLowerCase(upper);
+				if (upper != ch) {
+					add(map, upper, ch);
+				}
+				if (lower != ch && lower != upper) {
+					add(map, lower, ch);
+				}
+			}
+			keys = new int[map.size()];
+			related = new char[map.size()][];
+			int n = 0;
+			for (Map.Entry<Integer, StringBuilder> entry : map.entrySet()) {
+				keys[n] = entry.getKey();
+				related[n++] = entry.getValue().toString().toCharArray();
+			}
+		}
+
+		private static void add(Map<Integer, StringBuilder> map, int key,
+				int ch) {
+			StringBuilder chars = map.get(key);
+			if (chars == null) {
+				chars = new StringBuilder();
+				map.put(key, chars);
+			}
+			chars.append((char) ch);
+		}
+
+		/**
+		 * Returns true if there are chars that are related to the given
+		 * char.
+		 */
+		static boolean hasRelated(int ch) {
+			return Arrays.binarySearch(keys, ch) >= 0;
+		}
+
+		/**
+		 * Adds the chars that are related to the chars from
+		 * <code>from</code> to <code>to</code> and satisfy the given
+		 * property to the given bitmap. All related chars are added if the
+		 * property is null.
+		 */
+		static void addRelated(long[] bits, int from, int to,
+				CharProperty property) {
+			int n = Arrays.binarySearch(keys, from);
+			if (n < 0) {
+				n = -n - 1;
+			}
+			for (; n < keys.length && keys[n] <= to; n++) {
+				for (char ch : related[n]) {
+					if (property == null || property.isSatisfiedBy(ch)) {
+						bits[ch >>> 6] |= 1L << ch;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * A class composed of other classes, evaluated once for all BMP chars. A
+	 * BMP char is looked up in a bitmap instead of walking the tree of
+	 * CharProperty nodes. A supplementary code point still asks the tree,
+	 * because evaluating it for all code points would make compiling slow.
+	 * A high surrogate asks the tree, too, so that a loop over the bitmap
+	 * stops at each char that might start a supplementary code point.
+	 * <p>
+	 * The named classes like Unicode categories, blocks and the java
+	 * properties are tables, too. Their bitmaps are built once and shared by
+	 * all patterns.
+	 */
+	static final class CharTable extends CharProperty {
+		/**
+		 * The bitmaps of the named classes, see
+		 * {@link #shared(Object, CharProperty)}.
+		 */
+		private static final ConcurrentMap<Object, long[][]> sharedBits =
+				new ConcurrentHashMap<Object, long[][]>();
+
+		/**
+		 * A bit for each BMP char, 0 for the high surrogates.
+		 */
+		final long[] bits;
+
+		/**
+		 * The bits of the high surrogates that satisfy the property, used to
+		 * list the chars of the table without asking the tree.
+		 */
+		private final long[] highSurrogates;
+
+		/**
+		 * The tree of CharProperty nodes.
+		 */
+		final CharProperty property;
+
+		CharTable(CharProperty property) {
+			this(property, bitsOf(property));
+		}
+
+		private CharTable(CharProperty property, long[][] bits) {
+			this.property = property;
+			this.bits = bits[0];
+			this.highSurrogates = bits[1];
+		}
+
+		/**
+		 * Returns a table for a named class. The bitmap is built the first
+		 * time the class is used and then shared by all patterns.
+		 *
+		 * @param key
+		 *            identifies the class.
+		 * @param property
+		 *            the class.
+		 */
+		static CharTable shared(Object key, CharProperty property) {
+			long[][] bits = sharedBits.get(key);
+			if (bits == null) {
+				bits = bitsOf(property);
+				long[][] other = sharedBits.putIfAbsent(key, bits);
+				if (other != null) {
+					bits = other;
+				}
+			}
+			return new CharTable(property, bits);
+		}
+
+		/**
+		 * Returns the bitmap of the BMP chars without the high surrogates and
+		 * the bitmap of the high surrogates.
+		 */
+		private static long[][] bitsOf(CharProperty property) {
+			long[] bits = new long[BMP_WORDS];
+			if (!property.addBmpChars(bits)) {
+				// the property cannot list its chars, so ask it for each char
+				bits = new long[BMP_WORDS];
+				for (int ch = 0; ch <= 0xFFFF; ch++) {
+					if (property.isSatisfiedBy(ch)) {
+						bits[ch >>> 6] |= 1L << ch;
+					}
+				}
+			}
+			int from = Character.MIN_HIGH_SURROGATE >>> 6;
+			int to = (Character.MAX_HIGH_SURROGATE >>> 6) + 1;
+			long[] highSurrogates = Arrays.copyOfRange(bits, from, to);
+			Arrays.fill(bits, from, to, 0);
+			return new long[][] { bits, highSurrogates };
+		}
+
+		@Override
+		boolean addBmpChars(long[] bits) {
+			for (int i = 0; i < BMP_WORDS; i++) {
+				bits[i] |= this.bits[i];
+			}
+			int from = Character.MIN_HIGH_SURROGATE >>> 6;
+			for (int i = 0; i < highSurrogates.length; i++) {
+				bits[from + i] |= highSurrogates[i];
+			}
+			return true;
+		}
+
+		@Override
+		boolean isSatisfiedBy(int ch) {
+			if (ch <= 0xFFFF && !Character.isHighSurrogate((char) ch)) {
+				return (bits[ch >>> 6] & (1L << ch)) != 0;
+			}
+			return property.isSatisfiedBy(ch);
+		}
+
+		@Override
+		boolean match(Matcher matcher, int i, CharSequence seq) {
+			if (i < matcher.to) {
+				char ch = matcher.charAt(i);
+				if (!Character.isHighSurrogate(ch)) {
+					return (bits[ch >>> 6] & (1L << ch)) != 0
+							&& next.match(matcher, i + 1, seq);
+				}
+			}
+			return super.match(matcher, i, seq);
+		}
+	}
+
+	// NEW END BY rwoo
+
 	/**
 	 * Optimized version of CharProperty that works only for properties never
 	 * satisfied by Supplementary characters.
 	 */
-	private static abstract class BmpCharProperty extends CharProperty {
+	static abstract class BmpCharProperty extends CharProperty {
 		@Override
 		boolean match(Matcher matcher, int i, CharSequence seq) {
 			if (i < matcher.to) {
-				return isSatisfiedBy(seq.charAt(i))
+				// NEW BEGIN BY rwoo
+				return isSatisfiedBy(matcher.charAt(i))
+				// NEW END BY rwoo
 						&& next.match(matcher, i + 1, seq);
 			} else {
 				matcher.hitEnd = true;
@@ -3892,6 +4711,14 @@ public final class Pattern implements java.io.Serializable {
 		boolean isSatisfiedBy(int ch) {
 			return ch == c;
 		}
+
+		// NEW BEGIN BY rwoo
+		@Override
+		boolean addBmpChars(long[] bits) {
+			// a supplementary char is not a BMP char
+			return true;
+		}
+		// NEW END BY rwoo
 	}
 
 	/**
@@ -3908,6 +4735,14 @@ public final class Pattern implements java.io.Serializable {
 		boolean isSatisfiedBy(int ch) {
 			return ch == c;
 		}
+
+		// NEW BEGIN BY rwoo
+		@Override
+		boolean addBmpChars(long[] bits) {
+			bits[c >>> 6] |= 1L << c;
+			return true;
+		}
+		// NEW END BY rwoo
 	}
 
 	/**
@@ -3926,6 +4761,15 @@ public final class Pattern implements java.io.Serializable {
 		boolean isSatisfiedBy(int ch) {
 			return ch == lower || ch == upper;
 		}
+
+		// NEW BEGIN BY rwoo
+		@Override
+		boolean addBmpChars(long[] bits) {
+			bits[lower >>> 6] |= 1L << lower;
+			bits[upper >>> 6] |= 1L << upper;
+			return true;
+		}
+		// NEW END BY rwoo
 	}
 
 	/**
@@ -3944,6 +4788,17 @@ public final class Pattern implements java.io.Serializable {
 					|| lower == Character
 							.toLowerCase(Character.toUpperCase(ch));
 		}
+
+		// NEW BEGIN BY rwoo
+		@Override
+		boolean addBmpChars(long[] bits) {
+			if (lower <= 0xFFFF) {
+				bits[lower >>> 6] |= 1L << lower;
+			}
+			CaseFolding.addRelated(bits, lower, lower, this);
+			return true;
+		}
+		// NEW END BY rwoo
 	}
 
 	/**
@@ -3976,6 +4831,18 @@ public final class Pattern implements java.io.Serializable {
 		boolean isSatisfiedBy(int ch) {
 			return ch < 128 && ASCII.isType(ch, ctype);
 		}
+
+		// NEW BEGIN BY rwoo
+		@Override
+		boolean addBmpChars(long[] bits) {
+			for (int ch = 0; ch < 128; ch++) {
+				if (ASCII.isType(ch, ctype)) {
+					bits[ch >>> 6] |= 1L << ch;
+				}
+			}
+			return true;
+		}
+		// NEW END BY rwoo
 	}
 
 	/**
@@ -4008,6 +4875,22 @@ public final class Pattern implements java.io.Serializable {
 		boolean match(Matcher matcher, int i, CharSequence seq) {
 			int[] buf = buffer;
 			int len = buf.length;
+			// NEW BEGIN BY rwoo
+			char[] chars = matcher.chars;
+			if (chars != null) {
+				int end = Math.min(len, matcher.to - i);
+				int base = matcher.offset + i;
+				for (int j = 0; j < end; j++) {
+					if (buf[j] != chars[base + j])
+						return false;
+				}
+				if (end < len) {
+					matcher.hitEnd = true;
+					return false;
+				}
+				return next.match(matcher, i + len, seq);
+			}
+			// NEW END BY rwoo
 			for (int j = 0; j < len; j++) {
 				if ((i + j) >= matcher.to) {
 					matcher.hitEnd = true;
@@ -4033,12 +4916,18 @@ public final class Pattern implements java.io.Serializable {
 		boolean match(Matcher matcher, int i, CharSequence seq) {
 			int[] buf = buffer;
 			int len = buf.length;
+			// NEW BEGIN BY rwoo
+			char[] chars = matcher.chars;
+			int base = matcher.offset + i;
+			// NEW END BY rwoo
 			for (int j = 0; j < len; j++) {
 				if ((i + j) >= matcher.to) {
 					matcher.hitEnd = true;
 					return false;
 				}
-				int c = seq.charAt(i + j);
+				// NEW BEGIN BY rwoo
+				int c = chars != null ? chars[base + j] : seq.charAt(i + j);
+				// NEW END BY rwoo
 				if (buf[j] != c && buf[j] != ASCII.toLower(c))
 					return false;
 			}
@@ -4059,12 +4948,18 @@ public final class Pattern implements java.io.Serializable {
 		boolean match(Matcher matcher, int i, CharSequence seq) {
 			int[] buf = buffer;
 			int len = buf.length;
+			// NEW BEGIN BY rwoo
+			char[] chars = matcher.chars;
+			int base = matcher.offset + i;
+			// NEW END BY rwoo
 			for (int j = 0; j < len; j++) {
 				if ((i + j) >= matcher.to) {
 					matcher.hitEnd = true;
 					return false;
 				}
-				int c = seq.charAt(i + j);
+				// NEW BEGIN BY rwoo
+				int c = chars != null ? chars[base + j] : seq.charAt(i + j);
+				// NEW END BY rwoo
 				if (buf[j] != c
 						&& buf[j] != Character.toLowerCase(Character
 								.toUpperCase(c)))
@@ -4168,6 +5063,14 @@ public final class Pattern implements java.io.Serializable {
 			boolean isSatisfiedBy(int ch) {
 				return inRange(lower, ch, upper);
 			}
+
+			// NEW BEGIN BY rwoo
+			@Override
+			boolean addBmpChars(long[] bits) {
+				setRange(bits, lower, upper);
+				return true;
+			}
+			// NEW END BY rwoo
 		};
 	}
 
@@ -4187,6 +5090,15 @@ public final class Pattern implements java.io.Serializable {
 					return inRange(lower, up, upper)
 							|| inRange(lower, Character.toLowerCase(up), upper);
 				}
+
+				// NEW BEGIN BY rwoo
+				@Override
+				boolean addBmpChars(long[] bits) {
+					setRange(bits, lower, upper);
+					CaseFolding.addRelated(bits, lower, upper, this);
+					return true;
+				}
+				// NEW END BY rwoo
 			};
 		return new CharProperty() {
 			@Override
@@ -4196,6 +5108,19 @@ public final class Pattern implements java.io.Serializable {
 						&& (inRange(lower, ASCII.toUpper(ch), upper) || inRange(
 								lower, ASCII.toLower(ch), upper));
 			}
+
+			// NEW BEGIN BY rwoo
+			@Override
+			boolean addBmpChars(long[] bits) {
+				setRange(bits, lower, upper);
+				for (int ch = 0; ch < 128; ch++) {
+					if (isSatisfiedBy(ch)) {
+						bits[ch >>> 6] |= 1L << ch;
+					}
+				}
+				return true;
+			}
+			// NEW END BY rwoo
 		};
 	}
 
@@ -4208,6 +5133,14 @@ public final class Pattern implements java.io.Serializable {
 		boolean isSatisfiedBy(int ch) {
 			return true;
 		}
+
+		// NEW BEGIN BY rwoo
+		@Override
+		boolean addBmpChars(long[] bits) {
+			Arrays.fill(bits, -1L);
+			return true;
+		}
+		// NEW END BY rwoo
 	}
 
 	/**
@@ -4218,6 +5151,21 @@ public final class Pattern implements java.io.Serializable {
 		boolean isSatisfiedBy(int ch) {
 			return (ch != '\n' && ch != '\r' && (ch | 1) != '\u2029' && ch != '\u0085');
 		}
+
+		// NEW BEGIN BY rwoo
+		@Override
+		boolean addBmpChars(long[] bits) {
+			long[] chars = new long[BMP_WORDS];
+			Arrays.fill(chars, -1L);
+			for (int ch : new int[] { '\n', '\r', 0x2028, 0x2029, 0x85 }) {
+				chars[ch >>> 6] &= ~(1L << ch);
+			}
+			for (int i = 0; i < BMP_WORDS; i++) {
+				bits[i] |= chars[i];
+			}
+			return true;
+		}
+		// NEW END BY rwoo
 	}
 
 	/**
@@ -4229,6 +5177,15 @@ public final class Pattern implements java.io.Serializable {
 		boolean isSatisfiedBy(int ch) {
 			return ch != '\n';
 		}
+
+		// NEW BEGIN BY rwoo
+		@Override
+		boolean addBmpChars(long[] bits) {
+			Arrays.fill(bits, 1, BMP_WORDS, -1L);
+			bits[0] |= ~(1L << '\n');
+			return true;
+		}
+		// NEW END BY rwoo
 	}
 
 	/**
@@ -4298,6 +5255,14 @@ public final class Pattern implements java.io.Serializable {
 
 		@Override
 		boolean match(Matcher matcher, int i, CharSequence seq) {
+			// NEW BEGIN BY rwoo
+			if (type != LAZY && atom.next == accept) {
+				int end = matchedChars(matcher, i, seq);
+				if (end >= 0) {
+					return matchChars(matcher, i, end, seq);
+				}
+			}
+			// NEW END BY rwoo
 			int j;
 			for (j = 0; j < cmin; j++) {
 				if (atom.match(matcher, i, seq)) {
@@ -4390,6 +5355,78 @@ public final class Pattern implements java.io.Serializable {
 			return next.match(matcher, i, seq);
 		}
 
+		// NEW BEGIN BY rwoo
+		/**
+		 * Returns the end of the chars from <code>i</code> on that the atom
+		 * matches, at most <code>cmax</code> chars, or -1 if the atom does not
+		 * match a single BMP char. A {@link CharTable} may match a
+		 * supplementary code point, so -1 is returned if a high surrogate
+		 * stops the chars.
+		 */
+		private int matchedChars(Matcher matcher, int i, CharSequence seq) {
+			char[] chars = matcher.chars;
+			int offset = matcher.offset;
+			int to = matcher.to;
+			// the chars up to this position can be matched
+			int end = cmax > to - i ? to : i + cmax;
+			if (atom instanceof BmpCharProperty) {
+				BmpCharProperty property = (BmpCharProperty) atom;
+				for (; i < end; i++) {
+					if (!property.isSatisfiedBy(chars != null ? chars[offset
+							+ i] : seq.charAt(i))) {
+						break;
+					}
+				}
+				return i;
+			} else if (atom instanceof CharTable) {
+				long[] bits = ((CharTable) atom).bits;
+				for (; i < end; i++) {
+					char ch = chars != null ? chars[offset + i] : seq.charAt(i);
+					if ((bits[ch >>> 6] & (1L << ch)) == 0) {
+						break;
+					}
+				}
+				if (i < end && Character.isHighSurrogate(matcher.charAt(i))) {
+					return -1;
+				}
+				return i;
+			}
+			return -1;
+		}
+
+		/**
+		 * Greedy or possessive match of an atom that is a single BMP char. The
+		 * atom matches the chars from <code>start</code> to <code>i</code>,
+		 * see {@link #matchedChars(Matcher, int, CharSequence)}. Otherwise the
+		 * same as {@link #match0(Matcher, int, int, CharSequence)} and
+		 * {@link #match2(Matcher, int, int, CharSequence)}.
+		 */
+		private boolean matchChars(Matcher matcher, int start, int i,
+				CharSequence seq) {
+			if (i == matcher.to && i - start < cmax) {
+				// the atom has been matched at the end
+				matcher.hitEnd = true;
+			}
+			if (i > start) {
+				// the atom has been matched, see Node.match()
+				matcher.last = i;
+				matcher.groups[0] = matcher.first;
+				matcher.groups[1] = i;
+			}
+			if (i - start < cmin) {
+				return false;
+			}
+			if (type != GREEDY) {
+				return next.match(matcher, i, seq);
+			}
+			for (; i - start >= cmin; i--) {
+				if (next.match(matcher, i, seq))
+					return true;
+			}
+			return false;
+		}
+		// NEW END BY rwoo
+
 		@Override
 		boolean study(TreeInfo info) {
 			// Save original info
@@ -4505,6 +5542,11 @@ public final class Pattern implements java.io.Serializable {
 
 		// Aggressive group match
 		boolean match0(Matcher matcher, int i, int j, CharSequence seq) {
+			// NEW BEGIN BY rwoo
+			if (i > matcher.backtrackAfter) {
+				throw Backtrack.TOO_DEEP;
+			}
+			// NEW END BY rwoo
 			int[] groups = matcher.groups;
 			int save0 = 0;
 			int save1 = 0;
@@ -4669,7 +5711,7 @@ public final class Pattern implements java.io.Serializable {
 	 * quantifier to branch between the case where it matches once and where it
 	 * does not occur.
 	 */
-	static final class Branch extends Node {
+	static class Branch extends Node {
 		Node[] atoms = new Node[2];
 		int size = 2;
 		Node conn;
@@ -4733,6 +5775,80 @@ public final class Pattern implements java.io.Serializable {
 		}
 	}
 
+	// NEW BEGIN BY rwoo
+	/**
+	 * A branch whose alternatives are literals. The alternatives are looked up
+	 * in a trie, so that the time to match does not depend on the number of
+	 * alternatives. The matching alternatives are tried in the same order as
+	 * by a {@link Branch}, and hitEnd is set as if the alternatives that
+	 * precede the successful one were tried.
+	 */
+	static final class LiteralBranch extends Branch {
+		final LiteralSet literals;
+
+		LiteralBranch(Branch branch, LiteralSet literals) {
+			super(null, null, branch.conn);
+			this.atoms = branch.atoms;
+			this.size = branch.size;
+			this.literals = literals;
+		}
+
+		/**
+		 * Returns a LiteralBranch for the given branch if all its alternatives
+		 * are literals, otherwise the given branch.
+		 */
+		static Branch optimize(Branch branch) {
+			LiteralSet literals = LiteralSet.create(branch.atoms, branch.size,
+					branch.conn);
+			return literals == null ? branch : new LiteralBranch(branch,
+					literals);
+		}
+
+		@Override
+		boolean match(Matcher matcher, int i, CharSequence seq) {
+			LiteralSet literals = this.literals;
+			int[] terminal = literals.terminal;
+			int to = matcher.to;
+			// the first alternative that would hit the end
+			int hitEndIndex = LiteralSet.NONE;
+			// the index of the alternative that was tried last
+			int last = -1;
+			for (;;) {
+				// find the first matching alternative after the last one
+				int index = LiteralSet.NONE;
+				int end = i;
+				int state = 0;
+				for (int j = i;; j++) {
+					int t = terminal[state];
+					if (t > last && t < index) {
+						index = t;
+						end = j;
+					}
+					if (j >= to) {
+						hitEndIndex = literals.longer[state];
+						break;
+					}
+					state = literals.child(state, seq.charAt(j));
+					if (state < 0) {
+						break;
+					}
+				}
+				if (hitEndIndex < index) {
+					matcher.hitEnd = true;
+				}
+				if (index == LiteralSet.NONE) {
+					return false;
+				}
+				if (conn.next.match(matcher, end, seq)) {
+					return true;
+				}
+				last = index;
+			}
+		}
+	}
+
+	// NEW END BY rwoo
+
 	/**
 	 * The GroupHead saves the location where the group begins in the locals and
 	 * restores them when the match is done.
@@ -4812,6 +5928,13 @@ public final class Pattern implements java.io.Serializable {
 		@Override
 		boolean match(Matcher matcher, int i, CharSequence seq) {
 			int tmp = matcher.locals[localIndex];
+			// NEW BEGIN BY rwoo
+			if (tmp >= 0 && groupIndex == 0) {
+				// A pure group does not capture. The bounds of the match are
+				// set when the match succeeds.
+				return next.match(matcher, i, seq);
+			}
+			// NEW END BY rwoo
 			if (tmp >= 0) { // This is the normal group case.
 				// Save the group so we can unset it if it
 				// backs off of a match.
@@ -4875,6 +5998,11 @@ public final class Pattern implements java.io.Serializable {
 
 		@Override
 		boolean match(Matcher matcher, int i, CharSequence seq) {
+			// NEW BEGIN BY rwoo
+			if (i > matcher.backtrackAfter) {
+				throw Backtrack.TOO_DEEP;
+			}
+			// NEW END BY rwoo
 			// Avoid infinite loop in zero-length case.
 			if (i > matcher.locals[beginIndex]) {
 				int count = matcher.locals[countIndex];
@@ -4947,6 +6075,11 @@ public final class Pattern implements java.io.Serializable {
 
 		@Override
 		boolean match(Matcher matcher, int i, CharSequence seq) {
+			// NEW BEGIN BY rwoo
+			if (i > matcher.backtrackAfter) {
+				throw Backtrack.TOO_DEEP;
+			}
+			// NEW END BY rwoo
 			// Check for zero length group
 			if (i > matcher.locals[beginIndex]) {
 				int count = matcher.locals[countIndex];
@@ -5399,11 +6532,20 @@ public final class Pattern implements java.io.Serializable {
 	 */
 	private static CharProperty union(final CharProperty lhs,
 			final CharProperty rhs) {
-		return new CharProperty() {
+		// NEW BEGIN BY rwoo
+		return new CompositeCharProperty() {
+			// NEW END BY rwoo
 			@Override
 			boolean isSatisfiedBy(int ch) {
 				return lhs.isSatisfiedBy(ch) || rhs.isSatisfiedBy(ch);
 			}
+
+			// NEW BEGIN BY rwoo
+			@Override
+			boolean addBmpChars(long[] bits) {
+				return lhs.addBmpChars(bits) && rhs.addBmpChars(bits);
+			}
+			// NEW END BY rwoo
 		};
 	}
 
@@ -5412,11 +6554,28 @@ public final class Pattern implements java.io.Serializable {
 	 */
 	private static CharProperty intersection(final CharProperty lhs,
 			final CharProperty rhs) {
-		return new CharProperty() {
+		// NEW BEGIN BY rwoo
+		return new CompositeCharProperty() {
+			// NEW END BY rwoo
 			@Override
 			boolean isSatisfiedBy(int ch) {
 				return lhs.isSatisfiedBy(ch) && rhs.isSatisfiedBy(ch);
 			}
+
+			// NEW BEGIN BY rwoo
+			@Override
+			boolean addBmpChars(long[] bits) {
+				long[] left = new long[BMP_WORDS];
+				long[] right = new long[BMP_WORDS];
+				if (!lhs.addBmpChars(left) || !rhs.addBmpChars(right)) {
+					return false;
+				}
+				for (int i = 0; i < BMP_WORDS; i++) {
+					bits[i] |= left[i] & right[i];
+				}
+				return true;
+			}
+			// NEW END BY rwoo
 		};
 	}
 
@@ -5425,11 +6584,28 @@ public final class Pattern implements java.io.Serializable {
 	 */
 	private static CharProperty setDifference(final CharProperty lhs,
 			final CharProperty rhs) {
-		return new CharProperty() {
+		// NEW BEGIN BY rwoo
+		return new CompositeCharProperty() {
+			// NEW END BY rwoo
 			@Override
 			boolean isSatisfiedBy(int ch) {
 				return !rhs.isSatisfiedBy(ch) && lhs.isSatisfiedBy(ch);
 			}
+
+			// NEW BEGIN BY rwoo
+			@Override
+			boolean addBmpChars(long[] bits) {
+				long[] left = new long[BMP_WORDS];
+				long[] right = new long[BMP_WORDS];
+				if (!lhs.addBmpChars(left) || !rhs.addBmpChars(right)) {
+					return false;
+				}
+				for (int i = 0; i < BMP_WORDS; i++) {
+					bits[i] |= left[i] & ~right[i];
+				}
+				return true;
+			}
+			// NEW END BY rwoo
 		};
 	}
 
@@ -5536,22 +6712,33 @@ public final class Pattern implements java.io.Serializable {
 	 */
 	static class BnM extends Node {
 		int[] buffer;
-		int[] lastOcc;
+		// NEW BEGIN BY rwoo
+		LastOccurrences lastOcc;
+		// NEW END BY rwoo
 		int[] optoSft;
 
+		// NEW BEGIN BY rwoo
 		/**
 		 * Pre calculates arrays needed to generate the bad character shift and
-		 * the good suffix shift. Only the last seven bits are used to see if
-		 * chars match; This keeps the tables small and covers the heavily used
-		 * ASCII range, but occasionally results in an aliased match for the bad
-		 * character shift.
+		 * the good suffix shift. The bad character shift table does not alias
+		 * chars, see {@link LastOccurrences}. A case insensitive slice gets a
+		 * {@link BnMI}.
 		 */
 		static Node optimize(Node node) {
-			if (!(node instanceof Slice)) {
+			boolean unicode = node instanceof SliceU;
+			if (!(node instanceof Slice || node instanceof SliceI || unicode)) {
 				return node;
 			}
 
-			int[] src = ((Slice) node).buffer;
+			int[] src = ((SliceNode) node).buffer;
+			if (!(node instanceof Slice)) {
+				for (int x = 0; x < src.length; x++) {
+					if (BnMI.fold(src[x], unicode) != src[x]) {
+						return node;
+					}
+				}
+			}
+			// NEW END BY rwoo
 			int patternLength = src.length;
 			// The BM algorithm requires a bit of overhead;
 			// If the pattern is short don't use it, since
@@ -5561,14 +6748,20 @@ public final class Pattern implements java.io.Serializable {
 				return node;
 			}
 			int i, j, k;
-			int[] lastOcc = new int[128];
-			int[] optoSft = new int[patternLength];
+			// NEW BEGIN BY rwoo
 			// Precalculate part of the bad character shift
 			// It is a table for where in the pattern each
-			// lower 7-bit value occurs
-			for (i = 0; i < patternLength; i++) {
-				lastOcc[src[i] & 0x7F] = i + 1;
+			// char occurs
+			int[] other = src;
+			if (!(node instanceof Slice)) {
+				other = new int[patternLength];
+				for (int x = 0; x < patternLength; x++) {
+					other[x] = ASCII.toUpper(src[x]);
+				}
 			}
+			LastOccurrences lastOcc = new LastOccurrences(src, other);
+			// NEW END BY rwoo
+			int[] optoSft = new int[patternLength];
 			// Precalculate the good suffix shift
 			// i is the shift amount being considered
 			NEXT: for (i = patternLength; i > 0; i--) {
@@ -5595,10 +6788,15 @@ public final class Pattern implements java.io.Serializable {
 			optoSft[patternLength - 1] = 1;
 			if (node instanceof SliceS)
 				return new BnMS(src, lastOcc, optoSft, node.next);
+			// NEW BEGIN BY rwoo
+			if (!(node instanceof Slice))
+				return new BnMI(src, other, lastOcc, optoSft, node.next,
+						unicode);
+			// NEW END BY rwoo
 			return new BnM(src, lastOcc, optoSft, node.next);
 		}
 
-		BnM(int[] src, int[] lastOcc, int[] optoSft, Node next) {
+		BnM(int[] src, LastOccurrences lastOcc, int[] optoSft, Node next) {
 			this.buffer = src;
 			this.lastOcc = lastOcc;
 			this.optoSft = optoSft;
@@ -5610,16 +6808,25 @@ public final class Pattern implements java.io.Serializable {
 			int[] src = buffer;
 			int patternLength = src.length;
 			int last = matcher.to - patternLength;
+			// NEW BEGIN BY rwoo
+			char[] chars = matcher.chars;
+			int offset = matcher.offset;
+			// NEW END BY rwoo
 
 			// Loop over all possible match positions in text
 			NEXT: while (i <= last) {
 				// Loop over pattern from right to left
 				for (int j = patternLength - 1; j >= 0; j--) {
-					int ch = seq.charAt(i + j);
+					// NEW BEGIN BY rwoo
+					int ch = chars != null ? chars[offset + i + j] : seq
+							.charAt(i + j);
+					// NEW END BY rwoo
 					if (ch != src[j]) {
 						// Shift search to the right by the maximum of the
 						// bad character shift and the good suffix shift
-						i += Math.max(j + 1 - lastOcc[ch & 0x7F], optoSft[j]);
+						// NEW BEGIN BY rwoo
+						i += Math.max(j + 1 - lastOcc.get(ch), optoSft[j]);
+						// NEW END BY rwoo
 						continue NEXT;
 					}
 				}
@@ -5649,6 +6856,104 @@ public final class Pattern implements java.io.Serializable {
 		}
 	}
 
+	// NEW BEGIN BY rwoo
+	/**
+	 * Case insensitive version of BnM() for the slices of SliceI and SliceU.
+	 * The slice holds folded chars and the tables are built over them. A char
+	 * of the input matches a char of the slice if it is equal to it or if its
+	 * folded char is equal to it, like in SliceI and SliceU.
+	 * <p>
+	 * BnM.optimize() only uses this class if folding does not change the
+	 * chars of the slice. Then two different chars of the slice never match
+	 * the same char of the input, so the good suffix shift of the folded
+	 * chars is valid, and the bad character shift can look up the folded char
+	 * of the input.
+	 */
+	static final class BnMI extends BnM {
+		/**
+		 * The upper case of the ASCII letters of the slice. The bad character
+		 * shift table holds both cases, so an ASCII char of the input is
+		 * compared and looked up without folding it.
+		 */
+		int[] other;
+		boolean unicode;
+
+		BnMI(int[] src, int[] other, LastOccurrences lastOcc, int[] optoSft,
+				Node next, boolean unicode) {
+			super(src, lastOcc, optoSft, next);
+			this.other = other;
+			this.unicode = unicode;
+		}
+
+		/**
+		 * Folds the given char like SliceI or, if <code>unicode</code> is set,
+		 * like SliceU.
+		 */
+		static int fold(int ch, boolean unicode) {
+			if (!unicode || ch < 0x80) {
+				return ASCII.toLower(ch);
+			}
+			return Character.toLowerCase(Character.toUpperCase(ch));
+		}
+
+		@Override
+		boolean match(Matcher matcher, int i, CharSequence seq) {
+			int last = matcher.to - buffer.length;
+			while ((i = indexOf(matcher, i, last, seq)) >= 0) {
+				// Entire pattern matched starting at i
+				matcher.first = i;
+				boolean ret = next.match(matcher, i + buffer.length, seq);
+				if (ret) {
+					matcher.first = i;
+					matcher.groups[0] = matcher.first;
+					matcher.groups[1] = matcher.last;
+					return true;
+				}
+				i++;
+			}
+			matcher.hitEnd = true;
+			return false;
+		}
+
+		/**
+		 * Returns the first position <code>p</code> with
+		 * <code>i &lt;= p &lt;= last</code> where the slice occurs in the
+		 * input, or -1 if there is no such position.
+		 */
+		int indexOf(Matcher matcher, int i, int last, CharSequence seq) {
+			int[] src = buffer;
+			int[] other = this.other;
+			int patternLength = src.length;
+			boolean unicode = this.unicode;
+			char[] chars = matcher.chars;
+			int offset = matcher.offset;
+
+			// Loop over all possible match positions in text
+			NEXT: while (i <= last) {
+				// Loop over pattern from right to left
+				for (int j = patternLength - 1; j >= 0; j--) {
+					int ch = chars != null ? chars[offset + i + j] : seq
+							.charAt(i + j);
+					if (ch != src[j] && ch != other[j]) {
+						// only unicode case folding maps non-ASCII chars
+						if (unicode && ch >= 0x80) {
+							ch = fold(ch, true);
+							if (ch == src[j]) {
+								continue;
+							}
+						}
+						i += Math.max(j + 1 - lastOcc.get(ch), optoSft[j]);
+						continue NEXT;
+					}
+				}
+				return i;
+			}
+			return -1;
+		}
+	}
+
+	// NEW END BY rwoo
+
 	/**
 	 * Supplementary support version of BnM(). Unpaired surrogates are also
 	 * handled by this class.
@@ -5656,7 +6961,7 @@ public final class Pattern implements java.io.Serializable {
 	static final class BnMS extends BnM {
 		int lengthInChars;
 
-		BnMS(int[] src, int[] lastOcc, int[] optoSft, Node next) {
+		BnMS(int[] src, LastOccurrences lastOcc, int[] optoSft, Node next) {
 			super(src, lastOcc, optoSft, next);
 			for (int x = 0; x < buffer.length; x++) {
 				lengthInChars += Character.charCount(buffer[x]);
@@ -5679,8 +6984,10 @@ public final class Pattern implements java.io.Serializable {
 					if (ch != src[x]) {
 						// Shift search to the right by the maximum of the
 						// bad character shift and the good suffix shift
-						int n = Math
-								.max(x + 1 - lastOcc[ch & 0x7F], optoSft[x]);
+						// NEW BEGIN BY rwoo
+						int n = Math.max(x + 1 - lastOcc.get(ch & 0xFFFF),
+								optoSft[x]);
+						// NEW END BY rwoo
 						i += countChars(seq, i, n);
 						continue NEXT;
 					}
@@ -5726,7 +7033,10 @@ public final class Pattern implements java.io.Serializable {
 			map.put(name, new CharPropertyFactory() {
 				@Override
 				CharProperty make() {
-					return new Category(typeMask);
+					// NEW BEGIN BY rwoo
+					return CharTable.shared(Integer.valueOf(typeMask),
+							new Category(typeMask));
+					// NEW END BY rwoo
 				}
 			});
 		}
@@ -5762,11 +7072,16 @@ public final class Pattern implements java.io.Serializable {
 			}
 		}
 
-		private static void defClone(String name, final CloneableProperty p) {
+		// NEW BEGIN BY rwoo
+		private static void defClone(final String name,
+				final CloneableProperty p) {
+			// NEW END BY rwoo
 			map.put(name, new CharPropertyFactory() {
 				@Override
 				CharProperty make() {
-					return p.clone();
+					// NEW BEGIN BY rwoo
+					return CharTable.shared(name, p.clone());
+					// NEW END BY rwoo
 				}
 			});
 		}
@@ -0,0 +1,187 @@
+/**
+ * Copyright (C) 2011 rwoo@gmx.de
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.googlecode.streamflyer.regex.fast;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of compiled patterns. The key of a pattern is its regular
+ * expression and its flags. If the cache is full, the least recently used
+ * pattern is removed.
+ * <p>
+ * A {@link Pattern} is immutable, so a cached pattern can be shared by
+ * modifiers that are used by different threads. {@link FastRegexModifier}
+ * takes its patterns from {@link #getDefault()}.
+ * <p>
+ * The cache is safe for use by multiple concurrent threads. A pattern is
+ * compiled outside of the lock, so a slow compilation does not block the
+ * other threads. If two threads miss the same pattern at the same time, both
+ * compile it and the pattern of the first one is kept.
+ *
+ * @author rwoo
+ *
+ * @since 18.10.2026
+ */
+public final class PatternCache {
+
+	/**
+	 * The maximum number of patterns of the default cache.
+	 */
+	public static final int DEFAULT_MAXIMUM_SIZE = 256;
+
+	private static final PatternCache DEFAULT = new PatternCache(
+			DEFAULT_MAXIMUM_SIZE);
+
+	/**
+	 * The regular expression and the flags of a pattern.
+	 */
+	private static final class Key {
+
+		private final String regex;
+
+		private final int flags;
+
+		Key(String regex, int flags) {
+			this.regex = regex;
+			this.flags = flags;
+		}
+
+		@Override
+		public int hashCode() {
+			return regex.hashCode() * 31 + flags;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if (!(object instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) object;
+			return flags == other.flags && regex.equals(other.regex);
+		}
+	}
+
+	private final int maximumSize;
+
+	/**
+	 * The patterns in the order of their last use. Guarded by itself.
+	 */
+	private final LinkedHashMap<Key, Pattern> patterns;
+
+	private final AtomicLong hitCount = new AtomicLong();
+
+	private final AtomicLong missCount = new AtomicLong();
+
+	/**
+	 * @param maximumSize
+	 *            the maximum number of patterns in the cache.
+	 */
+	public PatternCache(final int maximumSize) {
+		super();
+		if (maximumSize <= 0) {
+			throw new IllegalArgumentException(
+					"maximumSize must be positive: " + maximumSize);
+		}
+		this.maximumSize = maximumSize;
+		this.patterns = new LinkedHashMap<Key, Pattern>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<Key, Pattern> eldest) {
+				return size() > maximumSize;
+			}
+		};
+	}
+
+	/**
+	 * Returns the cache that is used by {@link FastRegexModifier}.
+	 */
+	public static PatternCache getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Returns the cached pattern for the given regular expression and flags.
+	 * If the pattern is not cached, it is compiled and added to the cache.
+	 *
+	 * @see Pattern#compile(String, int)
+	 */
+	public Pattern compile(String regex, int flags) {
+		Key key = new Key(regex, flags);
+		Pattern pattern;
+		synchronized (patterns) {
+			pattern = patterns.get(key);
+		}
+		if (pattern != null) {
+			hitCount.incrementAndGet();
+			return pattern;
+		}
+		missCount.incrementAndGet();
+		// a syntax error is thrown to the caller and nothing is cached
+		Pattern compiled = Pattern.compile(regex, flags);
+		synchronized (patterns) {
+			pattern = patterns.get(key);
+			if (pattern != null) {
+				return pattern;
+			}
+			patterns.put(key, compiled);
+		}
+		return compiled;
+	}
+
+	/**
+	 * Removes all patterns from the cache. The counters are not reset.
+	 */
+	public void clear() {
+		synchronized (patterns) {
+			patterns.clear();
+		}
+	}
+
+	/**
+	 * Returns the number of patterns in the cache.
+	 */
+	public int size() {
+		synchronized (patterns) {
+			return patterns.size();
+		}
+	}
+
+	public int getMaximumSize() {
+		return maximumSize;
+	}
+
+	/**
+	 * Returns the number of calls of {@link #compile(String, int)} that have
+	 * found the pattern in the cache.
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * Returns the number of calls of {@link #compile(String, int)} that have
+	 * compiled the pattern.
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+}
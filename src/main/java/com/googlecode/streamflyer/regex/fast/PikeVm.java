@@ -0,0 +1,1018 @@
+/**
+ * Copyright (C) 2011 rwoo@gmx.de
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.googlecode.streamflyer.regex.fast;
+
+/**
+ * Runs a {@link Program} as a Pike VM: all threads of the program advance in
+ * lockstep over the input, one char at a time. The threads are kept in the
+ * order the backtracking nodes would try them. A thread that reaches an
+ * instruction another thread with higher priority has already reached at the
+ * same position is dropped. So matching takes <code>O(n * m)</code> steps for
+ * an input of length <code>n</code> and a program of size <code>m</code>.
+ * <p>
+ * The results are the same as the results of the backtracking nodes if the
+ * program is {@link Program#exact}. This includes the groups and the values
+ * of {@link Matcher#hitEnd()} and {@link Matcher#requireEnd()}: the
+ * backtracking nodes hit the end if a path they try before the successful
+ * path hits the end. Each thread therefore carries the flags of the threads
+ * with higher priority, i.e. of the paths that are tried before it.
+ * <p>
+ * In {@link #STREAM} mode the VM saves its threads a few chars before the end
+ * of the input. If input is appended, {@link #resume(Matcher, int, int,
+ * CharSequence)} continues with these threads instead of reading the input
+ * from the start position again.
+ * <p>
+ * The VM is not thread-safe. Each {@link Matcher} has its own one.
+ *
+ * @author rwoo
+ *
+ * @since 18.10.2026
+ */
+final class PikeVm {
+
+	/**
+	 * Flag: matching has hit the end of the input.
+	 */
+	static final int HIT_END = 1;
+
+	/**
+	 * Flag: more input could change a match into a mismatch.
+	 */
+	static final int REQUIRE_END = 2;
+
+	/**
+	 * Result of {@link #check(Matcher, CharSequence, Pattern.Node, int)}: the
+	 * assertion holds.
+	 */
+	static final int PASS = 4;
+
+	/**
+	 * Mode: match at a single position.
+	 */
+	private static final int ANCHORED = 0;
+
+	/**
+	 * Mode: find the leftmost match like {@link Pattern.Start}.
+	 */
+	private static final int FIND = 1;
+
+	/**
+	 * Mode: find the first position where matching succeeds or hits the end
+	 * like {@link Matcher#findUnlessHitEnd(int, int)}.
+	 */
+	private static final int STREAM = 2;
+
+	/**
+	 * No position.
+	 */
+	private static final int NONE = Integer.MAX_VALUE;
+
+	/**
+	 * A list of threads ordered by priority.
+	 */
+	private static final class Threads {
+
+		/**
+		 * The instruction of each thread. The value <code>size + pc</code>
+		 * stands for the {@link Program#PROPERTY} instruction <code>pc</code>
+		 * that has matched a supplementary char and skips its low surrogate.
+		 */
+		final int[] pc;
+
+		/**
+		 * The position each thread has started at.
+		 */
+		final int[] start;
+
+		/**
+		 * The flags of the paths that are tried before each thread.
+		 */
+		final int[] flags;
+
+		/**
+		 * The groups and the locals of each thread. Arrays are shared between
+		 * threads, so they are copied before they are modified.
+		 */
+		final int[][] regs;
+
+		int size;
+
+		Threads(int capacity) {
+			pc = new int[capacity];
+			start = new int[capacity];
+			flags = new int[capacity];
+			regs = new int[capacity][];
+		}
+
+		void add(int pc, int start, int flags, int[] regs) {
+			this.pc[size] = pc;
+			this.start[size] = start;
+			this.flags[size] = flags;
+			this.regs[size] = regs;
+			size++;
+		}
+	}
+
+	/**
+	 * The threads and the match of a {@link #STREAM} run at a position where
+	 * the end of the input cannot be seen yet.
+	 */
+	private static final class Checkpoint {
+
+		/**
+		 * The input. Its chars must not change.
+		 */
+		CharSequence seq;
+
+		/**
+		 * The end of the input.
+		 */
+		int to;
+
+		/**
+		 * The last position threads have been started at.
+		 */
+		int lastStart;
+
+		/**
+		 * The position the run has returned.
+		 */
+		int lastFrom;
+
+		/**
+		 * The chars before {@link #lastFrom}, see
+		 * {@link PikeVm#context(Matcher, CharSequence, int)}.
+		 */
+		long context;
+
+		int pos;
+
+		/**
+		 * The chars before {@link #pos}.
+		 */
+		long posContext;
+
+		int nextStart;
+
+		Threads threads;
+
+		boolean matched;
+
+		int matchStart;
+
+		int matchEnd;
+
+		int[] matchRegs;
+
+		int matchFlags;
+	}
+
+	final Program program;
+
+	/**
+	 * True if the program does not depend on the position the search has
+	 * started at, i.e. it does not contain {@link Pattern.Begin} or
+	 * {@link Pattern.LastMatch}. Only then a run can be resumed.
+	 */
+	private final boolean resumable;
+
+	/**
+	 * The number of elements of {@link Matcher#groups}. The locals follow the
+	 * groups in the registers of a thread.
+	 */
+	private final int groupCount;
+
+	private Threads current;
+
+	private Threads next;
+
+	/**
+	 * The generation in which each instruction has been reached last.
+	 */
+	private final int[] marks;
+
+	private int mark;
+
+	/**
+	 * The loops that have been entered at the current position when each
+	 * instruction has been reached in the current generation. See
+	 * {@link Program#scope}.
+	 */
+	private final long[][] entered;
+
+	private final int[] enteredCount;
+
+	private int[] stackPc;
+
+	private long[] stackLoops;
+
+	private int[][] stackRegs;
+
+	// the state of a run
+
+	private Matcher matcher;
+
+	private CharSequence seq;
+
+	private int mode;
+
+	/**
+	 * The flags of the events of the current step.
+	 */
+	private int events;
+
+	/**
+	 * The flags of all events.
+	 */
+	private int allEvents;
+
+	/**
+	 * True if the threads with lower priority than the current thread are
+	 * dropped because the current thread has matched.
+	 */
+	private boolean cut;
+
+	private boolean matched;
+
+	private int matchStart;
+
+	private int matchEnd;
+
+	private int[] matchRegs;
+
+	private int matchFlags;
+
+	/**
+	 * In {@link #STREAM} mode: the first position where matching succeeds or
+	 * hits the end.
+	 */
+	private int best;
+
+	/**
+	 * In {@link #STREAM} mode: the flags of the events of the threads that
+	 * have started at {@link #best}.
+	 */
+	private int bestFlags;
+
+	/**
+	 * The groups and the locals of the threads that start.
+	 */
+	private int[] startRegs;
+
+	/**
+	 * The position the checkpoint is saved at, {@link #NONE} if no checkpoint
+	 * is saved.
+	 */
+	private int checkpointAt = NONE;
+
+	/**
+	 * The checkpoint of the last {@link #STREAM} run, null if there is none.
+	 */
+	private Checkpoint checkpoint;
+
+	PikeVm(Program program, int groupCount) {
+		this.program = program;
+		this.groupCount = groupCount;
+		this.current = new Threads(program.size * 2);
+		this.next = new Threads(program.size * 2);
+		this.marks = new int[program.size * 2];
+		this.entered = new long[program.size][];
+		this.enteredCount = new int[program.size];
+		this.stackPc = new int[program.size * 2 + 2];
+		this.stackLoops = new long[program.size * 2 + 2];
+		this.stackRegs = new int[program.size * 2 + 2][];
+		boolean resumable = true;
+		for (int pc = 0; pc < program.size; pc++) {
+			if (program.op[pc] == Program.ASSERT
+					&& (program.node[pc] instanceof Pattern.Begin
+					|| program.node[pc] instanceof Pattern.LastMatch)) {
+				resumable = false;
+			}
+		}
+		this.resumable = resumable;
+	}
+
+	/**
+	 * Returns true if {@link #resume(Matcher, int, int, CharSequence)} can
+	 * continue a run.
+	 */
+	boolean resumable() {
+		return resumable;
+	}
+
+	/**
+	 * Matches the program at the given position like the nodes of the
+	 * pattern do. Sets the groups, the end of the match and the flags of the
+	 * matcher.
+	 */
+	boolean match(Matcher matcher, int i, CharSequence seq) {
+		run(matcher, seq, ANCHORED, i, i, false);
+		matcher.hitEnd |= ((matched ? matchFlags : allEvents) & HIT_END) != 0;
+		matcher.requireEnd |= ((matched ? matchFlags : allEvents) & REQUIRE_END) != 0;
+		if (matched) {
+			setGroups(matcher);
+		}
+		return matched;
+	}
+
+	/**
+	 * Finds the leftmost match at a position between the given ones like
+	 * {@link Pattern.Start} and {@link Pattern.StartS} do.
+	 *
+	 * @param guard
+	 *            the last position a match may start at.
+	 * @param supplementary
+	 *            true if a match must not start at the low surrogate of a
+	 *            supplementary char.
+	 */
+	boolean find(Matcher matcher, int i, int guard, CharSequence seq,
+			boolean supplementary) {
+		boolean guardReached = run(matcher, seq, FIND, i, guard,
+				supplementary);
+		int flags = matched ? matchFlags : allEvents;
+		// the start node sets hitEnd after it has tried the last position
+		if (supplementary ? guardReached && (!matched || matchStart == guard)
+				: !matched) {
+			flags |= HIT_END;
+		}
+		matcher.hitEnd |= (flags & HIT_END) != 0;
+		matcher.requireEnd |= (flags & REQUIRE_END) != 0;
+		if (matched) {
+			matcher.first = matchStart;
+			setGroups(matcher);
+		}
+		return matched;
+	}
+
+	/**
+	 * Finds the first position between the given ones where matching succeeds
+	 * or hits the end. Sets the groups, the end of the match and the flags of
+	 * the matcher like matching at this position does.
+	 *
+	 * @return Returns the position, or <code>maxFrom + 1</code> if there is
+	 *         no such position.
+	 */
+	int stream(Matcher matcher, int from, int maxFrom, CharSequence seq) {
+		checkpointAt(matcher, seq, from);
+		run(matcher, seq, STREAM, from, maxFrom, false);
+		return streamResult(matcher, from, maxFrom);
+	}
+
+	/**
+	 * Continues the last {@link #STREAM} run after chars have been appended
+	 * to the input. The chars from the position the last run has returned to
+	 * the old end of the input must be found unchanged at the given position.
+	 * The result is the same as the result of
+	 * {@link #stream(Matcher, int, int, CharSequence)}, but the input is read
+	 * from a few chars before the old end only.
+	 *
+	 * @return Returns the position like
+	 *         {@link #stream(Matcher, int, int, CharSequence)} does, or -1 if
+	 *         the run cannot be continued.
+	 */
+	int resume(Matcher matcher, int from, int maxFrom, CharSequence seq) {
+		Checkpoint checkpoint = this.checkpoint;
+		this.checkpoint = null;
+		if (checkpoint == null || checkpoint.seq != seq
+				|| matcher.to != seq.length()) {
+			return -1;
+		}
+		int offset = from - checkpoint.lastFrom;
+		int pos = checkpoint.pos + offset;
+		if (pos < from || checkpoint.to + offset > matcher.to) {
+			return -1;
+		}
+		if (context(matcher, seq, from) != checkpoint.context
+				|| context(matcher, seq, pos) != checkpoint.posContext) {
+			// the assertions of the threads would look at other chars, e.g.
+			// because the chars before have been removed
+			return -1;
+		}
+		if (maxFrom > checkpoint.lastStart + offset && !checkpoint.matched
+				&& checkpoint.pos > checkpoint.lastStart + 1) {
+			// the threads for the positions after the last start are missing
+			return -1;
+		}
+
+		checkpointAt(matcher, seq, pos);
+		begin(matcher, seq, STREAM);
+		Threads threads = checkpoint.threads;
+		current.size = 0;
+		for (int n = 0; n < threads.size; n++) {
+			// a thread that has started before the last position has failed
+			// before the old end of the input
+			if (threads.start[n] + offset >= from) {
+				current.add(threads.pc[n], threads.start[n] + offset,
+						threads.flags[n], shift(threads.regs[n], offset));
+			}
+		}
+		if (checkpoint.matched) {
+			matched = true;
+			matchStart = checkpoint.matchStart + offset;
+			matchEnd = checkpoint.matchEnd + offset;
+			matchRegs = shift(checkpoint.matchRegs, offset);
+			matchFlags = checkpoint.matchFlags;
+			best = matchStart;
+		}
+		int nextStart = checkpoint.nextStart == NONE ? NONE
+				: checkpoint.nextStart + offset;
+		if (nextStart == NONE && checkpoint.pos == checkpoint.lastStart + 1) {
+			// the last run has not started threads after its last start, the
+			// resumed run starts them at the checkpoint
+			nextStart = pos;
+		}
+		loop(from, pos, nextStart, maxFrom, false);
+		if (best < from) {
+			// a new run does not find a match before the first position
+			this.checkpoint = null;
+			return -1;
+		}
+		return streamResult(matcher, from, maxFrom);
+	}
+
+	/**
+	 * Drops the checkpoint of the last {@link #STREAM} run.
+	 */
+	void discard() {
+		checkpoint = null;
+	}
+
+	/**
+	 * Sets the position the checkpoint of a {@link #STREAM} run is saved at.
+	 * The threads at a position three chars before the end are the same if
+	 * chars are appended: the assertions look at two chars before the end,
+	 * and a high surrogate at the end might get its low surrogate. The
+	 * checkpoint is kept only if it is not before the position the run
+	 * returns, because the chars before that position may be removed.
+	 *
+	 * @param from
+	 *            the first position of the run.
+	 */
+	private void checkpointAt(Matcher matcher, CharSequence seq, int from) {
+		int to = matcher.to;
+		checkpointAt = NONE;
+		if (resumable && to == seq.length()
+				&& (to == 0 || !Character.isHighSurrogate(seq.charAt(to - 1)))) {
+			checkpointAt = Math.max(to - 3, from);
+		}
+	}
+
+	/**
+	 * Returns the chars the assertions at the given position and after might
+	 * look back at: the two chars before the position, or none if the
+	 * position is at the start of the input, and how many of them are in the
+	 * region of the matcher. A resumed run gives the same result only if the
+	 * context of the position it continues at has not changed.
+	 */
+	private static long context(Matcher matcher, CharSequence seq, int pos) {
+		long context = Math.max(0, Math.min(pos - matcher.from, 2));
+		for (int n = 1; n <= 2; n++) {
+			int ch = pos - n >= 0 ? seq.charAt(pos - n) : 0x10000;
+			context = context << 17 | ch;
+		}
+		return context;
+	}
+
+	/**
+	 * Returns a copy of the given registers that is moved by the given
+	 * offset.
+	 */
+	private static int[] shift(int[] regs, int offset) {
+		int[] shifted = regs.clone();
+		for (int n = 0; n < shifted.length; n++) {
+			if (shifted[n] >= 0) {
+				shifted[n] += offset;
+			}
+		}
+		return shifted;
+	}
+
+	private int streamResult(Matcher matcher, int from, int maxFrom) {
+		if (best > maxFrom || best < from) {
+			// a resumed run has started threads after the last position, or
+			// a match must not start before the first position
+			best = NONE;
+			matched = false;
+		}
+		if (checkpoint != null && checkpoint.pos < best) {
+			checkpoint = null;
+		}
+		if (checkpoint != null) {
+			checkpoint.lastStart = maxFrom;
+			checkpoint.lastFrom = best;
+			checkpoint.context = best == NONE ? -1 : context(matcher,
+					checkpoint.seq, best);
+		}
+		if (best == NONE) {
+			return maxFrom + 1;
+		}
+		int flags = matched ? matchFlags : bestFlags;
+		matcher.hitEnd |= (flags & HIT_END) != 0;
+		matcher.requireEnd |= (flags & REQUIRE_END) != 0;
+		if (matched) {
+			setGroups(matcher);
+		}
+		return best;
+	}
+
+	/**
+	 * Returns true if the matched flag is set after a call of
+	 * {@link #stream(Matcher, int, int, CharSequence)}.
+	 */
+	boolean matched() {
+		return matched;
+	}
+
+	private void setGroups(Matcher matcher) {
+		System.arraycopy(matchRegs, 0, matcher.groups, 0, groupCount);
+		matcher.last = matchEnd;
+		matcher.groups[0] = matcher.first;
+		matcher.groups[1] = matcher.last;
+	}
+
+	/**
+	 * Runs the threads that start at the positions from <code>from</code> to
+	 * <code>lastStart</code>. Returns true if a thread has been started at
+	 * <code>lastStart</code> after a thread at a lower position.
+	 */
+	private boolean run(Matcher matcher, CharSequence seq, int mode,
+			int from, int lastStart, boolean supplementary) {
+		begin(matcher, seq, mode);
+		current.size = 0;
+		return loop(from, from, from, lastStart, supplementary);
+	}
+
+	/**
+	 * Prepares a run.
+	 */
+	private void begin(Matcher matcher, CharSequence seq, int mode) {
+		this.matcher = matcher;
+		this.seq = seq;
+		this.mode = mode;
+		allEvents = 0;
+		matched = false;
+		matchRegs = null;
+		best = NONE;
+		bestFlags = 0;
+		checkpoint = null;
+
+		startRegs = new int[groupCount + matcher.locals.length];
+		System.arraycopy(matcher.groups, 0, startRegs, 0, groupCount);
+		System.arraycopy(matcher.locals, 0, startRegs, groupCount,
+				matcher.locals.length);
+	}
+
+	/**
+	 * Advances the current threads from the given position on and starts
+	 * threads at the positions from <code>nextStart</code> to
+	 * <code>lastStart</code>. Returns true if a thread has been started at
+	 * <code>lastStart</code> after a thread at a lower position.
+	 */
+	private boolean loop(int from, int pos, int nextStart, int lastStart,
+			boolean supplementary) {
+		int[] regs = startRegs;
+		boolean lastReached = false;
+		for (;;) {
+			if (pos == checkpointAt) {
+				save(pos, nextStart);
+			}
+			if (current.size == 0) {
+				// no thread left, continue at the next start position
+				if (nextStart > lastStart || matched || best != NONE) {
+					break;
+				}
+				pos = nextStart;
+			}
+			if (pos == nextStart) {
+				if (nextStart <= lastStart && !matched && best == NONE) {
+					mark++;
+					events = 0;
+					cut = false;
+					closure(current, 0, pos, regs, allEvents, pos);
+					lastReached = pos == lastStart && pos > from;
+					nextStart = nextStart(pos, supplementary);
+				} else {
+					nextStart = NONE;
+				}
+			}
+			if (current.size == 0) {
+				continue;
+			}
+
+			// advance the threads by one char
+			mark++;
+			events = 0;
+			cut = false;
+			next.size = 0;
+			Threads threads = current;
+			for (int n = 0; n < threads.size && !cut; n++) {
+				step(threads.pc[n], threads.start[n], threads.flags[n],
+						threads.regs[n], pos);
+				threads.regs[n] = null;
+			}
+			pos++;
+			if (pos == nextStart && !cut && !matched && best == NONE
+					&& nextStart <= lastStart) {
+				// a new thread has the lowest priority
+				closure(next, 0, pos, regs, allEvents, pos);
+				lastReached = pos == lastStart;
+				nextStart = nextStart(pos, supplementary);
+			} else if (pos == nextStart) {
+				nextStart = NONE;
+			}
+			current = next;
+			next = threads;
+		}
+		current.size = 0;
+		checkpointAt = NONE;
+		this.matcher = null;
+		this.seq = null;
+		this.startRegs = null;
+		return lastReached;
+	}
+
+	/**
+	 * Saves the current threads and the match as the checkpoint.
+	 */
+	private void save(int pos, int nextStart) {
+		checkpointAt = NONE;
+		Checkpoint checkpoint = new Checkpoint();
+		checkpoint.seq = seq;
+		checkpoint.to = matcher.to;
+		checkpoint.pos = pos;
+		checkpoint.posContext = context(matcher, seq, pos);
+		checkpoint.nextStart = nextStart;
+		Threads threads = new Threads(current.size);
+		for (int n = 0; n < current.size; n++) {
+			threads.add(current.pc[n], current.start[n], current.flags[n],
+					current.regs[n]);
+		}
+		checkpoint.threads = threads;
+		checkpoint.matched = matched;
+		checkpoint.matchStart = matchStart;
+		checkpoint.matchEnd = matchEnd;
+		checkpoint.matchRegs = matchRegs;
+		checkpoint.matchFlags = matchFlags;
+		this.checkpoint = checkpoint;
+	}
+
+	private int nextStart(int pos, boolean supplementary) {
+		if (mode == ANCHORED) {
+			return NONE;
+		}
+		if (supplementary && Character.isHighSurrogate(seq.charAt(pos))) {
+			if (pos + 1 < seq.length()
+					&& Character.isLowSurrogate(seq.charAt(pos + 1))) {
+				return pos + 2;
+			}
+		}
+		return pos + 1;
+	}
+
+	/**
+	 * Advances the given thread over the char at the given position.
+	 */
+	private void step(int pc, int start, int flags, int[] regs, int pos) {
+		if (mode == STREAM && start > best) {
+			// a position before has already succeeded or hit the end
+			return;
+		}
+		Program program = this.program;
+		if (pc >= program.size) {
+			// the low surrogate of a supplementary char
+			closure(next, pc - program.size + 1, start, regs, flags, pos + 1);
+			return;
+		}
+		int to = matcher.to;
+		if (pos >= to) {
+			event(HIT_END, start);
+			return;
+		}
+		if (program.op[pc] == Program.CHAR) {
+			if (seq.charAt(pos) == program.arg[pc]) {
+				closure(next, pc + 1, start, regs, flags, pos + 1);
+			}
+		} else if (program.bmp[pc]) {
+			if (program.property[pc].isSatisfiedBy(seq.charAt(pos))) {
+				closure(next, pc + 1, start, regs, flags, pos + 1);
+			}
+		} else {
+			int ch = Character.codePointAt(seq, pos);
+			if (!program.property[pc].isSatisfiedBy(ch)) {
+				return;
+			} else if (ch < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+				closure(next, pc + 1, start, regs, flags, pos + 1);
+			} else if (program.arg[pc] == 1 && pos + 2 > to) {
+				// a slice must not end after the end
+				event(HIT_END, start);
+			} else if (marks[program.size + pc] != mark) {
+				marks[program.size + pc] = mark;
+				next.add(program.size + pc, start, flags | events, regs);
+			}
+		}
+	}
+
+	/**
+	 * Adds the threads for the instructions that can be reached from the
+	 * given instruction without consuming a char, in the order of their
+	 * priority.
+	 */
+	private void closure(Threads threads, int pc, int start, int[] regs,
+			int flags, int pos) {
+		Program program = this.program;
+		int top = 0;
+		push(top++, pc, 0, regs);
+		while (top > 0) {
+			top--;
+			pc = stackPc[top];
+			long loops = stackLoops[top];
+			regs = stackRegs[top];
+			stackRegs[top] = null;
+			if (!reach(pc, loops & program.scope[pc])) {
+				continue;
+			}
+			int target = pc + 1;
+			switch (program.op[pc]) {
+			case Program.CHAR:
+			case Program.PROPERTY:
+				threads.add(pc, start, flags | events, regs);
+				continue;
+			case Program.MATCH:
+				if (program.arg[pc] == 1
+						&& matcher.acceptMode == Matcher.ENDANCHOR
+						&& pos != matcher.to) {
+					continue;
+				}
+				matched(start, pos, regs, flags | events);
+				while (top > 0) {
+					stackRegs[--top] = null;
+				}
+				return;
+			case Program.SPLIT:
+				push(top++, program.arg2[pc], loops, regs);
+				target = program.arg[pc];
+				break;
+			case Program.JUMP:
+				target = program.arg[pc];
+				break;
+			case Program.GROUP_HEAD:
+				regs = regs.clone();
+				regs[groupCount + program.arg[pc]] = pos;
+				loops |= program.loop[pc];
+				break;
+			case Program.GROUP_TAIL:
+				int groupIndex = program.arg2[pc];
+				if (groupIndex > 0) {
+					int groupStart = regs[groupCount + program.arg[pc]];
+					regs = regs.clone();
+					regs[groupIndex] = groupStart;
+					regs[groupIndex + 1] = pos;
+				}
+				break;
+			case Program.EMPTY_CHECK:
+				if (regs[groupCount + program.arg[pc]] == pos) {
+					target = program.arg2[pc];
+				}
+				break;
+			default:
+				int result = check(matcher, seq, program.node[pc], pos);
+				if ((result & HIT_END) != 0) {
+					event(result & (HIT_END | REQUIRE_END), start);
+				}
+				if ((result & PASS) == 0) {
+					continue;
+				}
+			}
+			push(top++, target, loops, regs);
+		}
+	}
+
+	/**
+	 * Returns false if the given instruction has already been reached in the
+	 * current generation by a thread with higher priority. The thread has
+	 * entered the given loops at the current position.
+	 */
+	private boolean reach(int pc, long loops) {
+		long[] known = entered[pc];
+		int count = 0;
+		if (marks[pc] == mark) {
+			count = enteredCount[pc];
+			for (int n = 0; n < count; n++) {
+				if (known[n] == loops) {
+					return false;
+				}
+			}
+		}
+		if (known == null || count == known.length) {
+			long[] grown = new long[count * 2 + 1];
+			if (known != null) {
+				System.arraycopy(known, 0, grown, 0, count);
+			}
+			entered[pc] = known = grown;
+		}
+		marks[pc] = mark;
+		known[count] = loops;
+		enteredCount[pc] = count + 1;
+		return true;
+	}
+
+	private void push(int top, int pc, long loops, int[] regs) {
+		if (top == stackPc.length) {
+			int length = top * 2;
+			int[] pcs = new int[length];
+			System.arraycopy(stackPc, 0, pcs, 0, top);
+			stackPc = pcs;
+			long[] loopSets = new long[length];
+			System.arraycopy(stackLoops, 0, loopSets, 0, top);
+			stackLoops = loopSets;
+			int[][] regSets = new int[length][];
+			System.arraycopy(stackRegs, 0, regSets, 0, top);
+			stackRegs = regSets;
+		}
+		stackPc[top] = pc;
+		stackLoops[top] = loops;
+		stackRegs[top] = regs;
+	}
+
+	/**
+	 * A thread has hit the end of the input.
+	 */
+	private void event(int flags, int start) {
+		events |= flags;
+		allEvents |= flags;
+		if (mode == STREAM) {
+			if (start < best) {
+				best = start;
+				bestFlags = flags;
+				matched = false;
+				return;
+			}
+			bestFlags |= flags;
+		}
+		if (matched) {
+			// the thread has a higher priority than the match
+			matchFlags |= flags;
+		}
+	}
+
+	/**
+	 * A thread has matched. The threads with lower priority are dropped.
+	 */
+	private void matched(int start, int pos, int[] regs, int flags) {
+		matched = true;
+		matchStart = start;
+		matchEnd = pos;
+		matchRegs = regs;
+		matchFlags = flags;
+		if (mode == STREAM) {
+			best = start;
+		}
+		cut = true;
+	}
+
+	/**
+	 * Checks a zero-width assertion like the node does. Returns the flags
+	 * {@link #PASS}, {@link #HIT_END} and {@link #REQUIRE_END}.
+	 */
+	static int check(Matcher matcher, CharSequence seq, Pattern.Node node,
+			int i) {
+		if (node instanceof Pattern.Caret || node instanceof Pattern.UnixCaret) {
+			int startIndex = matcher.from;
+			int endIndex = matcher.to;
+			if (!matcher.anchoringBounds) {
+				startIndex = 0;
+				endIndex = matcher.getTextLength();
+			}
+			// Perl does not match ^ at end of input even after newline
+			if (i == endIndex) {
+				return HIT_END;
+			}
+			if (i > startIndex) {
+				char ch = seq.charAt(i - 1);
+				if (node instanceof Pattern.UnixCaret) {
+					return ch == '\n' ? PASS : 0;
+				}
+				if (ch != '\n' && ch != '\r' && (ch | 1) != '\u2029'
+						&& ch != '\u0085') {
+					return 0;
+				}
+				// Should treat /r/n as one newline
+				if (ch == '\r' && seq.charAt(i) == '\n') {
+					return 0;
+				}
+			}
+			return PASS;
+		} else if (node instanceof Pattern.Begin) {
+			int fromIndex = (matcher.anchoringBounds) ? matcher.from : 0;
+			return i == fromIndex ? PASS : 0;
+		} else if (node instanceof Pattern.End) {
+			int endIndex = (matcher.anchoringBounds) ? matcher.to : matcher
+					.getTextLength();
+			return i == endIndex ? PASS | HIT_END : 0;
+		} else if (node instanceof Pattern.LastMatch) {
+			return i == matcher.oldLast ? PASS : 0;
+		} else if (node instanceof Pattern.Dollar) {
+			return dollar(matcher, seq, ((Pattern.Dollar) node).multiline, i);
+		} else if (node instanceof Pattern.UnixDollar) {
+			return unixDollar(matcher, seq,
+					((Pattern.UnixDollar) node).multiline, i);
+		} else {
+			Pattern.Bound bound = (Pattern.Bound) node;
+			boolean hitEnd = matcher.hitEnd;
+			boolean requireEnd = matcher.requireEnd;
+			matcher.hitEnd = false;
+			matcher.requireEnd = false;
+			int result = (bound.check(matcher, i, seq) & bound.type) > 0 ? PASS
+					: 0;
+			if (matcher.hitEnd) {
+				result |= HIT_END;
+			}
+			if (matcher.requireEnd) {
+				result |= REQUIRE_END;
+			}
+			matcher.hitEnd = hitEnd;
+			matcher.requireEnd = requireEnd;
+			return result;
+		}
+	}
+
+	/**
+	 * This code is taken from {@link Pattern.Dollar}.
+	 */
+	private static int dollar(Matcher matcher, CharSequence seq,
+			boolean multiline, int i) {
+		int endIndex = (matcher.anchoringBounds) ? matcher.to : matcher
+				.getTextLength();
+		if (!multiline) {
+			if (i < endIndex - 2)
+				return 0;
+			if (i == endIndex - 2) {
+				char ch = seq.charAt(i);
+				if (ch != '\r')
+					return 0;
+				ch = seq.charAt(i + 1);
+				if (ch != '\n')
+					return 0;
+			}
+		}
+		if (i < endIndex) {
+			char ch = seq.charAt(i);
+			if (ch == '\n') {
+				// No match between \r\n
+				if (i > 0 && seq.charAt(i - 1) == '\r')
+					return 0;
+				if (multiline)
+					return PASS;
+			} else if (ch == '\r' || ch == '\u0085' || (ch | 1) == '\u2029') {
+				if (multiline)
+					return PASS;
+			} else { // No line terminator, no match
+				return 0;
+			}
+		}
+		// Matched at current end so hit end
+		return PASS | HIT_END | REQUIRE_END;
+	}
+
+	/**
+	 * This code is taken from {@link Pattern.UnixDollar}.
+	 */
+	private static int unixDollar(Matcher matcher, CharSequence seq,
+			boolean multiline, int i) {
+		int endIndex = (matcher.anchoringBounds) ? matcher.to : matcher
+				.getTextLength();
+		if (i < endIndex) {
+			char ch = seq.charAt(i);
+			if (ch == '\n') {
+				// If not multiline, then only possible to
+				// match at very end or one before end
+				if (multiline == false && i != endIndex - 1)
+					return 0;
+				// If multiline return next.match without setting
+				// matcher.hitEnd
+				if (multiline)
+					return PASS;
+			} else {
+				return 0;
+			}
+		}
+		// Matching because at the end or 1 before the end;
+		// more input could change this so set hitEnd
+		return PASS | HIT_END | REQUIRE_END;
+	}
+}
@@ -0,0 +1,640 @@
+/**
+ * Copyright (C) 2011 rwoo@gmx.de
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.googlecode.streamflyer.regex.fast;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A compiled pattern as a program of a nondeterministic finite automaton
+ * (Thompson construction).
+ * <p>
+ * The program is compiled from the node tree of a {@link Pattern}. The
+ * instructions are ordered by priority: the first target of a
+ * {@link #SPLIT} is the one the backtracking nodes try first. Repetitions are
+ * unrolled. Zero-width assertions are kept as {@link #ASSERT} instructions
+ * that refer to their node.
+ * <p>
+ * Patterns with lookarounds, back references and the like cannot be compiled.
+ *
+ * @author rwoo
+ *
+ * @since 18.10.2026
+ */
+final class Program {
+
+	/**
+	 * Matches the char {@link #arg}.
+	 */
+	static final int CHAR = 0;
+
+	/**
+	 * Matches a code point that satisfies the property {@link #property}. If
+	 * {@link #arg} is 1 the code point must not end after the end of the input
+	 * like the code points of a slice.
+	 */
+	static final int PROPERTY = 1;
+
+	/**
+	 * Continues at {@link #arg} and, with lower priority, at {@link #arg2}.
+	 */
+	static final int SPLIT = 2;
+
+	/**
+	 * Continues at {@link #arg}.
+	 */
+	static final int JUMP = 3;
+
+	/**
+	 * Marks the start of the group with the local index {@link #arg}.
+	 */
+	static final int GROUP_HEAD = 4;
+
+	/**
+	 * Marks the end of the group with the local index {@link #arg} and the
+	 * group index {@link #arg2}.
+	 */
+	static final int GROUP_TAIL = 5;
+
+	/**
+	 * Checks the zero-width assertion {@link #node}.
+	 */
+	static final int ASSERT = 6;
+
+	/**
+	 * The pattern has matched. If {@link #arg} is 1 the match must end at the
+	 * end of the input if the matcher requires this.
+	 */
+	static final int MATCH = 7;
+
+	/**
+	 * Continues at {@link #arg2} if the group with the local index
+	 * {@link #arg} is empty so far, otherwise at the next instruction. Ends
+	 * the repetition of a loop after an iteration that has matched the empty
+	 * string.
+	 */
+	static final int EMPTY_CHECK = 8;
+
+	/**
+	 * The maximum number of instructions of a program.
+	 */
+	private static final int MAX_SIZE = 5000;
+
+	final int size;
+
+	/**
+	 * True if the program follows the same paths in the same order as the
+	 * backtracking nodes. False if the pattern has possessive quantifiers,
+	 * independent groups or repetitions of zero-width atoms.
+	 */
+	final boolean exact;
+
+	/**
+	 * True if the program also sets the groups like the backtracking nodes.
+	 * False if a group is nested in a repeated deterministic group. The
+	 * backtracking nodes keep the nested group of a failed repetition. Also
+	 * false if a repeated deterministic group can match a supplementary
+	 * char. The nodes might set the group of a repetition with the length
+	 * of another repetition. Also false if a capturing group with a variable
+	 * number of repetitions is in the body of a repeated group. After the
+	 * rest of the match has succeeded, the nodes set the group to the last
+	 * repetition of the first body that has repeated it more than the
+	 * minimum.
+	 */
+	final boolean exactGroups;
+
+	/**
+	 * True if the backtracking nodes recurse for each repetition of a group,
+	 * i.e. the pattern has a {@link Pattern.Loop} or a
+	 * {@link Pattern.GroupCurly} that repeats more than once. Their stack
+	 * depth grows with the length of the match.
+	 */
+	final boolean recursive;
+
+	/**
+	 * True if a variable repetition is nested in the body of a repeated group
+	 * so that the chars can be split between the repetitions in many ways,
+	 * as in <code>(\w+\s?)*</code>. Backtracking might then take
+	 * exponential time.
+	 */
+	final boolean ambiguous;
+
+	/**
+	 * The loops whose bodies contain each instruction. Each loop with an
+	 * {@link #EMPTY_CHECK} has a bit. The path of an instruction depends on
+	 * whether the bodies of these loops have been entered at the current
+	 * position.
+	 */
+	final long[] scope;
+
+	/**
+	 * The bit of the loop for each {@link #GROUP_HEAD} that enters the body of
+	 * a loop, otherwise 0.
+	 */
+	final long[] loop;
+
+	final int[] op;
+
+	final int[] arg;
+
+	final int[] arg2;
+
+	/**
+	 * The property of each {@link #PROPERTY} instruction.
+	 */
+	final Pattern.CharProperty[] property;
+
+	/**
+	 * True for each {@link #PROPERTY} instruction whose property is satisfied
+	 * by BMP chars only.
+	 */
+	final boolean[] bmp;
+
+	/**
+	 * The node of each {@link #ASSERT} instruction.
+	 */
+	final Pattern.Node[] node;
+
+	/**
+	 * True if the program has a {@link #PROPERTY} instruction that matches
+	 * supplementary chars.
+	 */
+	final boolean supplementary;
+
+	/**
+	 * The distinct properties of the {@link #PROPERTY} instructions.
+	 */
+	final Pattern.CharProperty[] properties;
+
+	/**
+	 * The sorted distinct chars of the {@link #CHAR} instructions.
+	 */
+	final char[] chars;
+
+	private Program(Builder builder) {
+		this.size = builder.size;
+		this.exact = builder.exact;
+		this.exactGroups = builder.exactGroups;
+		this.recursive = builder.recursive;
+		this.ambiguous = builder.ambiguous;
+		this.op = copy(builder.op, size);
+		this.arg = copy(builder.arg, size);
+		this.arg2 = copy(builder.arg2, size);
+		this.property = new Pattern.CharProperty[size];
+		this.bmp = new boolean[size];
+		this.node = new Pattern.Node[size];
+		boolean supplementary = false;
+		Map<Pattern.CharProperty, Boolean> distinct = new LinkedHashMap<Pattern.CharProperty, Boolean>();
+		Set<Character> chars = new TreeSet<Character>();
+		for (int pc = 0; pc < size; pc++) {
+			if (op[pc] == PROPERTY) {
+				property[pc] = (Pattern.CharProperty) builder.object[pc];
+				bmp[pc] = builder.bmp[pc];
+				supplementary |= !bmp[pc];
+				distinct.put(property[pc], true);
+			} else if (op[pc] == CHAR) {
+				chars.add((char) arg[pc]);
+			} else if (op[pc] == ASSERT) {
+				node[pc] = (Pattern.Node) builder.object[pc];
+			}
+		}
+		this.supplementary = supplementary;
+		this.properties = distinct.keySet().toArray(
+				new Pattern.CharProperty[distinct.size()]);
+		this.chars = new char[chars.size()];
+		int n = 0;
+		for (char ch : chars) {
+			this.chars[n++] = ch;
+		}
+		this.scope = new long[size];
+		this.loop = new long[size];
+		long open = 0;
+		for (int pc = 0; pc < size; pc++) {
+			Integer bit = builder.loops.get(arg[pc]);
+			if (op[pc] == GROUP_HEAD && bit != null) {
+				loop[pc] = 1L << bit;
+				open |= loop[pc];
+			}
+			if (op[pc] != CHAR && op[pc] != PROPERTY && op[pc] != MATCH) {
+				scope[pc] = open;
+			}
+			if (op[pc] == EMPTY_CHECK) {
+				open &= ~(1L << bit);
+			}
+		}
+	}
+
+	private static int[] copy(int[] array, int length) {
+		int[] copy = new int[length];
+		System.arraycopy(array, 0, copy, 0, length);
+		return copy;
+	}
+
+	/**
+	 * Returns the program for the given pattern, or null if the pattern cannot
+	 * be compiled to a program.
+	 *
+	 * @param matchRoot
+	 *            the root of the pattern that is matched at a given position.
+	 */
+	static Program compile(Pattern.Node matchRoot) {
+		Builder builder = new Builder();
+		try {
+			builder.chain(matchRoot, null);
+		} catch (UnsupportedOperationException e) {
+			return null;
+		}
+		return new Program(builder);
+	}
+
+	/**
+	 * Compiles the nodes to instructions. Throws an
+	 * {@link UnsupportedOperationException} if a node cannot be compiled or
+	 * the program gets too large.
+	 */
+	private static final class Builder {
+
+		int size;
+
+		boolean exact = true;
+
+		boolean exactGroups = true;
+
+		boolean recursive;
+
+		boolean ambiguous;
+
+		/**
+		 * The bodies of the repeated groups that enclose the node that is
+		 * compiled.
+		 */
+		final List<Pattern.Node> bodies = new ArrayList<Pattern.Node>();
+
+		/**
+		 * The bit of each loop with an {@link #EMPTY_CHECK} by the local index
+		 * of the loop.
+		 */
+		final Map<Integer, Integer> loops = new HashMap<Integer, Integer>();
+
+		int[] op = new int[64];
+
+		int[] arg = new int[64];
+
+		int[] arg2 = new int[64];
+
+		Object[] object = new Object[64];
+
+		boolean[] bmp = new boolean[64];
+
+		/**
+		 * The properties for the case insensitive chars of slices.
+		 */
+		private final Map<String, Pattern.CharProperty> properties = new HashMap<String, Pattern.CharProperty>();
+
+		int emit(int code, int a, int a2, Object o, boolean b) {
+			if (size == MAX_SIZE) {
+				throw new UnsupportedOperationException("program too large");
+			}
+			if (size == op.length) {
+				int length = size * 2;
+				op = grow(op, length);
+				arg = grow(arg, length);
+				arg2 = grow(arg2, length);
+				Object[] objects = new Object[length];
+				System.arraycopy(object, 0, objects, 0, size);
+				object = objects;
+				boolean[] bmps = new boolean[length];
+				System.arraycopy(bmp, 0, bmps, 0, size);
+				bmp = bmps;
+			}
+			op[size] = code;
+			arg[size] = a;
+			arg2[size] = a2;
+			object[size] = o;
+			bmp[size] = b;
+			return size++;
+		}
+
+		private static int[] grow(int[] array, int length) {
+			int[] grown = new int[length];
+			System.arraycopy(array, 0, grown, 0, array.length);
+			return grown;
+		}
+
+		/**
+		 * Compiles the given node and its next nodes up to the given end
+		 * node. The alternative of a branch might end at the
+		 * {@link Pattern.BranchConn} of another branch. Then the chain is
+		 * compiled up to the end of the pattern.
+		 */
+		void chain(Pattern.Node node, Pattern.Node end) {
+			while (node != end) {
+				if (node == null) {
+					return;
+				}
+				node = compile(node);
+			}
+		}
+
+		/**
+		 * Compiles the given node and returns the next node to compile, or
+		 * null if the pattern ends.
+		 */
+		private Pattern.Node compile(Pattern.Node node) {
+			if (node == Pattern.accept || node instanceof Pattern.LastNode) {
+				emit(MATCH, node instanceof Pattern.LastNode ? 1 : 0, 0, null,
+						false);
+				return null;
+			} else if (node instanceof Pattern.Single) {
+				emit(CHAR, ((Pattern.Single) node).c, 0, null, false);
+			} else if (node instanceof Pattern.CharProperty) {
+				emit(PROPERTY, 0, 0, node,
+						node instanceof Pattern.BmpCharProperty);
+			} else if (node instanceof Pattern.SliceNode) {
+				slice((Pattern.SliceNode) node);
+			} else if (node instanceof Pattern.GroupHead) {
+				emit(GROUP_HEAD, ((Pattern.GroupHead) node).localIndex, 0,
+						null, false);
+			} else if (node instanceof Pattern.GroupTail) {
+				Pattern.GroupTail tail = (Pattern.GroupTail) node;
+				emit(GROUP_TAIL, tail.localIndex, tail.groupIndex, null, false);
+			} else if (node instanceof Pattern.Caret
+					|| node instanceof Pattern.UnixCaret
+					|| node instanceof Pattern.Begin
+					|| node instanceof Pattern.End
+					|| node instanceof Pattern.Dollar
+					|| node instanceof Pattern.UnixDollar
+					|| node instanceof Pattern.LastMatch
+					|| node instanceof Pattern.Bound) {
+				emit(ASSERT, 0, 0, node, false);
+			} else if (node instanceof Pattern.BranchConn) {
+				// the end of an alternative of another branch
+			} else if (node instanceof Pattern.Branch) {
+				Pattern.Branch branch = (Pattern.Branch) node;
+				int[] jumps = new int[branch.size];
+				for (int n = 0; n < branch.size; n++) {
+					int split = -1;
+					if (n < branch.size - 1) {
+						split = emit(SPLIT, size + 1, 0, null, false);
+					}
+					if (branch.atoms[n] != null) {
+						chain(branch.atoms[n], branch.conn);
+					}
+					jumps[n] = emit(JUMP, 0, 0, null, false);
+					if (split >= 0) {
+						arg2[split] = size;
+					}
+				}
+				for (int jump : jumps) {
+					arg[jump] = size;
+				}
+				return branch.conn.next;
+			} else if (node instanceof Pattern.Ques) {
+				Pattern.Ques ques = (Pattern.Ques) node;
+				if (ques.type == Pattern.INDEPENDENT) {
+					exact = false;
+					chain(ques.atom, Pattern.accept);
+				} else {
+					exact &= ques.type != Pattern.POSSESSIVE;
+					repeat(ques.atom, Pattern.accept, 0, 1,
+							ques.type == Pattern.LAZY, -1, -1);
+				}
+			} else if (node instanceof Pattern.Curly) {
+				Pattern.Curly curly = (Pattern.Curly) node;
+				exact &= curly.type != Pattern.POSSESSIVE
+						&& (curly.atom instanceof Pattern.CharProperty
+						|| curly.atom instanceof Pattern.SliceNode);
+				if (curly.cmax > curly.cmin) {
+					nested(curly.atom, curly.next);
+				}
+				repeat(curly.atom, Pattern.accept, curly.cmin, curly.cmax,
+						curly.type == Pattern.LAZY, -1, -1);
+			} else if (node instanceof Pattern.GroupCurly) {
+				Pattern.GroupCurly curly = (Pattern.GroupCurly) node;
+				Pattern.TreeInfo info = new Pattern.TreeInfo();
+				curly.atom.study(info);
+				exact &= curly.type != Pattern.POSSESSIVE
+						&& info.minLength > 0;
+				exactGroups &= !curly.capture || curly.cmax == curly.cmin
+						|| bodies.isEmpty();
+				recursive |= curly.cmax > 1;
+				if (curly.cmax > curly.cmin) {
+					nested(curly.atom, curly.next);
+				}
+				int first = size;
+				bodies.add(curly.atom);
+				repeat(curly.atom, Pattern.accept, curly.cmin, curly.cmax,
+						curly.type == Pattern.LAZY, curly.localIndex, -1);
+				bodies.remove(bodies.size() - 1);
+				for (int pc = first; pc < size; pc++) {
+					exactGroups &= op[pc] != GROUP_TAIL
+							|| arg[pc] == curly.localIndex || arg2[pc] == 0;
+					exactGroups &= op[pc] != PROPERTY || bmp[pc]
+							|| !curly.capture;
+				}
+			} else if (node instanceof Pattern.Prolog) {
+				Pattern.Loop loop = ((Pattern.Prolog) node).loop;
+				recursive |= loop.cmax > 1;
+				if (loop.cmax > loop.cmin) {
+					nested(loop.body, loop.next);
+				}
+				bodies.add(loop.body);
+				repeat(loop.body, loop, loop.cmin, loop.cmax,
+						loop instanceof Pattern.LazyLoop, -1, loop.beginIndex);
+				bodies.remove(bodies.size() - 1);
+				return loop.next;
+			} else {
+				// lookarounds, back references and the like
+				throw new UnsupportedOperationException(node.getClass()
+						.getName());
+			}
+			return node.next;
+		}
+
+		/**
+		 * Checks a variable repetition of the given atom that is followed by
+		 * the given node. The pattern is ambiguous if the repetition is nested
+		 * in the body of a repeated group, the rest of the body can be empty
+		 * and the atom can start with a char the body can start with.
+		 */
+		private void nested(Pattern.Node atom, Pattern.Node next) {
+			if (bodies.isEmpty() || ambiguous) {
+				return;
+			}
+			if (next != null) {
+				// the rest of the body up to the loop or the end of the atom
+				Pattern.TreeInfo info = new Pattern.TreeInfo();
+				next.study(info);
+				if (info.minLength > 0) {
+					return;
+				}
+			}
+			FirstChars body = FirstChars.study(bodies.get(bodies.size() - 1));
+			FirstChars first = FirstChars.study(atom);
+			ambiguous = body == null || first == null || body.intersects(first);
+		}
+
+		/**
+		 * Compiles a repetition of the given atom. The optional repetitions
+		 * are tried first unless the repetition is lazy.
+		 *
+		 * @param head
+		 *            the local index of the group that starts with each
+		 *            repetition, -1 if the atom starts the group itself.
+		 * @param check
+		 *            the local index of the group that ends the repetition if
+		 *            the group is empty, -1 if there is no such group.
+		 */
+		private void repeat(Pattern.Node atom, Pattern.Node end, int cmin,
+				int cmax, boolean lazy, int head, int check) {
+			if (Math.max(cmin, cmax == Pattern.MAX_REPS ? 0 : cmax) > MAX_SIZE) {
+				throw new UnsupportedOperationException("too many repetitions");
+			}
+			if (check >= 0 && !loops.containsKey(check)) {
+				if (loops.size() == 63) {
+					throw new UnsupportedOperationException("too many loops");
+				}
+				loops.put(check, loops.size());
+			}
+			List<Integer> checks = new ArrayList<Integer>();
+			for (int n = 0; n < cmin; n++) {
+				once(atom, end, head, check, checks);
+			}
+			int out;
+			if (cmax == Pattern.MAX_REPS) {
+				int split = emit(SPLIT, 0, 0, null, false);
+				int body = size;
+				once(atom, end, head, check, checks);
+				emit(JUMP, split, 0, null, false);
+				out = size;
+				link(split, body, out, lazy);
+			} else {
+				int[] splits = new int[cmax - cmin];
+				for (int n = 0; n < splits.length; n++) {
+					splits[n] = emit(SPLIT, 0, 0, null, false);
+					once(atom, end, head, check, checks);
+				}
+				out = size;
+				for (int split : splits) {
+					link(split, split + 1, out, lazy);
+				}
+			}
+			for (int emptyCheck : checks) {
+				arg2[emptyCheck] = out;
+			}
+		}
+
+		private void once(Pattern.Node atom, Pattern.Node end, int head,
+				int check, List<Integer> checks) {
+			if (head >= 0) {
+				emit(GROUP_HEAD, head, 0, null, false);
+			}
+			chain(atom, end);
+			if (check >= 0) {
+				checks.add(emit(EMPTY_CHECK, check, 0, null, false));
+			}
+		}
+
+		private void link(int split, int body, int out, boolean lazy) {
+			arg[split] = lazy ? out : body;
+			arg2[split] = lazy ? body : out;
+		}
+
+		private void slice(Pattern.SliceNode slice) {
+			for (final int c : slice.buffer) {
+				if (slice instanceof Pattern.Slice) {
+					emit(CHAR, c, 0, null, false);
+				} else if (slice instanceof Pattern.SliceS) {
+					if (Character.isSupplementaryCodePoint(c)) {
+						emit(PROPERTY, 1, 0, supplementary(c), false);
+					} else {
+						emit(CHAR, c, 0, null, false);
+					}
+				} else if (slice instanceof Pattern.SliceIS) {
+					emit(PROPERTY, 1, 0, caseInsensitive(slice, c), false);
+				} else {
+					emit(PROPERTY, 0, 0, caseInsensitive(slice, c), true);
+				}
+			}
+		}
+
+		/**
+		 * Returns the property of a supplementary char of a slice.
+		 */
+		private Pattern.CharProperty supplementary(final int c) {
+			String key = "S:" + c;
+			Pattern.CharProperty property = properties.get(key);
+			if (property == null) {
+				property = new Pattern.CharProperty() {
+					@Override
+					boolean isSatisfiedBy(int ch) {
+						return ch == c;
+					}
+				};
+				properties.put(key, property);
+			}
+			return property;
+		}
+
+		/**
+		 * Returns the property of a char of a case insensitive slice.
+		 */
+		private Pattern.CharProperty caseInsensitive(
+				final Pattern.SliceNode slice, final int c) {
+			final int folding;
+			if (slice instanceof Pattern.SliceI) {
+				folding = 0;
+			} else if (slice instanceof Pattern.SliceU) {
+				folding = 1;
+			} else if (slice instanceof Pattern.SliceIS) {
+				folding = slice instanceof Pattern.SliceUS ? 3 : 2;
+			} else {
+				throw new UnsupportedOperationException(slice.getClass()
+						.getName());
+			}
+			String key = folding + ":" + c;
+			Pattern.CharProperty property = properties.get(key);
+			if (property == null) {
+				property = new Pattern.CharProperty() {
+					@Override
+					boolean isSatisfiedBy(int ch) {
+						if (ch == c) {
+							return true;
+						}
+						switch (folding) {
+						case 0:
+							return c == ASCII.toLower(ch);
+						case 1:
+							return c == Character.toLowerCase(Character
+									.toUpperCase(ch));
+						default:
+							return c == ((Pattern.SliceIS) slice).toLower(ch);
+						}
+					}
+				};
+				properties.put(key, property);
+			}
+			return property;
+		}
+	}
+}
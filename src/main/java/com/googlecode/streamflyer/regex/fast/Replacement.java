@@ -0,0 +1,209 @@
+/**
+ * Copyright (C) 2011 rwoo@gmx.de
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.googlecode.streamflyer.regex.fast;
+
+import java.io.IOException;
+
+import com.googlecode.streamflyer.regex.RegexModifier;
+import com.googlecode.streamflyer.regex.ReplacingProcessor;
+
+/**
+ * A replacement string that has been parsed into literal segments and
+ * references to groups.
+ * <p>
+ * The replacement string is parsed like
+ * {@link Matcher#appendReplacement(StringBuffer, String)} does: a backslash
+ * escapes the next char, and a dollar sign is followed by the number of a
+ * group. The number takes as many digits as form a group of the pattern. A
+ * group that does not participate in a match is replaced by nothing.
+ * <p>
+ * {@link #compileLikeReplacingProcessor(String)} parses the replacement
+ * string like the {@link ReplacingProcessor} of streamflyer does instead.
+ * {@link FastRegexModifier} uses such a replacement, so it replaces like the
+ * {@link RegexModifier}.
+ * <p>
+ * {@link Matcher#replaceAll(String)} and {@link FastRegexModifier} parse the
+ * replacement once instead of once per match. A replacement is immutable, so
+ * it can be shared by matchers that are used by different threads.
+ *
+ * @author rwoo
+ *
+ * @since 18.10.2026
+ */
+public final class Replacement {
+
+	/**
+	 * The literal segments. The literal at index <code>n</code> precedes the
+	 * group at index <code>n</code>, the last literal follows the last group.
+	 */
+	final String[] literals;
+
+	/**
+	 * The referenced groups.
+	 */
+	final int[] groups;
+
+	/**
+	 * True if a group that does not participate in the match is replaced by
+	 * <code>"null"</code>.
+	 */
+	final boolean nullText;
+
+	private Replacement(String[] literals, int[] groups, boolean nullText) {
+		this.literals = literals;
+		this.groups = groups;
+		this.nullText = nullText;
+	}
+
+	/**
+	 * Parses the given replacement string.
+	 *
+	 * @param replacement
+	 *            the replacement string.
+	 * @param groupCount
+	 *            the number of capturing groups of the pattern, see
+	 *            {@link Matcher#groupCount()}.
+	 * @throws IllegalArgumentException
+	 *             if a backslash or a dollar sign is not followed by a char
+	 *             or a digit
+	 * @throws IndexOutOfBoundsException
+	 *             if the pattern has no group with the referenced number
+	 */
+	public static Replacement compile(String replacement, int groupCount) {
+		return compile(replacement, groupCount, false);
+	}
+
+	/**
+	 * Parses the given replacement string like the constructor of
+	 * {@link ReplacingProcessor} does. Unlike
+	 * {@link #compile(String, int)}, a dollar sign takes all the digits that
+	 * follow it, a group that does not participate in a match is replaced by
+	 * <code>"null"</code>, and a reference to a group the pattern does not
+	 * have throws an {@link IndexOutOfBoundsException} when a match is
+	 * replaced.
+	 *
+	 * @param replacement
+	 *            the replacement string.
+	 * @throws IllegalArgumentException
+	 *             if a backslash or a dollar sign is not followed by a char
+	 *             or a digit
+	 */
+	public static Replacement compileLikeReplacingProcessor(
+			String replacement) {
+		return compile(replacement, Integer.MAX_VALUE, true);
+	}
+
+	private static Replacement compile(String replacement, int groupCount,
+			boolean nullText) {
+		String[] literals = new String[4];
+		int[] groups = new int[3];
+		int count = 0;
+		StringBuilder literal = new StringBuilder();
+		int cursor = 0;
+		while (cursor < replacement.length()) {
+			char nextChar = replacement.charAt(cursor++);
+			if (nextChar == '\\') {
+				if (cursor == replacement.length()) {
+					throw new IllegalArgumentException(
+							"character to be escaped is missing");
+				}
+				literal.append(replacement.charAt(cursor++));
+			} else if (nextChar == '$') {
+				if (cursor == replacement.length()) {
+					throw new IllegalArgumentException(
+							"Illegal group reference: group index is missing");
+				}
+				// the first digit is always part of the number
+				int refNum = replacement.charAt(cursor) - '0';
+				if (refNum < 0 || refNum > 9) {
+					throw new IllegalArgumentException(
+							"Illegal group reference");
+				}
+				cursor++;
+				// take the largest number of a group
+				while (cursor < replacement.length()) {
+					int nextDigit = replacement.charAt(cursor) - '0';
+					if (nextDigit < 0 || nextDigit > 9
+							|| refNum * 10L + nextDigit > groupCount) {
+						break;
+					}
+					refNum = refNum * 10 + nextDigit;
+					cursor++;
+				}
+				if (refNum > groupCount) {
+					throw new IndexOutOfBoundsException("No group " + refNum);
+				}
+				if (count + 1 == literals.length) {
+					String[] grownLiterals = new String[literals.length * 2];
+					System.arraycopy(literals, 0, grownLiterals, 0, count);
+					literals = grownLiterals;
+					int[] grownGroups = new int[groups.length * 2];
+					System.arraycopy(groups, 0, grownGroups, 0, count);
+					groups = grownGroups;
+				}
+				literals[count] = literal.toString();
+				groups[count++] = refNum;
+				literal.setLength(0);
+			} else {
+				literal.append(nextChar);
+			}
+		}
+		literals[count] = literal.toString();
+		String[] trimmedLiterals = new String[count + 1];
+		System.arraycopy(literals, 0, trimmedLiterals, 0, count + 1);
+		int[] trimmedGroups = new int[count];
+		System.arraycopy(groups, 0, trimmedGroups, 0, count);
+		return new Replacement(trimmedLiterals, trimmedGroups, nullText);
+	}
+
+	/**
+	 * Returns true if the replacement refers to a group.
+	 */
+	public boolean hasGroupReferences() {
+		return groups.length > 0;
+	}
+
+	/**
+	 * Returns true if the replacement refers to a capturing group, i.e. to a
+	 * group other than the whole match.
+	 */
+	boolean hasCapturingGroupReferences() {
+		for (int group : groups) {
+			if (group > 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Appends the replacement for the last match of the given matcher to the
+	 * given appendable. The groups are appended without creating strings.
+	 */
+	void appendTo(Appendable appendable, Matcher matcher) throws IOException {
+		for (int n = 0; n < groups.length; n++) {
+			appendable.append(literals[n]);
+			if (nullText && matcher.start(groups[n]) == -1) {
+				appendable.append("null");
+			} else {
+				matcher.appendGroupTo(appendable, groups[n]);
+			}
+		}
+		appendable.append(literals[groups.length]);
+	}
+}
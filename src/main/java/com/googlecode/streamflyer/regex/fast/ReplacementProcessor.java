@@ -0,0 +1,131 @@
+/**
+ * Copyright (C) 2011 rwoo@gmx.de
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.googlecode.streamflyer.regex.fast;
+
+import java.util.regex.MatchResult;
+
+import com.googlecode.streamflyer.regex.AbstractMatchProcessor;
+import com.googlecode.streamflyer.regex.MatchProcessor;
+import com.googlecode.streamflyer.regex.MatchProcessorResult;
+import com.googlecode.streamflyer.regex.ReplacingProcessor;
+
+/**
+ * Replaces the match with a {@link Replacement}.
+ * <p>
+ * In comparison to {@link ReplacingProcessor} the replacement is not
+ * assembled as a string. The groups are copied from the buffer into a reused
+ * char array, and the chars after the match are shifted only once.
+ * <p>
+ * {@link #ReplacementProcessor(String)} replaces like
+ * {@link ReplacingProcessor}. A replacement that has been compiled by
+ * {@link Replacement#compile(String, int)} replaces like
+ * {@link Matcher#appendReplacement(StringBuffer, String)} instead.
+ *
+ * @author rwoo
+ *
+ * @since 18.10.2026
+ */
+public class ReplacementProcessor extends AbstractMatchProcessor implements
+		MatchProcessor {
+
+	private final Replacement replacement;
+
+	/**
+	 * The chars of the last replacement that refers to groups.
+	 */
+	private char[] chars = new char[64];
+
+	/**
+	 * @param replacement
+	 *            the replacement string, parsed by
+	 *            {@link Replacement#compileLikeReplacingProcessor(String)}.
+	 */
+	public ReplacementProcessor(String replacement) {
+		this(Replacement.compileLikeReplacingProcessor(replacement));
+	}
+
+	public ReplacementProcessor(Replacement replacement) {
+		super();
+		this.replacement = replacement;
+	}
+
+	/**
+	 * @see com.googlecode.streamflyer.regex.MatchProcessor#process(java.lang.StringBuilder,
+	 *      int, java.util.regex.MatchResult)
+	 */
+	@Override
+	public MatchProcessorResult process(StringBuilder characterBuffer,
+			int firstModifiableCharacterInBuffer, MatchResult matchResult) {
+
+		int start = matchResult.start();
+		int end = matchResult.end();
+		String[] literals = replacement.literals;
+		int[] groups = replacement.groups;
+
+		if (groups.length == 0) {
+			characterBuffer.replace(start, end, literals[0]);
+			return createResult(matchResult, start + literals[0].length(),
+					true);
+		}
+
+		// assemble the replacement
+		int length = 0;
+		for (int n = 0; n < groups.length; n++) {
+			length = append(literals[n], length);
+			// throws an IndexOutOfBoundsException if there is no such group
+			int groupStart = matchResult.start(groups[n]);
+			if (groupStart != -1) {
+				int groupEnd = matchResult.end(groups[n]);
+				ensureCapacity(length + groupEnd - groupStart);
+				characterBuffer.getChars(groupStart, groupEnd, chars, length);
+				length += groupEnd - groupStart;
+			} else if (replacement.nullText) {
+				length = append("null", length);
+			}
+		}
+		length = append(literals[groups.length], length);
+
+		// shift the chars after the match, then overwrite the match
+		int shift = length - (end - start);
+		if (shift > 0) {
+			characterBuffer.insert(end, chars, end - start, shift);
+		} else if (shift < 0) {
+			characterBuffer.delete(start + length, end);
+		}
+		int overwrite = shift > 0 ? end - start : length;
+		for (int index = 0; index < overwrite; index++) {
+			characterBuffer.setCharAt(start + index, chars[index]);
+		}
+
+		return createResult(matchResult, start + length, true);
+	}
+
+	private int append(String literal, int length) {
+		ensureCapacity(length + literal.length());
+		literal.getChars(0, literal.length(), chars, length);
+		return length + literal.length();
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > chars.length) {
+			char[] grown = new char[Math.max(capacity, chars.length * 2)];
+			System.arraycopy(chars, 0, grown, 0, chars.length);
+			chars = grown;
+		}
+	}
+}
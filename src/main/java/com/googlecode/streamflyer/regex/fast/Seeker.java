@@ -0,0 +1,1042 @@
+/**
+ * Copyright (C) 2011 rwoo@gmx.de
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.googlecode.streamflyer.regex.fast;
+
+import java.util.Arrays;
+
+/**
+ * Skips positions where {@link Pattern#matchRoot} can neither match nor hit
+ * the end of the input.
+ * <p>
+ * {@link Matcher#findUnlessHitEnd(int, int)} cannot use {@link Pattern#root}
+ * because the optimized roots (BnM, Start) search beyond the given maximum
+ * start position and do not tell at which position the end was hit. A seeker
+ * gives the same speed-up but leaves the probing to
+ * {@link Matcher#findUnlessHitEnd(int, int)}, so that <code>hitEnd</code> and
+ * <code>lastFrom</code> are exactly the same as if every position were probed.
+ *
+ * @author rwoo
+ *
+ * @since 18.10.2026
+ */
+abstract class Seeker {
+
+	/**
+	 * The printable ASCII chars and the line breaks, ordered from frequent to
+	 * rare in typical text, markup and source code.
+	 */
+	private static final String FREQUENT = " e\ntaoinsrhldcu.m,fp<g>/=w\"yb-v:"
+			+ "0k1_2;'x)(9q3j85z4762TSACIEMPRNDBLHOFWGUVYKJQXZ\t\r&#%?!*@$+"
+			+ "[]{}|\\^`~";
+
+	/**
+	 * Shorter literals are found faster by scanning for their rarest char
+	 * than by Boyer-Moore.
+	 */
+	static final int MIN_BOYER_MOORE_LENGTH = 8;
+
+	/**
+	 * The frequency rank of each ASCII char. Higher is more frequent. All
+	 * other chars have the rank 0.
+	 */
+	private static final int[] RANK = new int[128];
+
+	static {
+		for (int index = 0; index < FREQUENT.length(); index++) {
+			RANK[FREQUENT.charAt(index)] = FREQUENT.length() - index;
+		}
+	}
+
+	/**
+	 * Returns the seeker for the given compiled pattern.
+	 *
+	 * @param matchRoot
+	 *            the root of the pattern that is matched at a given position.
+	 * @param root
+	 *            the root of the pattern that is used by find().
+	 * @return Returns the seeker, never null.
+	 */
+	static Seeker create(Pattern.Node matchRoot, Pattern.Node root) {
+		Seeker seeker = prefilter(matchRoot, root);
+		boolean exact = matchRoot instanceof Pattern.Slice
+				|| seeker instanceof BnMISeeker;
+		if (seeker instanceof BeginSeeker || exact
+				&& matchRoot.next instanceof Pattern.LastNode) {
+			// nothing to check after the prefilter
+			return seeker;
+		}
+		Program program = Program.compile(matchRoot);
+		if (program == null) {
+			return seeker;
+		}
+		Seeker shiftAnd = ShiftAndSeeker.create(seeker, program);
+		return new DfaSeeker(shiftAnd != null ? shiftAnd : seeker, program);
+	}
+
+	/**
+	 * Returns the seeker that quickly finds the positions where the pattern
+	 * might match. Unlike the {@link DfaSeeker}, the prefilter does not run an
+	 * automaton at each position.
+	 */
+	static Seeker prefilter(Pattern.Node matchRoot, Pattern.Node root) {
+		if (root instanceof Pattern.BnMI) {
+			return new BnMISeeker((Pattern.BnMI) root);
+		} else if (root instanceof Pattern.BnM) {
+			return new BnMSeeker((Pattern.BnM) root);
+		} else if (matchRoot instanceof Pattern.Slice) {
+			return new SliceSeeker(((Pattern.Slice) matchRoot).buffer);
+		} else if (matchRoot instanceof Pattern.Begin) {
+			return new BeginSeeker();
+		}
+		Pattern.Node node = matchRoot;
+		while (node instanceof Pattern.GroupHead) {
+			node = node.next;
+		}
+		if (node instanceof Pattern.LiteralBranch) {
+			return new AhoCorasickSeeker(((Pattern.LiteralBranch) node).literals);
+		}
+		Seeker literalSeeker = LiteralSeeker.create(matchRoot);
+		if (literalSeeker != null) {
+			return literalSeeker;
+		} else if (root instanceof Pattern.Start
+				&& ((Pattern.Start) root).firstChars != null) {
+			return new FirstCharsSeeker(((Pattern.Start) root).firstChars);
+		} else {
+			return new Seeker() {
+				@Override
+				int seek(Matcher matcher, int i, int maxFrom, CharSequence seq) {
+					return i;
+				}
+			};
+		}
+	}
+
+	/**
+	 * Returns the first position <code>p &gt;= i</code> where a match might
+	 * start or where matching might hit the end. For all skipped positions
+	 * <code>q</code> with <code>i &lt;= q &lt; p</code> and
+	 * <code>q &lt;= maxFrom</code> matching must fail without hitting the end.
+	 *
+	 * @param matcher
+	 *            the matcher that provides the bounds of the input.
+	 * @param i
+	 *            the position to start from.
+	 * @param maxFrom
+	 *            the maximum position a match may start at.
+	 * @param seq
+	 *            the input.
+	 * @return Returns the position to probe next. If the returned value is
+	 *         greater than <code>maxFrom</code>, there is no such position.
+	 */
+	abstract int seek(Matcher matcher, int i, int maxFrom, CharSequence seq);
+
+	/**
+	 * Uses the tables of a {@link Pattern.BnM} to find the literal the pattern
+	 * starts with.
+	 */
+	static final class BnMSeeker extends Seeker {
+		private final int[] buffer;
+		private final int rare;
+		private final LastOccurrences lastOcc;
+		private final int[] optoSft;
+
+		BnMSeeker(Pattern.BnM bnm) {
+			this.buffer = bnm.buffer;
+			this.rare = rarest(buffer);
+			if (buffer.length >= MIN_BOYER_MOORE_LENGTH) {
+				this.lastOcc = bnm.lastOcc;
+				this.optoSft = bnm.optoSft;
+			} else {
+				this.lastOcc = null;
+				this.optoSft = null;
+			}
+		}
+
+		@Override
+		int seek(Matcher matcher, int i, int maxFrom, CharSequence seq) {
+			// positions after this one might hit the end, so they are probed
+			int last = Math.min(maxFrom, matcher.to - buffer.length);
+			int found = indexOf(matcher, seq, i, last, buffer, rare, lastOcc,
+					optoSft);
+			return found >= 0 ? found : Math.max(i, last + 1);
+		}
+	}
+
+	/**
+	 * Uses a {@link Pattern.BnMI} to find the case insensitive literal the
+	 * pattern starts with. Like the {@link BnMSeeker}, a short literal is
+	 * searched by its rarest char, if the literal has an ASCII char whose
+	 * cases are known.
+	 */
+	static final class BnMISeeker extends Seeker {
+		private final Pattern.BnMI bnm;
+
+		/**
+		 * The index of the char the literal is searched by, or -1 if the
+		 * literal is searched by Boyer-Moore.
+		 */
+		private final int rare;
+
+		BnMISeeker(Pattern.BnMI bnm) {
+			this.bnm = bnm;
+			boolean isShort = bnm.buffer.length < MIN_BOYER_MOORE_LENGTH;
+			this.rare = isShort ? rarestFolded(bnm.buffer, bnm.unicode) : -1;
+		}
+
+		@Override
+		int seek(Matcher matcher, int i, int maxFrom, CharSequence seq) {
+			// positions after this one might hit the end, so they are probed
+			int last = Math.min(maxFrom, matcher.to - bnm.buffer.length);
+			int found = rare >= 0 ? indexOfRareFolded(matcher, seq, i, last,
+					bnm, rare) : bnm.indexOf(matcher, i, last, seq);
+			return found >= 0 ? found : Math.max(i, last + 1);
+		}
+	}
+
+	/**
+	 * Returns the index of the folded char of the given literal that is
+	 * expected to be the rarest in the input, or -1 if there is no ASCII char
+	 * that only matches itself and its other case. With unicode case folding
+	 * some non-ASCII chars match i, k and s.
+	 */
+	static int rarestFolded(int[] literal, boolean unicode) {
+		int rarest = -1;
+		for (int index = 0; index < literal.length; index++) {
+			int ch = literal[index];
+			if (ch >= 0x80 || unicode && (ch == 'i' || ch == 'k' || ch == 's')) {
+				continue;
+			}
+			if (rarest < 0 || rank(ch) < rank(literal[rarest])) {
+				rarest = index;
+			}
+		}
+		return rarest;
+	}
+
+	/**
+	 * Finds the case insensitive literal of the given {@link Pattern.BnMI}
+	 * like <code>indexOfRare()</code>. The rare char is an ASCII char, see
+	 * {@link #rarestFolded(int[], boolean)}.
+	 */
+	private static int indexOfRareFolded(Matcher matcher, CharSequence seq,
+			int i, int last, Pattern.BnMI bnm, int rare) {
+		int[] src = bnm.buffer;
+		int patternLength = src.length;
+		char[] chars = matcher.chars;
+		int offset = matcher.offset;
+		boolean unicode = bnm.unicode;
+		int rareChar = src[rare];
+		// the case bit of a letter
+		int mask = ASCII.isLower(rareChar) ? 0x20 : 0;
+		NEXT: for (int k = i + rare; k <= last + rare; k++) {
+			int ch = chars != null ? chars[offset + k] : seq.charAt(k);
+			if ((ch | mask) != rareChar) {
+				continue;
+			}
+			int start = k - rare;
+			for (int j = 0; j < patternLength; j++) {
+				ch = matcher.charAt(start + j);
+				if (ch != src[j] && Pattern.BnMI.fold(ch, unicode) != src[j]) {
+					continue NEXT;
+				}
+			}
+			return start;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the first position <code>p</code> with
+	 * <code>i &lt;= p &lt;= last</code> where the given literal occurs in the
+	 * input, or -1 if there is no such position. The literal must fit into the
+	 * input at all positions up to <code>last</code>.
+	 *
+	 * @param matcher
+	 *            the matcher that provides the array that holds the input.
+	 * @param src
+	 *            the BMP chars of the literal.
+	 * @param rare
+	 *            the index of the char the literal is searched by if it is
+	 *            too short for Boyer-Moore, see {@link #rarest(int[])}.
+	 * @param lastOcc
+	 *            the bad character shift table of a {@link Pattern.BnM} or
+	 *            null if the literal is searched by its rare char.
+	 * @param optoSft
+	 *            the good suffix shift table of a {@link Pattern.BnM}.
+	 */
+	static int indexOf(Matcher matcher, CharSequence seq, int i, int last,
+			int[] src, int rare, LastOccurrences lastOcc, int[] optoSft) {
+		if (lastOcc == null) {
+			return indexOfRare(matcher, seq, i, last, src, rare);
+		}
+		int patternLength = src.length;
+		char[] chars = matcher.chars;
+		int offset = matcher.offset;
+
+		// this loop is taken from BnM.match()
+		NEXT: while (i <= last) {
+			// Loop over pattern from right to left
+			for (int j = patternLength - 1; j >= 0; j--) {
+				int ch = chars != null ? chars[offset + i + j] : seq
+						.charAt(i + j);
+				if (ch != src[j]) {
+					// Shift search to the right by the maximum of the
+					// bad character shift and the good suffix shift
+					i += Math.max(j + 1 - lastOcc.get(ch), optoSft[j]);
+					continue NEXT;
+				}
+			}
+			return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Finds the literal like <code>indexOf()</code> but scans for the given
+	 * rare char of the literal and compares the other chars at each candidate
+	 * only. This loop has its own method, so that the JIT does not mix up its
+	 * profile with the profile of the Boyer-Moore loop.
+	 */
+	private static int indexOfRare(Matcher matcher, CharSequence seq, int i,
+			int last, int[] src, int rare) {
+		int patternLength = src.length;
+		char[] chars = matcher.chars;
+		int offset = matcher.offset;
+		int rareChar = src[rare];
+		NEXT: for (int k = i + rare; k <= last + rare; k++) {
+			int ch = chars != null ? chars[offset + k] : seq.charAt(k);
+			if (ch != rareChar) {
+				continue;
+			}
+			int start = k - rare;
+			for (int j = 0; j < patternLength; j++) {
+				if (j != rare && matcher.charAt(start + j) != src[j]) {
+					continue NEXT;
+				}
+			}
+			return start;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the index of the char of the given literal that is expected to
+	 * be the rarest in the input. Scanning for this char finds fewer
+	 * candidates than scanning for the first char.
+	 */
+	static int rarest(int[] literal) {
+		int rarest = 0;
+		for (int index = 1; index < literal.length; index++) {
+			if (rank(literal[index]) < rank(literal[rarest])) {
+				rarest = index;
+			}
+		}
+		return rarest;
+	}
+
+	private static int rank(int ch) {
+		return ch < RANK.length ? RANK[ch] : 0;
+	}
+
+	/**
+	 * Searches for a literal every match must contain. The literal starts
+	 * between <code>minOffset</code> and <code>maxOffset</code> chars after
+	 * the start of the match. A position can be skipped if the literal does
+	 * not occur in this window and if matching at this position cannot read
+	 * up to the end of the input.
+	 * <p>
+	 * Only literals are used that follow a part of the pattern with a bounded
+	 * length, that neither looks ahead nor checks for the end of the input.
+	 * Otherwise matching might hit the end at a position without the literal.
+	 */
+	static final class LiteralSeeker extends Seeker {
+
+		/**
+		 * The length of the part of the pattern that is not bounded.
+		 */
+		private static final int UNBOUNDED = Integer.MAX_VALUE;
+
+		private final int[] literal;
+		private final int minOffset;
+		private final int maxOffset;
+		private final int rare;
+		private final LastOccurrences lastOcc;
+		private final int[] optoSft;
+
+		LiteralSeeker(int[] literal, int minOffset, int maxOffset) {
+			this.literal = literal;
+			this.minOffset = minOffset;
+			this.maxOffset = maxOffset;
+			this.rare = rarest(literal);
+			Pattern.Node bnm = Pattern.BnM.optimize(new Pattern.Slice(literal));
+			if (bnm instanceof Pattern.BnM
+					&& literal.length >= MIN_BOYER_MOORE_LENGTH) {
+				this.lastOcc = ((Pattern.BnM) bnm).lastOcc;
+				this.optoSft = ((Pattern.BnM) bnm).optoSft;
+			} else {
+				this.lastOcc = null;
+				this.optoSft = null;
+			}
+		}
+
+		/**
+		 * Returns a seeker for the longest required literal of the pattern,
+		 * or null if there is no such literal.
+		 */
+		static LiteralSeeker create(Pattern.Node matchRoot) {
+			int[] best = null;
+			int bestMin = 0, bestMax = 0;
+
+			// the literal that is being collected
+			int[] run = new int[0];
+			int runMin = 0, runMax = 0;
+
+			// the min and max offset of the current node
+			int min = 0, max = 0;
+			Pattern.Node node = matchRoot;
+			while (node != null) {
+				int[] chars = literalOf(node);
+				if (chars != null) {
+					if (run.length == 0) {
+						runMin = min;
+						runMax = max;
+					}
+					run = concat(run, chars);
+					min += chars.length;
+					max += chars.length;
+					if (best == null || run.length > best.length) {
+						best = run;
+						bestMin = runMin;
+						bestMax = runMax;
+					}
+					node = node.next;
+					continue;
+				}
+
+				int[] length = new int[2];
+				Pattern.Node next = skip(node, length);
+				if (next == null) {
+					break;
+				}
+				if (length[1] != 0) {
+					run = new int[0];
+				}
+				min = add(min, length[0]);
+				max = add(max, length[1]);
+				if (max == UNBOUNDED) {
+					break;
+				}
+				node = next;
+			}
+			return best == null ? null : new LiteralSeeker(best, bestMin,
+					bestMax);
+		}
+
+		/**
+		 * Returns the chars of the given node if it matches a case sensitive
+		 * literal, null otherwise.
+		 */
+		private static int[] literalOf(Pattern.Node node) {
+			if (node instanceof Pattern.Slice) {
+				return ((Pattern.Slice) node).buffer;
+			} else if (node instanceof Pattern.Single) {
+				return new int[] { ((Pattern.Single) node).c };
+			} else if (node instanceof Pattern.SliceS
+					|| node instanceof Pattern.SingleS) {
+				int[] codePoints = node instanceof Pattern.SliceS ? ((Pattern.SliceS) node).buffer
+						: new int[] { ((Pattern.SingleS) node).c };
+				String s = new String(codePoints, 0, codePoints.length);
+				int[] chars = new int[s.length()];
+				for (int i = 0; i < chars.length; i++) {
+					chars[i] = s.charAt(i);
+				}
+				return chars;
+			}
+			return null;
+		}
+
+		/**
+		 * Determines the min and max number of chars the given node matches
+		 * (without the nodes that follow) and returns the following node.
+		 * Returns null if the node is not supported or terminates the
+		 * pattern.
+		 */
+		private static Pattern.Node skip(Pattern.Node node, int[] length) {
+			if (node instanceof Pattern.Branch) {
+				Pattern.Branch branch = (Pattern.Branch) node;
+				int min = UNBOUNDED, max = 0;
+				for (int n = 0; n < branch.size; n++) {
+					if (branch.atoms[n] == null) {
+						length[0] = 0;
+						length[1] = 0;
+					} else if (!chainLength(branch.atoms[n], branch.conn,
+							length)) {
+						return null;
+					}
+					min = Math.min(min, length[0]);
+					max = Math.max(max, length[1]);
+				}
+				length[0] = min;
+				length[1] = max;
+				return branch.conn.next;
+			} else if (isAtom(node)) {
+				if (!nodeLength(node, length)) {
+					return null;
+				}
+				return node.next;
+			}
+			return null;
+		}
+
+		/**
+		 * Returns true if the node is a supported node that matches
+		 * something without the help of its next node.
+		 */
+		private static boolean isAtom(Pattern.Node node) {
+			return node instanceof Pattern.SliceNode
+					|| node instanceof Pattern.CharProperty
+					|| node instanceof Pattern.Curly
+					|| node instanceof Pattern.GroupCurly
+					|| node instanceof Pattern.Ques
+					|| node instanceof Pattern.GroupHead
+					|| node instanceof Pattern.GroupTail
+					|| node instanceof Pattern.Caret
+					|| node instanceof Pattern.UnixCaret
+					|| node instanceof Pattern.Bound
+					|| node instanceof Pattern.Begin
+					|| node instanceof Pattern.LastMatch;
+		}
+
+		/**
+		 * Determines the min and max number of chars the chain of nodes from
+		 * the given node to the given end node matches. Returns false if the
+		 * chain contains unsupported nodes or does not lead to the end node.
+		 * The latter happens if an alternative of a branch is parsed into the
+		 * branch of a preceding optional group.
+		 */
+		private static boolean chainLength(Pattern.Node node, Pattern.Node end,
+				int[] length) {
+			int min = 0, max = 0;
+			while (node != end) {
+				Pattern.Node next = skip(node, length);
+				if (next == null) {
+					return false;
+				}
+				min = add(min, length[0]);
+				max = add(max, length[1]);
+				node = next;
+			}
+			length[0] = min;
+			length[1] = max;
+			return true;
+		}
+
+		/**
+		 * Determines the min and max number of chars the given atom matches.
+		 * Returns false if the atom contains unsupported nodes.
+		 */
+		private static boolean nodeLength(Pattern.Node node, int[] length) {
+			if (node instanceof Pattern.SliceNode) {
+				int[] buffer = ((Pattern.SliceNode) node).buffer;
+				if (node instanceof Pattern.SliceS) {
+					length[0] = length[1] = literalOf(node).length;
+				} else if (node instanceof Pattern.SliceIS) {
+					length[0] = buffer.length;
+					length[1] = 2 * buffer.length;
+				} else {
+					length[0] = length[1] = buffer.length;
+				}
+			} else if (node instanceof Pattern.BmpCharProperty) {
+				length[0] = length[1] = 1;
+			} else if (node instanceof Pattern.SingleS) {
+				length[0] = length[1] = 2;
+			} else if (node instanceof Pattern.CharProperty) {
+				length[0] = 1;
+				length[1] = 2;
+			} else if (node instanceof Pattern.Curly) {
+				Pattern.Curly curly = (Pattern.Curly) node;
+				if (!chainLength(curly.atom, Pattern.accept, length)) {
+					return false;
+				}
+				length[0] = multiply(length[0], curly.cmin);
+				length[1] = multiply(length[1], curly.cmax);
+			} else if (node instanceof Pattern.GroupCurly) {
+				Pattern.GroupCurly curly = (Pattern.GroupCurly) node;
+				if (!chainLength(curly.atom, Pattern.accept, length)) {
+					return false;
+				}
+				length[0] = multiply(length[0], curly.cmin);
+				length[1] = multiply(length[1], curly.cmax);
+			} else if (node instanceof Pattern.Ques) {
+				Pattern.Ques ques = (Pattern.Ques) node;
+				if (!chainLength(ques.atom, Pattern.accept, length)) {
+					return false;
+				}
+				if (ques.type != Pattern.INDEPENDENT) {
+					length[0] = 0;
+				}
+			} else {
+				// zero-width nodes
+				length[0] = length[1] = 0;
+			}
+			return true;
+		}
+
+		private static int add(int a, int b) {
+			long sum = (long) a + b;
+			return sum >= UNBOUNDED ? UNBOUNDED : (int) sum;
+		}
+
+		private static int multiply(int a, int b) {
+			long product = (long) a * b;
+			return product >= UNBOUNDED ? UNBOUNDED : (int) product;
+		}
+
+		private static int[] concat(int[] a, int[] b) {
+			int[] result = new int[a.length + b.length];
+			System.arraycopy(a, 0, result, 0, a.length);
+			System.arraycopy(b, 0, result, a.length, b.length);
+			return result;
+		}
+
+		@Override
+		int seek(Matcher matcher, int i, int maxFrom, CharSequence seq) {
+			// matching at this position or after might read up to the end
+			int unsafe = matcher.to - literal.length - maxOffset + 1;
+			if (i >= unsafe) {
+				return i;
+			}
+			int last = Math.min(maxFrom, unsafe - 1);
+			int found = indexOf(matcher, seq, i + minOffset, last + maxOffset,
+					literal, rare, lastOcc, optoSft);
+			return found >= 0 ? Math.max(i, found - maxOffset) : last + 1;
+		}
+	}
+
+	/**
+	 * Finds a short literal the pattern starts with. The input is scanned for
+	 * the rarest char of the literal, the other chars are compared at each
+	 * candidate.
+	 */
+	static final class SliceSeeker extends Seeker {
+		private final int[] buffer;
+		private final int rare;
+
+		SliceSeeker(int[] buffer) {
+			this.buffer = buffer;
+			this.rare = rarest(buffer);
+		}
+
+		@Override
+		int seek(Matcher matcher, int i, int maxFrom, CharSequence seq) {
+			int to = matcher.to;
+			// the literal fits into the input at the positions up to here
+			int last = Math.min(maxFrom, to - buffer.length);
+			if (i <= last) {
+				int found = indexOf(matcher, seq, i, last, buffer, rare, null,
+						null);
+				if (found >= 0) {
+					return found;
+				}
+				i = last + 1;
+			}
+			// matching might hit the end if the rest of the input is a prefix
+			// of the literal. Matching at the end of the input always hits
+			// the end.
+			last = Math.min(maxFrom, to - 1);
+			NEXT: for (; i <= last; i++) {
+				for (int j = 0; i + j < to; j++) {
+					if (matcher.charAt(i + j) != buffer[j]) {
+						continue NEXT;
+					}
+				}
+				return i;
+			}
+			return i;
+		}
+	}
+
+	/**
+	 * Finds the next position where one of the literals of a
+	 * {@link Pattern.LiteralBranch} occurs, or where the input ends with a
+	 * prefix of a literal. The input is scanned only once for all literals.
+	 */
+	static final class AhoCorasickSeeker extends Seeker {
+		private final LiteralSet literals;
+
+		AhoCorasickSeeker(LiteralSet literals) {
+			this.literals = literals;
+		}
+
+		@Override
+		int seek(Matcher matcher, int i, int maxFrom, CharSequence seq) {
+			LiteralSet literals = this.literals;
+			int[] depth = literals.depth;
+			int[] output = literals.output;
+			int to = matcher.to;
+			// the leftmost start of a literal found so far
+			int found = Integer.MAX_VALUE;
+			int state = 0;
+			for (int j = i; j < to; j++) {
+				state = literals.next(state,
+						(char) literals.fold(matcher.charAt(j)));
+				if (output[state] > 0) {
+					found = Math.min(found, j + 1 - output[state]);
+				}
+				// the leftmost start of a literal that might still be found
+				int start = j + 1 - depth[state];
+				if (found <= start) {
+					return found;
+				}
+				if (found == Integer.MAX_VALUE && start > maxFrom) {
+					return start;
+				}
+			}
+			// a prefix of a literal at the end of the input hits the end
+			return Math.min(found, to - depth[state]);
+		}
+	}
+
+	/**
+	 * Skips the chars no match can start with.
+	 */
+	static final class FirstCharsSeeker extends Seeker {
+		private final FirstChars firstChars;
+
+		FirstCharsSeeker(FirstChars firstChars) {
+			this.firstChars = firstChars;
+		}
+
+		@Override
+		int seek(Matcher matcher, int i, int maxFrom, CharSequence seq) {
+			// the end of the input is probed
+			int last = Math.min(maxFrom, matcher.to - 1);
+			char[] chars = matcher.chars;
+			int offset = matcher.offset;
+			for (; i <= last; i++) {
+				if (firstChars.contains(chars != null ? chars[offset + i] : seq
+						.charAt(i))) {
+					return i;
+				}
+			}
+			return i;
+		}
+	}
+
+	/**
+	 * A pattern that starts with {@link Pattern.Begin} can only match at the
+	 * beginning of the input.
+	 */
+	static final class BeginSeeker extends Seeker {
+		@Override
+		int seek(Matcher matcher, int i, int maxFrom, CharSequence seq) {
+			int fromIndex = (matcher.anchoringBounds) ? matcher.from : 0;
+			return i <= fromIndex ? fromIndex : Integer.MAX_VALUE;
+		}
+	}
+
+	/**
+	 * Runs a short pattern as a bit-parallel Shift-And automaton over the
+	 * input. Each consuming instruction of the {@link Program} is a bit of a
+	 * <code>long</code>. The automaton follows all start positions at once,
+	 * so it finds the end of the first match with a few operations per char.
+	 * A match that ends there cannot start more than {@link #maxLength} chars
+	 * before, so the positions before are skipped.
+	 * <p>
+	 * Only patterns with at most 64 consuming instructions, without
+	 * zero-width assertions and with a bounded length are run this way.
+	 */
+	static final class ShiftAndSeeker extends Seeker {
+		private final Seeker prefilter;
+
+		/**
+		 * The program.
+		 */
+		private final Program program;
+
+		/**
+		 * The instruction of each bit.
+		 */
+		private final int[] positions;
+
+		/**
+		 * The bits that match each char below 256.
+		 */
+		private final long[] latin1 = new long[256];
+
+		/**
+		 * The bits a match can start with.
+		 */
+		private final long initial;
+
+		/**
+		 * The bits a match can end with.
+		 */
+		private final long accepting;
+
+		/**
+		 * The bits that can follow the bits of each byte of the state, or
+		 * null if each bit is only followed by the next one.
+		 */
+		private final long[][] follow;
+
+		/**
+		 * The maximum length of a match in chars.
+		 */
+		private final int maxLength;
+
+		private ShiftAndSeeker(Seeker prefilter, Program program,
+				int[] positions, long initial, long accepting,
+				long[][] follow, int maxLength) {
+			this.prefilter = prefilter;
+			this.program = program;
+			this.positions = positions;
+			this.initial = initial;
+			this.accepting = accepting;
+			this.follow = follow;
+			this.maxLength = maxLength;
+			for (int ch = 0; ch < latin1.length; ch++) {
+				latin1[ch] = compute((char) ch);
+			}
+		}
+
+		/**
+		 * Returns the seeker for the given program, or null if the program is
+		 * not short enough or has an unbounded length.
+		 */
+		static ShiftAndSeeker create(Seeker prefilter, Program program) {
+			int[] bits = new int[program.size];
+			int count = 0;
+			for (int pc = 0; pc < program.size; pc++) {
+				if (program.op[pc] == Program.ASSERT) {
+					// assertions might hit the end before the end is read
+					return null;
+				} else if (program.op[pc] == Program.CHAR
+						|| program.op[pc] == Program.PROPERTY) {
+					if (count == 64) {
+						return null;
+					}
+					bits[pc] = count++;
+				}
+			}
+			int[] positions = new int[count];
+			for (int pc = 0; pc < program.size; pc++) {
+				if (program.op[pc] == Program.CHAR
+						|| program.op[pc] == Program.PROPERTY) {
+					positions[bits[pc]] = pc;
+				}
+			}
+
+			// the bits that can be reached without consuming a char
+			long[] next = new long[count];
+			boolean[] matches = new boolean[count];
+			long initial = 0;
+			long accepting = 0;
+			boolean[] reached = new boolean[program.size];
+			int[] stack = new int[program.size * 2 + 1];
+			for (int bit = -1; bit < count; bit++) {
+				Arrays.fill(reached, false);
+				long targets = 0;
+				boolean match = false;
+				int top = 0;
+				stack[top++] = bit < 0 ? 0 : positions[bit] + 1;
+				while (top > 0) {
+					int pc = stack[--top];
+					if (reached[pc]) {
+						continue;
+					}
+					reached[pc] = true;
+					switch (program.op[pc]) {
+					case Program.CHAR:
+					case Program.PROPERTY:
+						targets |= 1L << bits[pc];
+						break;
+					case Program.MATCH:
+						match = true;
+						break;
+					case Program.SPLIT:
+					case Program.EMPTY_CHECK:
+						stack[top++] = program.arg2[pc];
+						stack[top++] = program.op[pc] == Program.SPLIT ? program.arg[pc]
+								: pc + 1;
+						break;
+					case Program.JUMP:
+						stack[top++] = program.arg[pc];
+						break;
+					default:
+						// GROUP_HEAD, GROUP_TAIL
+						stack[top++] = pc + 1;
+					}
+				}
+				if (bit < 0) {
+					if (match) {
+						// the pattern matches the empty string everywhere
+						return null;
+					}
+					initial = targets;
+				} else {
+					if ((targets & (-1L << (bit + 1))) != targets) {
+						// a loop, the length of a match is not bounded
+						return null;
+					}
+					next[bit] = targets;
+					if (match) {
+						accepting |= 1L << bit;
+					}
+				}
+			}
+
+			// the longest path of bits to the end of a match
+			int[] longest = new int[count];
+			int maxLength = 0;
+			for (int bit = count - 1; bit >= 0; bit--) {
+				for (int target = bit + 1; target < count; target++) {
+					if ((next[bit] & (1L << target)) != 0) {
+						longest[bit] = Math.max(longest[bit], longest[target]);
+					}
+				}
+				longest[bit]++;
+				if ((initial & (1L << bit)) != 0) {
+					maxLength = Math.max(maxLength, longest[bit]);
+				}
+			}
+			if (program.supplementary) {
+				// a bit might match a surrogate pair
+				maxLength *= 2;
+			}
+
+			boolean shift = initial == 1L;
+			for (int bit = 0; bit < count; bit++) {
+				shift &= next[bit] == (bit + 1 < count ? 1L << (bit + 1) : 0);
+			}
+			long[][] follow = null;
+			if (!shift) {
+				follow = new long[(count + 7) / 8][256];
+				for (int chunk = 0; chunk < follow.length; chunk++) {
+					for (int b = 1; b < 256; b++) {
+						int lowest = Integer.numberOfTrailingZeros(b);
+						int bit = chunk * 8 + lowest;
+						follow[chunk][b] = follow[chunk][b & (b - 1)]
+								| (bit < count ? next[bit] : 0);
+					}
+				}
+			}
+			return new ShiftAndSeeker(prefilter, program, positions, initial,
+					accepting, follow, maxLength);
+		}
+
+		/**
+		 * Returns the bits that match the given char.
+		 */
+		private long compute(char ch) {
+			long mask = 0;
+			for (int bit = 0; bit < positions.length; bit++) {
+				int pc = positions[bit];
+				if (program.op[pc] == Program.CHAR ? program.arg[pc] == ch
+						: program.property[pc].isSatisfiedBy(ch)) {
+					mask |= 1L << bit;
+				}
+			}
+			return mask;
+		}
+
+		@Override
+		int seek(Matcher matcher, int i, int maxFrom, CharSequence seq) {
+			i = prefilter.seek(matcher, i, maxFrom, seq);
+			if (i > maxFrom) {
+				return i;
+			}
+			int to = matcher.to;
+			// the matches that start up to maxFrom end before this position
+			int end = Math.min(to, maxFrom + maxLength);
+			long state = 0;
+			for (int k = i; k < end; k++) {
+				char ch = matcher.charAt(k);
+				if (program.supplementary && ch >= Character.MIN_SURROGATE
+						&& ch <= Character.MAX_SURROGATE) {
+					// a bit might match a surrogate pair, so give up here
+					return Math.max(i, k + 1 - maxLength);
+				}
+				long followers;
+				if (follow == null) {
+					followers = state << 1;
+				} else {
+					followers = 0;
+					for (int chunk = 0; state != 0; chunk++) {
+						followers |= follow[chunk][(int) state & 0xFF];
+						state >>>= 8;
+					}
+				}
+				if (k <= maxFrom) {
+					followers |= initial;
+				}
+				state = followers & (ch < 256 ? latin1[ch] : compute(ch));
+				if ((state & accepting) != 0) {
+					// the first match ends after this char
+					return Math.max(i, k + 1 - maxLength);
+				}
+				if (state == 0) {
+					// no match starts before the next char
+					if (k >= maxFrom) {
+						return maxFrom + 1;
+					}
+					i = prefilter.seek(matcher, k + 1, maxFrom, seq);
+					if (i > maxFrom) {
+						return i;
+					}
+					k = i - 1;
+				}
+			}
+			if (end < to || state == 0 && to > maxFrom) {
+				return maxFrom + 1;
+			}
+			// matching might hit the end
+			return Math.max(i, to + 1 - maxLength);
+		}
+	}
+
+	/**
+	 * Checks the positions the prefilter finds with a {@link LazyDfa}. The
+	 * positions where the automaton cannot reach a match or the end of the
+	 * input are skipped.
+	 */
+	static final class DfaSeeker extends Seeker {
+		private final Seeker prefilter;
+		private final Program program;
+
+		DfaSeeker(Seeker prefilter, Program program) {
+			this.prefilter = prefilter;
+			this.program = program;
+		}
+
+		@Override
+		int seek(Matcher matcher, int i, int maxFrom, CharSequence seq) {
+			LazyDfa dfa = matcher.dfa;
+			if (dfa == null || dfa.program != program) {
+				dfa = new LazyDfa(program);
+				matcher.dfa = dfa;
+			}
+			for (;; i++) {
+				i = prefilter.seek(matcher, i, maxFrom, seq);
+				if (i > maxFrom || dfa.mightMatch(matcher, i)) {
+					return i;
+				}
+			}
+		}
+	}
+}
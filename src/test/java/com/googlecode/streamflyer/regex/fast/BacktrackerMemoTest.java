@@ -0,0 +1,109 @@
+/**
+ * Copyright (C) 2011 rwoo@gmx.de
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.googlecode.streamflyer.regex.fast;
+
+import static com.googlecode.streamflyer.regex.fast.RegexAssert.assertSameAsJdk;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests that the {@link Backtracker} matches patterns with ambiguous nested
+ * quantifiers in polynomial time and like java.util.regex.
+ *
+ * @author rwoo
+ *
+ * @since 18.10.2026
+ */
+public class BacktrackerMemoTest {
+
+	@Test
+	public void testAmbiguous() throws Exception {
+		assertTrue(ambiguous("(\\w+\\s?)*$"));
+		assertTrue(ambiguous("(a+)+b"));
+		assertTrue(ambiguous("(x+x+)+y"));
+		assertTrue(ambiguous("((a|b)+c?)*d"));
+		assertTrue(ambiguous("(a*)*b"));
+		assertFalse(ambiguous("(ab)+c"));
+		assertFalse(ambiguous("(\\w+ )+said"));
+	}
+
+	@Test
+	public void testSameResultsAsJdk() throws Exception {
+		assertSameAsJdk("(a+)+b", 0, "aaab aaaa ab");
+		assertSameAsJdk("(\\w+\\s?)*$", 0, "ab c! d e");
+		assertSameAsJdk("(x+x+)+y", 0, "xxxy xxxx xy");
+		assertSameAsJdk("((a|b)+c?)*d", 0, "abcbad abcc d");
+		assertSameAsJdk("(a*)*b", 0, "aab a b");
+		assertSameAsJdk("(?i)(a+)+b", 0, "AaB aAa");
+		// the nodes keep the group of the first body that has repeated it
+		assertSameAsJdk("(?:([ab]){1,5})+", 0, "abababab");
+		assertSameAsJdk("(?:([ab]){1,5}c?)+", 0, "abababcab ab");
+	}
+
+	@Test(timeout = 10000)
+	public void testCatastrophicInputs() throws Exception {
+		StringBuilder a = new StringBuilder();
+		for (int index = 0; index < 500; index++) {
+			a.append('a');
+		}
+		Matcher matcher = Pattern.compile("(a+)+b").matcher(a);
+		assertFalse(matcher.find());
+		assertTrue(matcher.hitEnd());
+
+		// the memo is cleared after each match
+		matcher.reset(a + "b");
+		assertTrue(matcher.find());
+		assertEquals(0, matcher.start());
+		assertEquals(0, matcher.start(1));
+		assertEquals(a.length(), matcher.end(1));
+		matcher.reset(a + "!" + a + "b");
+		assertTrue(matcher.find());
+		assertEquals(a.length() + 1, matcher.start());
+
+		StringBuilder words = new StringBuilder();
+		for (int index = 0; index < 200; index++) {
+			words.append("word ");
+		}
+		words.append('!');
+		matcher = Pattern.compile("(\\w+\\s?)*$").matcher(words);
+		assertTrue(matcher.find());
+		assertEquals(words.length(), matcher.start());
+
+		matcher = Pattern.compile("(x+x+)+y").matcher(a.toString().replace(
+				'a', 'x'));
+		assertFalse(matcher.find());
+
+		// a single attempt takes linear time
+		StringBuilder longer = new StringBuilder();
+		for (int index = 0; index < 100000; index++) {
+			longer.append('a');
+		}
+		matcher = Pattern.compile("(a+)+b").matcher(longer);
+		assertFalse(matcher.lookingAt());
+		assertTrue(matcher.hitEnd());
+	}
+
+	private boolean ambiguous(String regex) {
+		Pattern.Node node = Pattern.compile(regex).matchRoot;
+		return node instanceof Pattern.Backtrack
+				&& ((Pattern.Backtrack) node).program.ambiguous;
+	}
+}
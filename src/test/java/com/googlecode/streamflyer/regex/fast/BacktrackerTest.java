@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) 2011 rwoo@gmx.de
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.googlecode.streamflyer.regex.fast;
+
+import static com.googlecode.streamflyer.regex.fast.RegexAssert.assertFindSameAsJdk;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests that the {@link Backtracker} matches like the nodes when the nodes
+ * give up because the repetitions of a group would recurse too deep.
+ *
+ * @author rwoo
+ *
+ * @since 18.10.2026
+ */
+public class BacktrackerTest {
+
+	@Test
+	public void testSameResultsAsJdk() throws Throwable {
+		// the inputs are long enough for the nodes to give up, and
+		// java.util.regex recurses for each repetition
+		final Throwable[] failure = new Throwable[1];
+		Thread thread = new Thread(null, new Runnable() {
+			@Override
+			public void run() {
+				try {
+					assertSameResultsAsJdk();
+				} catch (Throwable e) {
+					failure[0] = e;
+				}
+			}
+		}, "deep", 256 * 1024 * 1024);
+		thread.start();
+		thread.join();
+		if (failure[0] != null) {
+			throw failure[0];
+		}
+	}
+
+	private void assertSameResultsAsJdk() {
+		String ab = random("ab", 3000, 1);
+		assertFindSameAsJdk("(a|b)*c", 0, ab + "c");
+		assertFindSameAsJdk("(a|b)*c", 0, ab + "c" + ab.substring(0, 100));
+		assertFindSameAsJdk("((a)|b)+", 0, ab);
+		assertFindSameAsJdk("(ab|a)*?b", 0, ab);
+		assertFindSameAsJdk("(?:(a)|b)*?bbbb", 0, ab);
+		assertFindSameAsJdk("x(?:(a)|b)*x", 0, "x" + ab + "x");
+
+		String text = random("ab ", 3000, 2);
+		assertFindSameAsJdk("(\\w+ )+said", 0, text + "said");
+		assertFindSameAsJdk("(?i)(A|B\\s?)+$", 0, text);
+
+		// supplementary chars and case insensitive matching
+		String surrogates = random("a\uD83D\uDE00", 2000, 3);
+		assertFindSameAsJdk("(a|[^a])+", 0, surrogates);
+		assertFindSameAsJdk("(?:(\\w)|.)*$", 0, surrogates);
+		assertFindSameAsJdk("(a|b){2,}?c", Pattern.CASE_INSENSITIVE,
+				ab.toUpperCase() + "c");
+	}
+
+	@Test
+	public void testNoStackOverflow() throws Exception {
+		String ab = random("ab", 1000000, 4);
+		Matcher matcher = Pattern.compile("(a|b)*c").matcher(ab + "c");
+		assertTrue(matcher.find());
+		assertEquals(0, matcher.start());
+		assertEquals(ab.length() + 1, matcher.end());
+		assertEquals(ab.length() - 1, matcher.start(1));
+
+		StringBuilder text = new StringBuilder("x");
+		for (int index = 0; index < 300000; index++) {
+			text.append(index % 3 == 0 ? "b" : "ab");
+		}
+		text.append("y");
+		matcher = Pattern.compile("x((ab|b)+)y").matcher(text);
+		assertTrue(matcher.find());
+		assertEquals(1, matcher.start(1));
+		assertEquals(text.length() - 1, matcher.end(1));
+		assertEquals(text.length() - 3, matcher.start(2));
+
+		// the backtracker hits the end
+		matcher = Pattern.compile("(a|b)*c").matcher(ab);
+		assertFalse(matcher.lookingAt());
+		assertTrue(matcher.hitEnd());
+	}
+
+	/**
+	 * Returns a random text of the given chars. The chars of a surrogate
+	 * pair are not split.
+	 */
+	private String random(String chars, int length, int seed) {
+		Random random = new Random(seed);
+		StringBuilder text = new StringBuilder();
+		while (text.length() < length) {
+			int index = random.nextInt(chars.length());
+			if (Character.isLowSurrogate(chars.charAt(index))) {
+				index--;
+			}
+			text.appendCodePoint(chars.codePointAt(index));
+		}
+		return text.toString();
+	}
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2011 rwoo@gmx.de
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.googlecode.streamflyer.regex.fast;
+
+import static com.googlecode.streamflyer.regex.fast.RegexAssert.assertSameAsJdk;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests that a {@link Pattern.CharTable} matches the same chars as the class
+ * it is built from.
+ *
+ * @author rwoo
+ *
+ * @since 18.10.2026
+ */
+public class CharTableTest {
+
+	/**
+	 * Some supplementary code points, the first and the last one included.
+	 */
+	private static final int[] SUPPLEMENTARY = { 0x10000, 0x1D400, 0x1D7CE,
+			0x1F600, 0x20000, 0x10FFFF };
+
+	@Test
+	public void testCompositeClasses() throws Exception {
+		assertFlattened("[a-z&&[^aeiou]]", 0);
+		assertFlattened("[a-z&&[^aeiou]\\p{Digit}]", 0);
+		assertFlattened("[^\\w\\d]", 0);
+		assertFlattened("[\\s\\p{Punct}x-z]", 0);
+		assertFlattened("[^a-c[x-z]]", 0);
+		assertFlattened("[\\w&&[^\\d]&&[^_]]", 0);
+		assertFlattened("[a-z&&[^aeiou]]", Pattern.CASE_INSENSITIVE);
+		assertFlattened("[\\u00e0-\\u00ff&&[^\\u00f7]]", Pattern.CASE_INSENSITIVE
+				| Pattern.UNICODE_CASE);
+
+		// the nested classes of these patterns have the same meaning in the
+		// JDK 6 and in later versions
+		assertSameAsJdk("[a-z&&[^aeiou]]+", 0, "bcd ea xyz1");
+		assertSameAsJdk("[^\\w\\d]+", 0, "a -+b 1\u00e4.");
+		assertSameAsJdk("[\\s\\p{Punct}x-z]+", 0, "a ,x\ty. b");
+		assertSameAsJdk("[a-z&&[^aeiou]]+", Pattern.CASE_INSENSITIVE,
+				"BcD Ea xYz1");
+	}
+
+	@Test
+	public void testHighSurrogates() throws Exception {
+		// the high surrogates are not in the bitmap
+		assertFlattened("[^a-c[x-z]]", 0);
+		assertFlattened("[\\ud800-\\udbff&&[^\\ud83d]]", 0);
+		assertFlattened("[[a-c&&b]\\ud83d]", 0);
+		assertSameAsJdk("[^a-cx-z]+", 0, "a\uD83D\uDE00b\uD83Dx\uDE00\uD83D");
+		assertSameAsJdk("[[a-c&&b]\\ud83d]+", 0, "b\uD83D\uDE00b\uD83Db");
+
+		// a union lists the high surrogates of a table
+		long[] bits = new long[0x10000 >>> 6];
+		assertTrue(((Pattern.CharProperty) node("[^a-c[x-z]]", 0))
+				.addBmpChars(bits));
+		assertTrue((bits[0xD83D >>> 6] & (1L << 0xD83D)) != 0);
+		assertTrue((bits['b' >>> 6] & (1L << 'b')) == 0);
+	}
+
+	@Test
+	public void testSharedTables() throws Exception {
+		String[] classes = { "\\p{L}", "\\p{Lu}", "\\p{IsL}", "\\p{InGreek}",
+				"\\p{javaLowerCase}", "\\p{javaLetterOrDigit}" };
+		for (String regex : classes) {
+			assertFlattened(regex, 0);
+			Pattern.CharTable table = (Pattern.CharTable) node(regex, 0);
+			Pattern.CharTable other = (Pattern.CharTable) node(regex, 0);
+			assertNotSame(regex, table, other);
+			assertSame(regex, table.bits, other.bits);
+		}
+		assertNotSame(((Pattern.CharTable) node("\\p{L}", 0)).bits,
+				((Pattern.CharTable) node("\\p{Lu}", 0)).bits);
+
+		assertSameAsJdk("\\p{L}+\\s", 0, "ab\u00e4\u0416 1 \uD835\uDC00x\t");
+		assertSameAsJdk("\\p{InGreek}+", 0, "a\u03b1\u03c9b\u0370");
+		assertSameAsJdk("\\p{javaLowerCase}+", 0, "aB\u00e4\u00c4\uD835\uDC1Ax");
+		assertSameAsJdk("[\\p{Lu}\\d]+", 0, "AB1c\u00c4\u00e4");
+		// the POSIX classes are ASCII only
+		assertSameAsJdk("\\p{Alpha}+\\p{Punct}", 0, "ab, c\u00e4! d.");
+	}
+
+	/**
+	 * Asserts that the given class is compiled to a table that matches the
+	 * same chars as the tree of classes the table is built from.
+	 */
+	private void assertFlattened(String regex, int flags) {
+		Pattern.Node node = node(regex, flags);
+		assertTrue(regex, node instanceof Pattern.CharTable);
+		Pattern.CharTable table = (Pattern.CharTable) node;
+		Pattern pattern = Pattern.compile(regex, flags);
+		for (int ch = 0; ch <= 0xFFFF; ch++) {
+			assertSameMatch(table, pattern, ch);
+		}
+		for (int ch : SUPPLEMENTARY) {
+			assertSameMatch(table, pattern, ch);
+		}
+	}
+
+	private void assertSameMatch(Pattern.CharTable table, Pattern pattern,
+			int ch) {
+		String message = pattern + " on " + Integer.toHexString(ch);
+		boolean expected = table.property.isSatisfiedBy(ch);
+		assertEquals(message, expected, table.isSatisfiedBy(ch));
+		assertEquals(message, expected, pattern.matcher(
+				new String(Character.toChars(ch))).matches());
+	}
+
+	/**
+	 * Returns the node the given pattern is compiled to.
+	 */
+	private Pattern.Node node(String regex, int flags) {
+		Pattern.Node node = Pattern.compile(regex, flags).matchRoot;
+		if (node instanceof Pattern.Backtrack) {
+			node = ((Pattern.Backtrack) node).pattern;
+		}
+		return node;
+	}
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright (C) 2011 rwoo@gmx.de
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.googlecode.streamflyer.regex.fast;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import com.googlecode.streamflyer.core.ModifyingReader;
+import com.googlecode.streamflyer.regex.fast.FastRegexSetModifier.Rule;
+
+/**
+ * Tests {@link FastRegexSetModifier}.
+ *
+ * @author rwoo
+ *
+ * @since 18.10.2026
+ */
+public class FastRegexSetModifierTest {
+
+	private String modify(String input, int newNumberOfChars, Object... rules)
+			throws Exception {
+		List<Rule> list = new ArrayList<Rule>();
+		for (int index = 0; index < rules.length; index += 3) {
+			list.add(new Rule((String) rules[index], (Integer) rules[index + 1],
+					(String) rules[index + 2]));
+		}
+		return IOUtils.toString(new ModifyingReader(new StringReader(input),
+				new FastRegexSetModifier(list, 0, newNumberOfChars)));
+	}
+
+	@Test
+	public void testLeftmostMatchWins() throws Exception {
+		assertEquals("AB", modify("ab", 2048, "b", 0, "B", "a", 0, "A"));
+	}
+
+	@Test
+	public void testFirstRuleWinsAtTheSamePosition() throws Exception {
+		assertEquals("1", modify("ab", 2048, "ab", 0, "1", "a", 0, "2"));
+		assertEquals("2b", modify("ab", 2048, "a", 0, "2", "ab", 0, "1"));
+	}
+
+	@Test
+	public void testGroupsAreNumberedPerRule() throws Exception {
+		assertEquals("yx <a> <b>", modify("xy aa bb", 2048, //
+				"(x)(y)", 0, "$2$1", //
+				"(\\w)\\1", 0, "<$1>"));
+		// the back reference must not take the following digit
+		assertEquals("-", modify("aa0", 2048, //
+				"(x)", 0, "", //
+				"(a)\\10", 0, "-"));
+	}
+
+	@Test
+	public void testFlagsArePerRule() throws Exception {
+		assertEquals("- DEF +", modify("ABC DEF def", 2048, //
+				"abc", Pattern.CASE_INSENSITIVE, "-", //
+				"def", 0, "+"));
+		assertEquals("+.", modify("a.b.", 2048, //
+				"a.b", Pattern.LITERAL, "+", //
+				"x # a comment", Pattern.COMMENTS, "-"));
+	}
+
+	@Test
+	public void testSmallBuffer() throws Exception {
+		StringBuilder input = new StringBuilder();
+		StringBuilder expected = new StringBuilder();
+		for (int index = 0; index < 100; index++) {
+			input.append("<a href='x'>edit</a> stream ");
+			expected.append("<a href='y'>modify</a> flow ");
+		}
+		assertEquals(expected.toString(), modify(input.toString(), 1, //
+				"href='[^']*'", 0, "href='y'", //
+				"edit", 0, "modify", //
+				"stream", 0, "flow"));
+	}
+
+	@Test
+	public void testMoveBackReferences() throws Exception {
+		assertEquals("(a)(?:\\4)", FastRegexSetModifier.moveBackReferences(
+				"(a)\\1", 0, 3));
+		assertEquals("[\\1]\\Q\\1\\E\\\\1", FastRegexSetModifier
+				.moveBackReferences("[\\1]\\Q\\1\\E\\\\1", 0, 3));
+		assertEquals("[]\\]](?:)(a)(?:\\4)", FastRegexSetModifier
+				.moveBackReferences("[]\\]](?:)(a)\\1", 0, 3));
+	}
+
+	@Test
+	public void testMoveBackReferencesWithEmbeddedFlags() throws Exception {
+		String tenGroups = "(a)(b)(c)(d)(e)(f)(g)(h)(i)(j)";
+		// the whitespace is skipped, so the back reference is \10
+		assertEquals(tenGroups + "(?x)(?:\\13)\n", FastRegexSetModifier
+				.moveBackReferences(tenGroups + "(?x)\\1 0", 0, 3));
+		assertEquals(tenGroups + "(?i-x)(?:\\4) 0", FastRegexSetModifier
+				.moveBackReferences(tenGroups + "(?i-x)\\1 0",
+						Pattern.COMMENTS, 3));
+		// the flags apply to the group only
+		assertEquals(tenGroups + "(?x:(?:\\13))(?:\\4) 0",
+				FastRegexSetModifier.moveBackReferences(tenGroups
+						+ "(?x:\\1 0)\\1 0", 0, 3));
+		assertEquals("((?x))(a)(?:\\4) 0", FastRegexSetModifier
+				.moveBackReferences("((?x))(a)\\1 0", 0, 3));
+	}
+
+	@Test
+	public void testEmbeddedComments() throws Exception {
+		// the comment at the end does not hide the closing parentheses
+		assertEquals("-+", modify("aab", 2048, //
+				"(x)", 0, "", //
+				"(a)(?x) \\1 # a comment", 0, "-", //
+				"b", 0, "+"));
+	}
+
+	@Test
+	public void testFlagsThatMustBeTheSame() throws Exception {
+		int[] flags = { Pattern.CANON_EQ, Pattern.LINEAR_TIME };
+		for (int flag : flags) {
+			try {
+				modify("a", 2048, "a", flag, "", "b", 0, "");
+				fail("exception expected");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+		assertEquals("-+", modify("ab", 2048, //
+				"a", Pattern.LINEAR_TIME, "-", //
+				"(b)", Pattern.LINEAR_TIME, "+"));
+	}
+
+	@Test
+	public void testRulesAreNotCached() throws Exception {
+		PatternCache cache = PatternCache.getDefault();
+		cache.clear();
+		modify("ab", 2048, "a", 0, "-", "b", 0, "+");
+		// only the combined pattern is cached
+		assertEquals(1, cache.size());
+	}
+}
\ No newline at end of file
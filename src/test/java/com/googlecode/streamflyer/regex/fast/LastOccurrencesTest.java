@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2011 rwoo@gmx.de
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.googlecode.streamflyer.regex.fast;
+
+import static com.googlecode.streamflyer.regex.fast.RegexAssert.assertSameAsJdk;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link LastOccurrences} and the Boyer-Moore search on non-ASCII
+ * text.
+ *
+ * @author rwoo
+ *
+ * @since 18.10.2026
+ */
+public class LastOccurrencesTest {
+
+	@Test
+	public void testCloseChars() throws Exception {
+		// Cyrillic
+		LastOccurrences lastOcc = new LastOccurrences(
+				codePoints("\u043f\u0440\u0438\u0432\u0435\u0442"));
+		assertEquals(1, lastOcc.get('\u043f'));
+		assertEquals(6, lastOcc.get('\u0442'));
+		// the table of the JDK aliases these chars with the chars above
+		assertEquals(0, lastOcc.get('\u043f' + 0x80));
+		assertEquals(0, lastOcc.get('\u043f' & 0x7F));
+		assertEquals(0, lastOcc.get(0));
+		assertEquals(0, lastOcc.get(0xFFFF));
+	}
+
+	@Test
+	public void testDistantChars() throws Exception {
+		// CJK and ASCII
+		LastOccurrences lastOcc = new LastOccurrences(
+				codePoints("ab\u4e2d\u6587a"));
+		assertEquals(5, lastOcc.get('a'));
+		assertEquals(2, lastOcc.get('b'));
+		assertEquals(3, lastOcc.get('\u4e2d'));
+		assertEquals(4, lastOcc.get('\u6587'));
+		assertEquals(0, lastOcc.get('\u4e2d' + 1));
+		assertEquals(0, lastOcc.get('c'));
+		assertEquals(0, lastOcc.get(0xFFFF));
+	}
+
+	@Test
+	public void testOtherCaseAndSupplementary() throws Exception {
+		LastOccurrences lastOcc = new LastOccurrences(codePoints("abc"),
+				codePoints("ABC"));
+		assertEquals(2, lastOcc.get('b'));
+		assertEquals(2, lastOcc.get('B'));
+		// a supplementary code point uses the entry of its lower 16 bits
+		lastOcc = new LastOccurrences(new int[] { 'x', 0x1F600 });
+		assertEquals(2, lastOcc.get(0xF600));
+		assertEquals(1, lastOcc.get('x'));
+	}
+
+	@Test
+	public void testBoyerMooreOnNonAsciiText() throws Exception {
+		String cyrillic = "\u043f\u0440\u0438\u0432\u0435\u0442\u0441\u0442"
+				+ "\u0432\u0443\u044e";
+		assertTrue(Pattern.compile(cyrillic).root instanceof Pattern.BnM);
+		assertSameAsJdk(cyrillic, 0, "\u0440\u0438 " + cyrillic.substring(3)
+				+ cyrillic.substring(0, 9) + " " + cyrillic + cyrillic);
+		String mixed = "ab\u4e2d\u6587cdefg";
+		assertSameAsJdk(mixed, 0, "\u4e2d\u6587cdefgab " + mixed
+				+ " ab\u4e2d\u6587");
+		assertSameAsJdk(mixed, Pattern.CASE_INSENSITIVE, "AB\u4e2d\u6587CDEFg"
+				+ " Ab\u4e2d\u6588cdefg");
+	}
+
+	private int[] codePoints(String literal) {
+		int[] codePoints = new int[literal.length()];
+		for (int index = 0; index < codePoints.length; index++) {
+			codePoints[index] = literal.charAt(index);
+		}
+		return codePoints;
+	}
+}
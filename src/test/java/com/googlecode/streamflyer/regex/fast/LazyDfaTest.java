@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) 2011 rwoo@gmx.de
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.googlecode.streamflyer.regex.fast;
+
+import static com.googlecode.streamflyer.regex.fast.RegexAssert.assertSameAsJdk;
+import static com.googlecode.streamflyer.regex.fast.RegexAssert.assertScanSameAsJdk;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests that the {@link LazyDfa} of {@link Seeker.DfaSeeker} skips only
+ * positions where matching fails without hitting the end.
+ *
+ * @author rwoo
+ *
+ * @since 18.10.2026
+ */
+public class LazyDfaTest {
+
+	@Test
+	public void testClassesAndRepetitions() throws Exception {
+		assertTrue(Pattern.compile("\\d+[a-z]").seeker instanceof Seeker.DfaSeeker);
+		assertSameAsJdk("\\d+[a-z]", 0, "12 3x 45-6y7");
+		assertSameAsJdk("[^\"]*\"", 0, "ab\"c\"");
+		assertSameAsJdk("(\\w+\\s?)*$", 0, "ab c! d");
+		assertSameAsJdk("a(b|c)*d", 0, "abcbx acd ad a");
+		assertSameAsJdk("x(ab|a)?b{2}", 0, "xabb xbb xab xa");
+	}
+
+	@Test
+	public void testAssertions() throws Exception {
+		assertSameAsJdk("\\bab\\w*\\b", 0, "cab ab abc a");
+		assertSameAsJdk("\\Bb+", 0, "b ab bb");
+		assertSameAsJdk("^a+$", Pattern.MULTILINE, "a\naa\nba\na");
+		assertSameAsJdk("a+$", 0, "aa\nb a\r\n");
+		assertSameAsJdk("a+$", Pattern.UNIX_LINES, "aa\nb a\r\n");
+		assertSameAsJdk("a+\\Z|b\\z", 0, "ab\na\n");
+	}
+
+	@Test
+	public void testCaseInsensitiveAndSurrogates() throws Exception {
+		assertSameAsJdk("[a-c]+x", Pattern.CASE_INSENSITIVE, "AbCx ax Bc");
+		assertSameAsJdk("\u00e4+\\w", Pattern.CASE_INSENSITIVE
+				| Pattern.UNICODE_CASE, "\u00c4\u00e4b \u00e4");
+		assertSameAsJdk(".\\d", 0, "\uD83D\uDE001 \uD83D1\uDE00 a");
+		assertSameAsJdk("[^a]+b", 0, "\uD83D\uDE00b x\uDE00\uD83D");
+	}
+
+	@Test
+	public void testTooManyStates() throws Exception {
+		// the states are the sets of the positions of the a's among the last
+		// 12 chars
+		Random random = new Random(1);
+		StringBuilder input = new StringBuilder();
+		for (int index = 0; index < 2000; index++) {
+			input.append(random.nextBoolean() ? 'a' : 'b');
+		}
+		Matcher matcher = assertScanSameAsJdk("[ab]*a[ab]{11}c", 0,
+				input.toString());
+		assertTrue(matcher.dfa.exploded());
+	}
+}
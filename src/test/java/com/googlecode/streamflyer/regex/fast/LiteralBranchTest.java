@@ -0,0 +1,85 @@
+/**
+ * Copyright (C) 2011 rwoo@gmx.de
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.googlecode.streamflyer.regex.fast;
+
+import static com.googlecode.streamflyer.regex.fast.RegexAssert.assertSameAsJdk;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link Pattern.LiteralBranch} and the Aho-Corasick seeker for
+ * alternations of literals.
+ *
+ * @author rwoo
+ *
+ * @since 18.10.2026
+ */
+public class LiteralBranchTest {
+
+	@Test
+	public void testAlternativesAreLookedUpInATrie() throws Exception {
+		assertTrue(root("foo|bar|baz") instanceof Pattern.LiteralBranch);
+		assertTrue(root("(?i)foo|bar") instanceof Pattern.LiteralBranch);
+		assertTrue(root("(?i)foo|(?-i)123") instanceof Pattern.LiteralBranch);
+		// a case sensitive literal might be matched by other chars
+		assertFalse(root("(?i)foo|(?-i)bar") instanceof Pattern.LiteralBranch);
+		assertFalse(root("foo|b.r") instanceof Pattern.LiteralBranch);
+	}
+
+	@Test
+	public void testSameMatchesAsBranch() throws Exception {
+		assertSameAsJdk("foo|bar|baz", 0, "fo bar foobaz ba");
+		assertSameAsJdk("he|she|his|hers", 0, "ushers his h");
+		// the first alternative wins, not the longest one
+		assertSameAsJdk("a|ab|abc", 0, "abc ab a");
+		assertSameAsJdk("abc|ab|a", 0, "abc ab a");
+		assertSameAsJdk("(?:a|ab)c", 0, "abc ac ab");
+		assertSameAsJdk("(ab|abcd)d", 0, "abcd abd abcdd");
+	}
+
+	@Test
+	public void testCaseInsensitive() throws Exception {
+		assertSameAsJdk("foo|bar", Pattern.CASE_INSENSITIVE, "FOO bAr fO");
+		assertSameAsJdk("(?i)foo|(?-i)123", 0, "FoO 123 12");
+		assertSameAsJdk("\u00e4pfel|\u00f6l", Pattern.CASE_INSENSITIVE
+				| Pattern.UNICODE_CASE, "\u00c4PFEL \u00d6l \u00e4pf");
+	}
+
+	@Test
+	public void testSurrogates() throws Exception {
+		assertSameAsJdk("ab|c", 0, "\uD83D\uDE00ab\uD83Dc\uDE00a");
+	}
+
+	@Test
+	public void testAhoCorasickSeeker() throws Exception {
+		Pattern pattern = Pattern.compile("foo|bar|baz");
+		assertTrue(Seeker.prefilter(pattern.matchRoot, pattern.root)
+				instanceof Seeker.AhoCorasickSeeker);
+		StringBuilder input = new StringBuilder();
+		for (int index = 0; index < 10; index++) {
+			input.append("fob ba-r ");
+		}
+		assertSameAsJdk("foo|bar|baz", 0, input + "baz");
+	}
+
+	private Pattern.Node root(String regex) {
+		return Pattern.compile(regex).matchRoot;
+	}
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2011 rwoo@gmx.de
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.googlecode.streamflyer.regex.fast;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link Matcher#toMatchResult()}.
+ *
+ * @author rwoo
+ *
+ * @since 18.10.2026
+ */
+public class MatchSnapshotTest {
+
+	@Test
+	public void testSnapshotIsUnaffectedByTheMatcher() throws Exception {
+		StringBuilder input = new StringBuilder("xx ab=1 cd=2");
+		Matcher matcher = Pattern.compile("(\\w+)=(\\d)(;)?").matcher(input);
+		assertTrue(matcher.find());
+		MatchResult result = matcher.toMatchResult();
+		assertTrue(matcher.find());
+		input.setLength(0);
+
+		assertEquals(3, result.start());
+		assertEquals(7, result.end());
+		assertEquals("ab=1", result.group());
+		assertEquals(3, result.groupCount());
+		assertEquals("ab", result.group(1));
+		assertEquals(6, result.start(2));
+		assertEquals("1", result.group(2));
+		assertNull(result.group(3));
+		assertEquals(-1, result.start(3));
+	}
+
+	@Test
+	public void testGroupsOutsideOfTheMatch() throws Exception {
+		char[] chars = "-ab-".toCharArray();
+		Matcher matcher = Pattern.compile("(?<=(\\w))(b)(?=(-))").matcher(
+				chars, 0, 4);
+		assertTrue(matcher.find());
+		java.util.regex.MatchResult result = //
+		(java.util.regex.MatchResult) matcher.toMatchResult();
+		assertEquals("a", result.group(1));
+		assertEquals("b", result.group(2));
+		assertEquals("-", result.group(3));
+		assertEquals(3, result.start(3));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testSnapshotWithoutMatch() throws Exception {
+		Matcher matcher = Pattern.compile("a").matcher("b");
+		assertFalse(matcher.find());
+		MatchResult result = matcher.toMatchResult();
+		assertEquals(0, result.groupCount());
+		result.group();
+	}
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2011 rwoo@gmx.de
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.googlecode.streamflyer.regex.fast;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.CharArrayWriter;
+import java.io.StringWriter;
+import java.nio.CharBuffer;
+
+import org.junit.Test;
+
+/**
+ * Tests the replacing methods of {@link Matcher} that take a
+ * {@link StringBuilder} or an {@link Appendable}.
+ *
+ * @author rwoo
+ *
+ * @since 18.10.2026
+ */
+public class MatcherAppendableTest {
+
+	@Test
+	public void testReplaceIntoStringBuilder() throws Exception {
+		Pattern pattern = Pattern.compile("(\\d+)");
+		StringBuilder sb = new StringBuilder(">");
+		assertSame(sb, pattern.matcher("a1b22c").replaceAll("<$1>", sb));
+		assertEquals(">a<1>b<22>c", sb.toString());
+
+		sb.setLength(0);
+		pattern.matcher("a1b22c").replaceFirst("-", sb);
+		assertEquals("a-b22c", sb.toString());
+
+		sb.setLength(0);
+		pattern.matcher("abc").replaceAll("-", sb);
+		assertEquals("abc", sb.toString());
+	}
+
+	@Test
+	public void testAppendReplacementToStringBuilder() throws Exception {
+		Matcher matcher = Pattern.compile("cat").matcher(
+				"one cat two cats in the yard");
+		StringBuilder sb = new StringBuilder();
+		while (matcher.find()) {
+			matcher.appendReplacement(sb, "dog");
+		}
+		matcher.appendTail(sb);
+		assertEquals("one dog two dogs in the yard", sb.toString());
+	}
+
+	@Test
+	public void testReplaceIntoWriter() throws Exception {
+		// input of chars, of a string and of another char sequence
+		Pattern pattern = Pattern.compile("(b+)");
+		char[] chars = "xabbcx".toCharArray();
+		StringWriter writer = new StringWriter();
+		pattern.matcher(chars, 1, 4).replaceAll("[$1]", writer);
+		assertEquals("a[bb]c", writer.toString());
+
+		CharArrayWriter charArrayWriter = new CharArrayWriter();
+		pattern.matcher("abbcb").replaceFirst("-", charArrayWriter);
+		assertEquals("a-cb", charArrayWriter.toString());
+
+		writer = new StringWriter();
+		pattern.matcher(CharBuffer.wrap("abbcb")).replaceAll("-", writer);
+		assertEquals("a-c-", writer.toString());
+	}
+
+	@Test
+	public void testLongSpansBetweenMatches() throws Exception {
+		StringBuilder input = new StringBuilder();
+		for (int index = 0; index < 3000; index++) {
+			input.append(index % 10);
+		}
+		input.append('x');
+		String expected = input.substring(0, 3000) + "y";
+		StringWriter writer = new StringWriter();
+		Pattern.compile("x").matcher(input).replaceAll("y", writer);
+		assertEquals(expected, writer.toString());
+		writer = new StringWriter();
+		Pattern.compile("x").matcher(input.toString()).replaceAll("y", writer);
+		assertEquals(expected, writer.toString());
+	}
+
+	@Test
+	public void testAppendReplacementToAppendable() throws Exception {
+		Matcher matcher = Pattern.compile("(a)(b)?").matcher("ab a");
+		Replacement replacement = Replacement.compile("$2$1", 2);
+		StringWriter writer = new StringWriter();
+		while (matcher.find()) {
+			assertSame(matcher, matcher.appendReplacement(writer,
+					replacement));
+		}
+		assertTrue(matcher.appendTail(writer) == writer);
+		assertEquals("ba a", writer.toString());
+	}
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2011 rwoo@gmx.de
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.googlecode.streamflyer.regex.fast;
+
+import static com.googlecode.streamflyer.regex.fast.RegexAssert.assertSameAsJdk;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link Pattern#matcher(char[], int, int)} and
+ * {@link Matcher#reset(char[], int, int)}.
+ *
+ * @author rwoo
+ *
+ * @since 18.10.2026
+ */
+public class MatcherCharArrayTest {
+
+	@Test
+	public void testNodesThatReadTheArray() throws Exception {
+		// Slice, SliceI, SliceU
+		assertSameAsJdk("ab", 0, "xaab-ba-a");
+		assertSameAsJdk("x(?i)ab", 0, "xAB xaB xa");
+		assertSameAsJdk("x(?iu)\u00e4b", 0, "x\u00c4B x\u00e4 xab");
+		// Curly
+		assertSameAsJdk("[a-c]{2,}?d", 0, "abd ad abcab");
+		assertSameAsJdk("\\d+[a-z]", 0, "12 3x 45-6y7");
+		// BnM, BnMI
+		assertSameAsJdk("abcdefgh", 0, "xabcdefgabcdefghabc");
+		assertSameAsJdk("(?i)abcdefgh", 0, "xABCDEFGabcdEFGHabc");
+	}
+
+	@Test
+	public void testReset() throws Exception {
+		Pattern pattern = Pattern.compile("b+");
+		char[] chars = "abba-bbb".toCharArray();
+		Matcher matcher = pattern.matcher(chars, 1, 4);
+		assertTrue(matcher.find());
+		assertEquals(0, matcher.start());
+		assertEquals("bb", matcher.group());
+		assertFalse(matcher.find());
+		assertTrue(matcher.hitEnd());
+
+		matcher.reset(chars, 4, 4);
+		assertTrue(matcher.find());
+		assertEquals(1, matcher.start());
+		assertEquals("bbb", matcher.group());
+
+		// back to a char sequence
+		matcher.reset("xb");
+		assertTrue(matcher.find());
+		assertEquals(1, matcher.start());
+	}
+
+	@Test
+	public void testInvalidBounds() throws Exception {
+		Pattern pattern = Pattern.compile("b");
+		char[] chars = "abc".toCharArray();
+		try {
+			pattern.matcher(chars, 2, 2);
+			fail("the bounds do not fit into the array");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+		try {
+			pattern.matcher("a").reset(chars, -1, 1);
+			fail("the bounds do not fit into the array");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright (C) 2011 rwoo@gmx.de
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.googlecode.streamflyer.regex.fast;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import com.googlecode.streamflyer.core.ModifyingReader;
+
+/**
+ * Tests {@link Matcher#continueUnlessHitEnd(int, int)}.
+ *
+ * @author rwoo
+ *
+ * @since 18.10.2026
+ */
+public class MatcherContinueTest {
+
+	@Test
+	public void testMatchAfterTheOldEndIsFound() throws Exception {
+		StringBuilder input = new StringBuilder("aaaa");
+		Matcher matcher = Pattern.compile("(a|b)*c", Pattern.LINEAR_TIME)
+				.matcher(input);
+		assertFalse(matcher.findUnlessHitEnd(0, 3));
+		assertTrue(matcher.hitEnd());
+		assertEquals(0, matcher.lastFrom());
+
+		input.append("1c");
+		matcher.reset(input);
+		assertTrue(matcher.continueUnlessHitEnd(0, 5));
+		assertEquals(5, matcher.start());
+		assertEquals("c", matcher.group());
+	}
+
+	@Test
+	public void testContinuedFindIsTheSameAsANewFind() throws Exception {
+		StringBuilder input = new StringBuilder("bbx1b");
+		Matcher matcher = Pattern.compile("\\B[^a]{2,}",
+				Pattern.LINEAR_TIME | Pattern.CASE_INSENSITIVE)
+				.matcher(input);
+		// the greedy repetition hits the end
+		assertTrue(matcher.findUnlessHitEnd(0, 4));
+		assertTrue(matcher.hitEnd());
+		assertEquals(1, matcher.lastFrom());
+
+		// the char before the last position is removed, so there is a word
+		// boundary now
+		input.delete(0, 1).append("c");
+		matcher.reset(input);
+		Matcher expected = Pattern.compile("\\B[^a]{2,}",
+				Pattern.LINEAR_TIME | Pattern.CASE_INSENSITIVE)
+				.matcher(input);
+		assertEquals(expected.findUnlessHitEnd(0, 4),
+				matcher.continueUnlessHitEnd(0, 4));
+		assertEquals(expected.start(), matcher.start());
+		assertEquals(expected.lastFrom(), matcher.lastFrom());
+		assertEquals(expected.hitEnd(), matcher.hitEnd());
+	}
+
+	@Test
+	public void testContinuedFindDoesNotStartBeforeFrom() throws Exception {
+		String regex = "\\B|([^a])[^a]\\d";
+		int flags = Pattern.LINEAR_TIME | Pattern.CASE_INSENSITIVE;
+		StringBuilder input = new StringBuilder("a a ");
+		Matcher matcher = Pattern.compile(regex, flags).matcher(input);
+		matcher.findUnlessHitEnd(1, 3);
+		assertTrue(matcher.hitEnd());
+
+		// the chars before the checkpoint have changed
+		input.setLength(0);
+		input.append(" aBx");
+		matcher.reset(input);
+		assertTrue(matcher.continueUnlessHitEnd(2, 4));
+		assertEquals(2, matcher.start());
+		assertEquals(2, matcher.end());
+		assertEquals(2, matcher.lastFrom());
+	}
+
+	@Test
+	public void testModifierRemovesCharsBeforeTheCheckpoint()
+			throws Exception {
+		int flags = Pattern.LINEAR_TIME | Pattern.CASE_INSENSITIVE;
+		assertEquals("A[null]a[null]x[null]a[null]B[null]b a[null]B[null]"
+				+ "x[null]B[null]a[null]B[null]b", IOUtils.toString(
+				new ModifyingReader(new ChunkReader("AaxaBb aBxBaBb", 4),
+						new FastRegexModifier("\\B|([^a])[^a]\\d", flags,
+								"[$1]", 2, 2))));
+		// no chars are duplicated
+		assertEquals("X1111xbX", IOUtils.toString(new ModifyingReader(
+				new ChunkReader("1111xb", 4), new FastRegexModifier(
+						"(((\\W\\Bba)\n|\\b)+){2}", Pattern.LINEAR_TIME,
+						"X", 2, 2))));
+	}
+
+	@Test
+	public void testModifierRemovesCharsBeforeTheLastPosition()
+			throws Exception {
+		String regex = "\\B[^a]{2,}";
+		String input = "xbbx1bc-ac b-\"1\"bb";
+		int flags = Pattern.LINEAR_TIME | Pattern.CASE_INSENSITIVE;
+		assertEquals("xbbx1ac b-", IOUtils.toString(new ModifyingReader(
+				new ChunkReader(input, 4), new FastRegexModifier(regex,
+						flags, "", 0, 5))));
+	}
+
+	/**
+	 * Reads the given number of chars at most on each call.
+	 */
+	private static class ChunkReader extends StringReader {
+
+		private final int chunk;
+
+		ChunkReader(String s, int chunk) {
+			super(s);
+			this.chunk = chunk;
+		}
+
+		@Override
+		public int read(char[] cbuf, int off, int len) throws IOException {
+			return super.read(cbuf, off, Math.min(len, chunk));
+		}
+	}
+}
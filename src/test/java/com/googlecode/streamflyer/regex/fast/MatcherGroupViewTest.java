@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2011 rwoo@gmx.de
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.googlecode.streamflyer.regex.fast;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link Matcher#groupView(int)} and
+ * {@link Matcher#appendGroupTo(Appendable, int)}.
+ *
+ * @author rwoo
+ *
+ * @since 18.10.2026
+ */
+public class MatcherGroupViewTest {
+
+	@Test
+	public void testViewShowsTheGroupOfTheLastMatch() throws Exception {
+		Matcher matcher = Pattern.compile("(\\w+)(=)?").matcher("ab cde=");
+		assertTrue(matcher.find());
+		CharSequence view = matcher.groupView(1);
+		assertEquals("ab", view.toString());
+		assertEquals('b', view.charAt(1));
+		assertNull(matcher.groupView(2));
+
+		assertTrue(matcher.find());
+		assertSame(view, matcher.groupView(1));
+		assertEquals(3, view.length());
+		assertEquals("de", view.subSequence(1, 3).toString());
+		assertEquals("=", matcher.groupView(2).toString());
+	}
+
+	@Test
+	public void testViewOfChars() throws Exception {
+		char[] chars = "xx-ab-xx".toCharArray();
+		Matcher matcher = Pattern.compile("-(\\w+)-").matcher(chars, 2, 4);
+		assertTrue(matcher.find());
+		assertEquals("ab", matcher.groupView(1).toString());
+	}
+
+	@Test
+	public void testAppendGroup() throws Exception {
+		char[] chars = "x12y".toCharArray();
+		Matcher matcher = Pattern.compile("(\\d+)(z)?").matcher(chars, 0, 4);
+		assertTrue(matcher.find());
+		StringBuilder builder = new StringBuilder("<");
+		matcher.appendGroupTo(builder, 1);
+		matcher.appendGroupTo(builder, 2);
+		assertEquals("<12", builder.toString());
+
+		StringWriter writer = new StringWriter();
+		matcher.reset("a34");
+		assertTrue(matcher.find());
+		matcher.appendGroupTo(writer, 0);
+		assertEquals("34", writer.toString());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testViewWithoutMatch() throws Exception {
+		Pattern.compile("a").matcher("b").groupView(0);
+	}
+}
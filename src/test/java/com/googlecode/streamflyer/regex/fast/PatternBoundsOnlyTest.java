@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2011 rwoo@gmx.de
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.googlecode.streamflyer.regex.fast;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import com.googlecode.streamflyer.core.ModifyingReader;
+
+/**
+ * Tests {@link Pattern#BOUNDS_ONLY}.
+ *
+ * @author rwoo
+ *
+ * @since 18.10.2026
+ */
+public class PatternBoundsOnlyTest {
+
+	@Test
+	public void testOnlyTheBoundsAreRecorded() throws Exception {
+		Pattern pattern = Pattern.compile("(a+)(b)?(c|d)*",
+				Pattern.BOUNDS_ONLY);
+		Matcher matcher = pattern.matcher("xaabcdx ad");
+		assertEquals(0, matcher.groupCount());
+		assertTrue(matcher.find());
+		assertEquals(1, matcher.start());
+		assertEquals(6, matcher.end());
+		assertTrue(matcher.find());
+		assertEquals("ad", matcher.group());
+		assertFalse(matcher.find());
+	}
+
+	@Test
+	public void testBackReferencesAreRejected() throws Exception {
+		try {
+			Pattern.compile("(a)\\1", Pattern.BOUNDS_ONLY);
+			fail("PatternSyntaxException expected");
+		} catch (PatternSyntaxException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testModifierTracksTheGroupsOnlyIfNeeded() throws Exception {
+		// the groups are not tracked for these replacements
+		assertEquals("<a1>-<b2>", modify("(\\w)(\\d)", "a1-b2", "<$0>"));
+		assertEquals("x-x", modify("(\\w)(\\d)", "a1-b2", "x"));
+		// the groups are needed here
+		assertEquals("1a-2b", modify("(\\w)(\\d)", "a1-b2", "$2$1"));
+		assertEquals("x-b2", modify("(\\w)\\1", "aa-b2", "x"));
+	}
+
+	@Test
+	public void testModifierTakesBoundsOnlyPatternFromTheCache()
+			throws Exception {
+		PatternCache cache = new PatternCache(8);
+		FastRegexModifier.create("(a)b", 0, "<$0>", cache);
+		FastRegexModifier.create("(a)c", 0, "<$1>", cache);
+		long hitCount = cache.getHitCount();
+		cache.compile("(a)b", Pattern.BOUNDS_ONLY);
+		assertEquals(hitCount + 1, cache.getHitCount());
+		cache.compile("(a)c", Pattern.BOUNDS_ONLY);
+		assertEquals(hitCount + 1, cache.getHitCount());
+	}
+
+	@Test
+	public void testModifierCompilesOnlyThePatternItUses() throws Exception {
+		PatternCache cache = new PatternCache(8);
+		FastRegexModifier.create("(a)b", 0, "<$0>", cache);
+		assertEquals(1, cache.size());
+		assertEquals(1, cache.getMissCount());
+		FastRegexModifier.create("(a)c", 0, "<$1>", cache);
+		assertEquals(2, cache.size());
+		assertEquals(2, cache.getMissCount());
+		// the pattern with a back reference cannot have the flag BOUNDS_ONLY
+		FastRegexModifier.create("(a)\\1", 0, "x", cache);
+		assertEquals(3, cache.size());
+		long hitCount = cache.getHitCount();
+		cache.compile("(a)\\1", 0);
+		assertEquals(hitCount + 1, cache.getHitCount());
+		// the same modifiers again
+		FastRegexModifier.create("(a)b", 0, "<$0>", cache);
+		FastRegexModifier.create("(a)c", 0, "<$1>", cache);
+		assertEquals(3, cache.size());
+	}
+
+	private String modify(String regex, String input, String replacement)
+			throws Exception {
+		return IOUtils.toString(new ModifyingReader(new StringReader(input),
+				new FastRegexModifier(regex, 0, replacement)));
+	}
+}
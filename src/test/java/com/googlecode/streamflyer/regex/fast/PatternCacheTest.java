@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2011 rwoo@gmx.de
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.googlecode.streamflyer.regex.fast;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.StringReader;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import com.googlecode.streamflyer.core.ModifyingReader;
+
+/**
+ * Tests {@link PatternCache}.
+ *
+ * @author rwoo
+ *
+ * @since 18.10.2026
+ */
+public class PatternCacheTest {
+
+	@Test
+	public void testPatternIsCompiledOnce() throws Exception {
+		PatternCache cache = new PatternCache(10);
+		Pattern pattern = cache.compile("a+b", 0);
+		assertSame(pattern, cache.compile("a+b", 0));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void testFlagsArePartOfTheKey() throws Exception {
+		PatternCache cache = new PatternCache(10);
+		Pattern pattern = cache.compile("ab", 0);
+		Pattern other = cache.compile("ab", Pattern.CASE_INSENSITIVE);
+		assertNotSame(pattern, other);
+		assertEquals(Pattern.CASE_INSENSITIVE, other.flags());
+		assertEquals(2, cache.getMissCount());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedPatternIsRemoved() throws Exception {
+		PatternCache cache = new PatternCache(2);
+		Pattern a = cache.compile("a", 0);
+		cache.compile("b", 0);
+		// a is used more recently than b
+		assertSame(a, cache.compile("a", 0));
+		cache.compile("c", 0);
+		assertEquals(2, cache.size());
+		assertSame(a, cache.compile("a", 0));
+		assertEquals(3, cache.getMissCount());
+		cache.compile("b", 0);
+		assertEquals(4, cache.getMissCount());
+	}
+
+	@Test(expected = PatternSyntaxException.class)
+	public void testSyntaxErrorIsNotCached() throws Exception {
+		PatternCache cache = new PatternCache(10);
+		try {
+			cache.compile("(a", 0);
+		} finally {
+			assertEquals(0, cache.size());
+		}
+	}
+
+	@Test
+	public void testModifierTakesThePatternFromTheCache() throws Exception {
+		PatternCache cache = new PatternCache(10);
+		for (int n = 0; n < 3; n++) {
+			FastRegexModifier modifier = FastRegexModifier.create("(\\d+)x",
+					0, "<$1>", cache);
+			assertEquals("a<12>b", IOUtils.toString(new ModifyingReader(
+					new StringReader("a12xb"), modifier)));
+		}
+		assertEquals(1, cache.getMissCount());
+		assertEquals(2, cache.getHitCount());
+	}
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright (C) 2011 rwoo@gmx.de
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.googlecode.streamflyer.regex.fast;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.lang.ref.WeakReference;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import com.googlecode.streamflyer.core.ModifyingReader;
+import com.googlecode.streamflyer.regex.OnStreamStandardMatcher;
+
+/**
+ * Tests {@link Pattern#lease()} and {@link Pattern#release(Matcher)}.
+ *
+ * @author rwoo
+ *
+ * @since 18.10.2026
+ */
+public class PatternLeaseTest {
+
+	@Test
+	public void testReleasedMatcherIsLentAgain() throws Exception {
+		Pattern pattern = Pattern.compile("(b+)");
+		Matcher matcher = pattern.lease();
+		matcher.reset("abbc").useTransparentBounds(true).region(1, 3);
+		assertTrue(matcher.find());
+		pattern.release(matcher);
+
+		assertSame(matcher, pattern.lease());
+		// the matcher is reset like a new matcher
+		assertFalse(matcher.hasTransparentBounds());
+		assertEquals(0, matcher.regionEnd());
+		assertNotSame(matcher, pattern.lease());
+		matcher.reset("xbbb");
+		assertTrue(matcher.find());
+		assertEquals("bbb", matcher.group(1));
+	}
+
+	@Test
+	public void testMatcherOfAnotherPatternIsDiscarded() throws Exception {
+		Pattern pattern = Pattern.compile("a");
+		Matcher matcher = pattern.lease();
+		matcher.usePattern(Pattern.compile("b"));
+		pattern.release(matcher);
+		assertNotSame(matcher, pattern.lease());
+	}
+
+	@Test
+	public void testMatcherIsReleasedTwiceOnlyOnce() throws Exception {
+		Pattern pattern = Pattern.compile("a");
+		Matcher matcher = pattern.lease();
+		pattern.release(matcher);
+		pattern.release(matcher);
+		assertSame(matcher, pattern.lease());
+		assertNotSame(matcher, pattern.lease());
+	}
+
+	@Test
+	public void testReleasedMatcherIsNotRead() throws Exception {
+		Pattern pattern = Pattern.compile("(b+)");
+		Matcher matcher = pattern.lease();
+		matcher.reset("abbc");
+		assertTrue(matcher.find());
+		CharSequence view = matcher.groupView(1);
+		assertEquals("bb", view.toString());
+		pattern.release(matcher);
+		try {
+			matcher.groupView(1);
+			fail("exception expected");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		try {
+			matcher.appendGroupTo(new StringBuilder(), 1);
+			fail("exception expected");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		try {
+			view.length();
+			fail("exception expected");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testReleasedMatcherDoesNotKeepTheInput() throws Exception {
+		Pattern pattern = Pattern.compile("(a|b)*c", Pattern.LINEAR_TIME);
+		Matcher matcher = pattern.lease();
+		StringBuilder input = new StringBuilder("abab");
+		matcher.reset(input);
+		// the VM saves a checkpoint that refers to the input
+		assertFalse(matcher.findUnlessHitEnd(0, 3));
+		assertTrue(matcher.hitEnd());
+		pattern.release(matcher);
+
+		WeakReference<StringBuilder> reference;
+		reference = new WeakReference<StringBuilder>(input);
+		input = null;
+		for (int n = 0; n < 50 && reference.get() != null; n++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertTrue(reference.get() == null);
+		assertSame(matcher, pattern.lease());
+	}
+
+	@Test
+	public void testModifierWithoutPattern() throws Exception {
+		try {
+			new FastRegexModifier((Pattern) null, "x", 0, 2048);
+			fail("exception expected");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testSubclassWithAnotherMatcher() throws Exception {
+		FastRegexModifier modifier = new FastRegexModifier() {
+			{
+				init(new OnStreamStandardMatcher(java.util.regex.Pattern
+						.compile("(\\d+)x").matcher("")),
+						new ReplacementProcessor("<$1>"), 0, 2048);
+			}
+		};
+		assertEquals("a<12>b", IOUtils.toString(new ModifyingReader(
+				new StringReader("a12xb"), modifier)));
+	}
+
+	@Test
+	public void testModifiersShareTheMatcher() throws Exception {
+		Pattern pattern = Pattern.compile("(\\d+)x");
+		for (int n = 0; n < 3; n++) {
+			FastRegexModifier modifier = new FastRegexModifier(pattern,
+					"<$1>", 0, 2048);
+			assertEquals("a<12>b", IOUtils.toString(new ModifyingReader(
+					new StringReader("a12xb"), modifier)));
+		}
+	}
+}
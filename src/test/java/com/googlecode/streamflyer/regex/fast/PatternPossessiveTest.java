@@ -0,0 +1,119 @@
+/**
+ * Copyright (C) 2011 rwoo@gmx.de
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.googlecode.streamflyer.regex.fast;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests that greedy repetitions become possessive if the next node cannot
+ * match where a match of the repeated atom starts.
+ *
+ * @author rwoo
+ *
+ * @since 18.10.2026
+ */
+public class PatternPossessiveTest {
+
+	@Test
+	public void testDisjointRepetitionsArePossessive() throws Exception {
+		assertEquals(Pattern.POSSESSIVE, typeOf("\\d+[a-z]"));
+		assertEquals(Pattern.POSSESSIVE, typeOf("[^\"]*\""));
+		assertEquals(Pattern.POSSESSIVE, typeOf("(?:\\d)+x"));
+		assertEquals(Pattern.POSSESSIVE, typeOf("a{1,3}b"));
+	}
+
+	@Test
+	public void testRepetitionsThatMightGiveBackStayGreedy()
+			throws Exception {
+		assertEquals(Pattern.GREEDY, typeOf("\\w+\\d"));
+		assertEquals(Pattern.GREEDY, typeOf("[^\"]*[a\"]"));
+		assertEquals(Pattern.GREEDY, typeOf("(ab)+a"));
+		assertEquals(Pattern.GREEDY, typeOf("a*(?=a)"));
+		// the next node can match the empty string
+		assertEquals(Pattern.GREEDY, typeOf("\\d+x?\\d"));
+		// the repetition is fixed
+		assertEquals(Pattern.GREEDY, typeOf("\\d{3}[a-z]"));
+		// lazy repetitions are not changed
+		assertEquals(Pattern.LAZY, typeOf("\\d+?[a-z]"));
+		// the repetition captures a group
+		assertEquals(Pattern.GREEDY, typeOf("(\\d)+x"));
+		assertEquals(Pattern.GREEDY, typeOf("(?:(\\d)y)+x"));
+	}
+
+	@Test
+	public void testGroupsInAnEnclosingRepetitionAreTheSame()
+			throws Exception {
+		String[][] cases = { { "(?:(a)*b)+", "abaabb" },
+				{ "(?:(a){0,2}x)+", "axaxx" },
+				{ "(?:([ab]){1,5})+", "abababab" },
+				{ "(?:(\n){0,2}[a-z])+", "\n\nab\nc" },
+				{ "(?:(?:(a)c)*b)+", "acbacacbb" } };
+		for (String[] c : cases) {
+			Matcher matcher = Pattern.compile(c[0]).matcher(c[1]);
+			java.util.regex.Matcher expected = java.util.regex.Pattern
+					.compile(c[0]).matcher(c[1]);
+			while (expected.find()) {
+				assertEquals(c[0], true, matcher.find());
+				assertEquals(c[0], expected.start(), matcher.start());
+				assertEquals(c[0], expected.end(), matcher.end());
+				assertEquals(c[0], expected.start(1), matcher.start(1));
+				assertEquals(c[0], expected.end(1), matcher.end(1));
+			}
+			assertEquals(c[0], false, matcher.find());
+		}
+	}
+
+	@Test
+	public void testMatchesAreTheSame() throws Exception {
+		String[] regexes = { "\\d+[a-z]", "[^\"]*\"", "(\\d)+x", "a{1,3}b",
+				"\\w+\\d", "[^\"]*[a\"]", "(ab)+a", "\\d+x?\\d" };
+		String input = "12ab 3\"x\"a\" 45x ab aaab abab4 12x3 \"\"";
+		for (String regex : regexes) {
+			Matcher matcher = Pattern.compile(regex).matcher(input);
+			java.util.regex.Matcher expected = java.util.regex.Pattern
+					.compile(regex).matcher(input);
+			while (expected.find()) {
+				assertEquals(regex, true, matcher.find());
+				assertEquals(regex, expected.group(), matcher.group());
+				assertEquals(regex, expected.start(), matcher.start());
+			}
+			assertEquals(regex, false, matcher.find());
+		}
+	}
+
+	/**
+	 * Returns the type of the first repetition of the given pattern.
+	 */
+	private int typeOf(String regex) {
+		Pattern.Node node = Pattern.compile(regex).matchRoot;
+		if (node instanceof Pattern.Backtrack) {
+			node = ((Pattern.Backtrack) node).pattern;
+		}
+		while (node != null) {
+			if (node instanceof Pattern.Curly) {
+				return ((Pattern.Curly) node).type;
+			} else if (node instanceof Pattern.GroupCurly) {
+				return ((Pattern.GroupCurly) node).type;
+			}
+			node = node.next;
+		}
+		throw new IllegalArgumentException(regex);
+	}
+}
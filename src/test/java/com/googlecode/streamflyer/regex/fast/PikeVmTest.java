@@ -0,0 +1,112 @@
+/**
+ * Copyright (C) 2011 rwoo@gmx.de
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.googlecode.streamflyer.regex.fast;
+
+import static com.googlecode.streamflyer.regex.fast.RegexAssert.assertSameAsJdk;
+import static com.googlecode.streamflyer.regex.fast.RegexAssert.assertScanSameAsJdk;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+/**
+ * Tests that a pattern compiled with {@link Pattern#LINEAR_TIME} is matched
+ * by the {@link PikeVm} like the backtracking nodes match it.
+ *
+ * @author rwoo
+ *
+ * @since 18.10.2026
+ */
+public class PikeVmTest {
+
+	@Test
+	public void testGroupsAndRepetitions() throws Exception {
+		assertTrue(Pattern.compile("(a|b)*c", Pattern.LINEAR_TIME).root instanceof Pattern.LinearStart);
+		assertSameAsJdk("(a|b)*c", Pattern.LINEAR_TIME, "abac bc ab");
+		assertSameAsJdk("(\\w+\\s?)*$", Pattern.LINEAR_TIME, "ab c! d");
+		assertSameAsJdk("a(b|c)*?d", Pattern.LINEAR_TIME, "abcbx acd ad a");
+		assertSameAsJdk("(x)(ab|a)?b{2,3}", Pattern.LINEAR_TIME,
+				"xabbb xbb xab xa");
+		assertSameAsJdk("(?:(a)|b)+", Pattern.LINEAR_TIME, "ab ba b");
+		assertSameAsJdk("^(\\d+)-(\\d*)$", Pattern.LINEAR_TIME
+				| Pattern.MULTILINE, "12-3\n4-\n-5\n");
+	}
+
+	@Test
+	public void testAssertions() throws Exception {
+		assertSameAsJdk("\\bab\\w*\\b", Pattern.LINEAR_TIME, "cab ab abc a");
+		assertSameAsJdk("\\B(b+)", Pattern.LINEAR_TIME, "b ab bb");
+		assertSameAsJdk("a+$", Pattern.LINEAR_TIME, "aa\nb a\r\n");
+		assertSameAsJdk("a+\\Z|b\\z", Pattern.LINEAR_TIME, "ab\na\n");
+	}
+
+	@Test
+	public void testCaseInsensitiveAndSurrogates() throws Exception {
+		assertSameAsJdk("([a-c]+)x", Pattern.LINEAR_TIME
+				| Pattern.CASE_INSENSITIVE, "AbCx ax Bc");
+		assertSameAsJdk("(\u00e4)+\\w", Pattern.LINEAR_TIME
+				| Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE,
+				"\u00c4\u00e4b \u00e4");
+		assertSameAsJdk("(.)\\d", Pattern.LINEAR_TIME,
+				"\uD83D\uDE001 \uD83D1\uDE00 a");
+		assertSameAsJdk("[^a]+b", Pattern.LINEAR_TIME,
+				"\uD83D\uDE00b x\uDE00\uD83D");
+	}
+
+	@Test(timeout = 10000)
+	public void testNoCatastrophicBacktracking() throws Exception {
+		StringBuilder input = new StringBuilder();
+		for (int index = 0; index < 100000; index++) {
+			input.append('a');
+		}
+		String text = input.toString();
+		Matcher matcher = Pattern.compile("(a|aa)*b", Pattern.LINEAR_TIME)
+				.matcher(text);
+		assertFalse(matcher.find());
+		assertTrue(matcher.hitEnd());
+		matcher = Pattern.compile("(a+)+b", Pattern.LINEAR_TIME).matcher(
+				text + "b");
+		assertTrue(matcher.find());
+		assertEquals(0, matcher.start());
+		assertEquals(text.length(), matcher.end(1));
+		assertScanSameAsJdk("(a|aa)*b", Pattern.LINEAR_TIME, "aaaaaaaaaaab");
+	}
+
+	@Test
+	public void testUnsupportedPatterns() throws Exception {
+		assertUnsupported("(a)\\1");
+		assertUnsupported("a(?=b)");
+		assertUnsupported("a(?!b)");
+		assertUnsupported("(?<=a)b");
+		assertUnsupported("(?<!a)b");
+		assertUnsupported("(?>a|ab)c");
+		assertUnsupported("a++b");
+	}
+
+	private void assertUnsupported(String regex) {
+		try {
+			Pattern.compile(regex, Pattern.LINEAR_TIME);
+			fail("pattern " + regex + " is supported in linear time mode");
+		} catch (PatternSyntaxException e) {
+			// expected
+		}
+		Pattern.compile(regex);
+	}
+}
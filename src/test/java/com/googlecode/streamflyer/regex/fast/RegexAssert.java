@@ -0,0 +1,159 @@
+/**
+ * Copyright (C) 2011 rwoo@gmx.de
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.googlecode.streamflyer.regex.fast;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the results of a {@link Pattern} with the results of
+ * java.util.regex, i.e. of plain backtracking at each position.
+ *
+ * @author rwoo
+ *
+ * @since 18.10.2026
+ */
+final class RegexAssert {
+
+	private RegexAssert() {
+		super();
+	}
+
+	/**
+	 * Asserts that the given pattern finds the same matches and groups in
+	 * the given input and in each prefix of it as java.util.regex, and that
+	 * it reports the same <code>hitEnd</code> and <code>requireEnd</code>.
+	 * Also asserts that {@link Matcher#findUnlessHitEnd(int, int)} stops at
+	 * the first position where matching succeeds or hits the end. Each
+	 * input is matched as a {@link CharSequence} and as a char array.
+	 */
+	static void assertSameAsJdk(String regex, int flags, String input) {
+		Pattern pattern = Pattern.compile(regex, flags);
+		// java.util.regex does not know LINEAR_TIME
+		java.util.regex.Pattern expected = java.util.regex.Pattern.compile(
+				regex, flags & ~Pattern.LINEAR_TIME);
+		for (int length = 0; length <= input.length(); length++) {
+			String text = input.substring(0, length);
+			assertFind(expected, pattern.matcher(text), text);
+			assertFind(expected, matcher(pattern, text), text);
+			for (int from = 0; from <= length; from++) {
+				assertFindUnlessHitEnd(expected, pattern.matcher(text), text,
+						from);
+				assertFindUnlessHitEnd(expected, matcher(pattern, text), text,
+						from);
+			}
+		}
+	}
+
+	/**
+	 * Asserts that the given pattern finds the same matches and groups in
+	 * the given input as java.util.regex, and that it reports the same
+	 * <code>hitEnd</code> and <code>requireEnd</code>. Unlike
+	 * {@link #assertSameAsJdk(String, int, String)}, the prefixes of the
+	 * input are not matched, so the input might be long.
+	 */
+	static void assertFindSameAsJdk(String regex, int flags, String input) {
+		Pattern pattern = Pattern.compile(regex, flags);
+		java.util.regex.Pattern expected = java.util.regex.Pattern.compile(
+				regex, flags & ~Pattern.LINEAR_TIME);
+		assertFind(expected, pattern.matcher(input), input);
+		assertFind(expected, matcher(pattern, input), input);
+	}
+
+	/**
+	 * Asserts that {@link Matcher#findUnlessHitEnd(int, int)} gives the same
+	 * results as probing each position with java.util.regex when it is
+	 * called on the same matcher again and again, each time from the
+	 * position after the position the last call has stopped at. Returns the
+	 * matcher.
+	 */
+	static Matcher assertScanSameAsJdk(String regex, int flags, String input) {
+		java.util.regex.Pattern expected = java.util.regex.Pattern.compile(
+				regex, flags & ~Pattern.LINEAR_TIME);
+		Matcher matcher = Pattern.compile(regex, flags).matcher(input);
+		for (int from = 0; from <= input.length();) {
+			from = assertFindUnlessHitEnd(expected, matcher, input, from) + 1;
+		}
+		return matcher;
+	}
+
+	/**
+	 * Returns a matcher that matches the given text in the middle of a char
+	 * array, so the chars around the text must not be read.
+	 */
+	private static Matcher matcher(Pattern pattern, String text) {
+		char[] chars = (text + text + text).toCharArray();
+		return pattern.matcher(chars, text.length(), text.length());
+	}
+
+	private static void assertFind(java.util.regex.Pattern pattern,
+			Matcher matcher, String text) {
+		String message = pattern + " in \"" + text + "\"";
+		java.util.regex.Matcher expected = pattern.matcher(text);
+		boolean found;
+		do {
+			found = expected.find();
+			assertEquals(message, found, matcher.find());
+			assertEquals(message, expected.hitEnd(), matcher.hitEnd());
+			assertEquals(message, expected.requireEnd(), matcher.requireEnd());
+			if (found) {
+				assertGroups(message, expected, matcher);
+			}
+		} while (found);
+	}
+
+	/**
+	 * Returns the position the call has stopped at.
+	 */
+	private static int assertFindUnlessHitEnd(
+			java.util.regex.Pattern pattern, Matcher matcher, String text,
+			int from) {
+		String message = pattern + " in \"" + text + "\" from " + from;
+		java.util.regex.Matcher expected = pattern.matcher(text);
+		expected.useTransparentBounds(true);
+		expected.useAnchoringBounds(false);
+		int maxFrom = text.length();
+		int lastFrom = from;
+		boolean found = false;
+		for (; lastFrom <= maxFrom; lastFrom++) {
+			expected.region(lastFrom, text.length());
+			found = expected.lookingAt();
+			if (found || expected.hitEnd()) {
+				break;
+			}
+		}
+		assertEquals(message, found, matcher.findUnlessHitEnd(from, maxFrom));
+		assertEquals(message, lastFrom, matcher.lastFrom());
+		if (lastFrom <= maxFrom) {
+			assertEquals(message, expected.hitEnd(), matcher.hitEnd());
+		}
+		if (found) {
+			assertGroups(message, expected, matcher);
+		}
+		return lastFrom;
+	}
+
+	private static void assertGroups(String message,
+			java.util.regex.Matcher expected, Matcher matcher) {
+		assertEquals(message, expected.groupCount(), matcher.groupCount());
+		for (int group = 0; group <= expected.groupCount(); group++) {
+			assertEquals(message, expected.start(group), matcher.start(group));
+			assertEquals(message, expected.end(group), matcher.end(group));
+			assertEquals(message, expected.group(group), matcher.group(group));
+		}
+	}
+}
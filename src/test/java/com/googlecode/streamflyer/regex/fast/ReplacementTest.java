@@ -0,0 +1,161 @@
+/**
+ * Copyright (C) 2011 rwoo@gmx.de
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.googlecode.streamflyer.regex.fast;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import com.googlecode.streamflyer.core.ModifyingReader;
+
+/**
+ * Tests {@link Replacement} and {@link ReplacementProcessor}.
+ *
+ * @author rwoo
+ *
+ * @since 18.10.2026
+ */
+public class ReplacementTest {
+
+	private String replaceAll(String regex, String input, String replacement) {
+		Pattern pattern = Pattern.compile(regex);
+		Matcher matcher = pattern.matcher(input);
+		Replacement compiled = Replacement.compile(replacement,
+				matcher.groupCount());
+		StringBuffer buffer = new StringBuffer();
+		while (matcher.find()) {
+			matcher.appendReplacement(buffer, compiled);
+		}
+		matcher.appendTail(buffer);
+		return buffer.toString();
+	}
+
+	private String modify(String regex, String input, String replacement,
+			int newNumberOfChars) throws Exception {
+		return IOUtils.toString(new ModifyingReader(new StringReader(input),
+				new FastRegexModifier(regex, 0, replacement, 0,
+						newNumberOfChars)));
+	}
+
+	@Test
+	public void testLiteralsAndGroups() throws Exception {
+		assertEquals("b=a, d=c", replaceAll("(\\w)(\\w)", "ab, cd", "$2=$1"));
+		assertEquals("[ab], [cd]", replaceAll("\\w+", "ab, cd", "[$0]"));
+		assertFalse(Replacement.compile("x", 0).hasGroupReferences());
+		assertTrue(Replacement.compile("x$0", 0).hasGroupReferences());
+	}
+
+	@Test
+	public void testEscapes() throws Exception {
+		assertEquals("$1\\", replaceAll("(a)", "a", "\\$1\\\\"));
+	}
+
+	@Test
+	public void testNumberTakesOnlyDigitsOfExistingGroups() throws Exception {
+		assertEquals("a0", replaceAll("(a)", "a", "$10"));
+		assertEquals("j", replaceAll("(a)(b)(c)(d)(e)(f)(g)(h)(i)(j)",
+				"abcdefghij", "$10"));
+	}
+
+	@Test
+	public void testGroupThatDoesNotParticipate() throws Exception {
+		assertEquals("<>", replaceAll("(x)?a", "a", "<$1>"));
+		// like ReplacingProcessor
+		assertEquals("<null>", modify("(x)?a", "a", "<$1>", 2048));
+		assertEquals("<null>", modify("(x)?a", "a", "<$1>", 1));
+	}
+
+	@Test
+	public void testModifierParsesLikeReplacingProcessor() throws Exception {
+		// the number takes all digits
+		assertEquals("j", modify("(a)(b)(c)(d)(e)(f)(g)(h)(i)(j)",
+				"abcdefghij", "$10", 2048));
+		assertTrue(Replacement.compileLikeReplacingProcessor("$10")
+				.hasCapturingGroupReferences());
+		// a group that does not exist is not found until a match is replaced
+		FastRegexModifier modifier = new FastRegexModifier("(a)", 0, "$2");
+		assertEquals("b", IOUtils.toString(new ModifyingReader(
+				new StringReader("b"), modifier)));
+		try {
+			modify("(a)", "a", "$10", 2048);
+			fail("exception expected");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+		try {
+			modify("(a)", "a", "$2", 2048);
+			fail("exception expected");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+		String[] replacements = { "$", "$x" };
+		for (String replacement : replacements) {
+			try {
+				Replacement.compileLikeReplacingProcessor(replacement);
+				fail("exception expected for " + replacement);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void testIllegalReplacements() throws Exception {
+		String[] replacements = { "\\", "$", "$x" };
+		for (String replacement : replacements) {
+			try {
+				Replacement.compile(replacement, 1);
+				fail("exception expected for " + replacement);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+		try {
+			Replacement.compile("$2", 1);
+			fail("exception expected");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testModifierReplacementsOfAnyLength() throws Exception {
+		// longer, shorter and of the same length as the match
+		assertEquals("<aa>-<b>", modify("(\\w+)", "aa-b", "<$1>", 2048));
+		assertEquals("a-b", modify("<(\\w+)>", "<a>-<b>", "$1", 2048));
+		assertEquals("ba-dc", modify("(\\w)(\\w)", "ab-cd", "$2$1", 2048));
+		// the replacement does not fit into the initial scratch array
+		StringBuilder input = new StringBuilder();
+		for (int index = 0; index < 100; index++) {
+			input.append("ab ");
+		}
+		assertEquals(input + "|" + input, modify("(.+)", input.toString(),
+				"$1|$1", 10000));
+	}
+
+	@Test
+	public void testModifierWithoutGroupReferences() throws Exception {
+		assertEquals("x-x", modify("\\w+", "aa-b", "x", 1));
+	}
+}
@@ -0,0 +1,248 @@
+/**
+ * Copyright (C) 2011 rwoo@gmx.de
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.googlecode.streamflyer.regex.fast;
+
+import static com.googlecode.streamflyer.regex.fast.RegexAssert.assertSameAsJdk;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests that the {@link Seeker} of a pattern skips only positions where
+ * matching fails without hitting the end.
+ *
+ * @author rwoo
+ *
+ * @since 18.10.2026
+ */
+public class SeekerTest {
+
+	@Test
+	public void testBoyerMoore() throws Exception {
+		assertTrue(seeker("abcdefgh") instanceof Seeker.BnMSeeker);
+		assertSameAsJdk("abcdefgh", 0, "xabcdefgabcdefghabc");
+		assertSameAsJdk("abcdefgh", 0, "abcdabcdefghabcdefgh");
+		assertSameAsJdk("(abcdefgh)+x", 0, "abcdefghabcdefghx-abcdefgh");
+	}
+
+	@Test
+	public void testBoyerMooreCaseInsensitive() throws Exception {
+		assertTrue(Pattern.compile("(?i)abcdefgh").root instanceof Pattern.BnMI);
+		assertTrue(seeker("(?i)abcdefgh") instanceof Seeker.BnMISeeker);
+		assertSameAsJdk("(?i)abcdefgh", 0, "xABCDEFGabcdEFGHabc");
+		assertSameAsJdk("(?i)abcdefgh", 0, "aBcDeFgHAbCdEfGhabcdefg");
+		// searched by the rarest char
+		assertSameAsJdk("(?i)x_y-z", 0, "X_Y-a x_y-Z x_y");
+		// unicode case folding
+		assertTrue(Pattern.compile("(?iu)\u00e4pfelkuchen").root instanceof Pattern.BnMI);
+		assertSameAsJdk("(?iu)\u00e4pfelkuchen", 0,
+				"\u00c4PFELKUCHE \u00c4pfelKuchen \u00e4PFELkuchen");
+		assertSameAsJdk("(?iu)kiss-kiss", 0,
+				"\u212aiss-\u212aiss KISS-kis kiss-\u212aISS");
+		assertSameAsJdk("(?iu)\u03c3\u03bf\u03c6\u03af\u03b1", 0,
+				"\u03c2\u03bf\u03c6\u03af\u03b1 \u03a3\u039f\u03a6\u038a\u0391");
+		// without unicode case folding non-ASCII chars match themselves only
+		assertSameAsJdk("(?i)\u00e4pfelkuchen", 0,
+				"\u00c4pfelkuchen \u00e4PFELKUCHEN");
+		// supplementary
+		assertFalse(Pattern.compile("(?i)abcd\uD83D\uDE00").root instanceof Pattern.BnMI);
+	}
+
+	@Test
+	public void testFirstLiteral() throws Exception {
+		assertTrue(seeker("ab") instanceof Seeker.SliceSeeker);
+		assertSameAsJdk("ab", 0, "xaab-ba-a");
+		assertSameAsJdk("a", 0, "bab");
+		assertSameAsJdk("ab+c?", 0, "xabbc-ab-a");
+	}
+
+	@Test
+	public void testBegin() throws Exception {
+		assertTrue(seeker("\\Aab") instanceof Seeker.BeginSeeker);
+		assertSameAsJdk("\\Aab", 0, "abab");
+		assertSameAsJdk("\\Aab", 0, "xab");
+		assertSameAsJdk("\\A(a|b)+", 0, "abac");
+	}
+
+	@Test
+	public void testFirstChars() throws Exception {
+		assertTrue(prefilter("[xy]+z") instanceof Seeker.FirstCharsSeeker);
+		assertSameAsJdk("[xy]+z", 0, "axz-yyz-zz");
+		assertSameAsJdk("[^a-c]d", 0, "adcdxd-");
+		assertSameAsJdk("(?i)[kx]z", 0, "Kz\u212Az-XZ");
+		assertSameAsJdk("\\w?-\\d", 0, "a-1 -2 --3");
+		assertSameAsJdk("(a|)b|c+", 0, "xxab-b-cc");
+		assertSameAsJdk("x*(?=y)", 0, "abxxy");
+	}
+
+	@Test
+	public void testSkippedPositionsAreNotProbed() throws Exception {
+		Matcher matcher = Pattern.compile("abcdefgh").matcher(
+				"xxxxxxxxxxxxxxxxabcdefgh");
+		assertTrue(matcher.findUnlessHitEnd(0, 24));
+		assertEquals(16, matcher.lastFrom());
+		assertEquals(16, matcher.start());
+
+		// the end is hit where the prefix of the literal starts
+		matcher = Pattern.compile("abcdefgh").matcher("xxxxxxxxxabcd");
+		assertFalse(matcher.findUnlessHitEnd(0, 13));
+		assertTrue(matcher.hitEnd());
+		assertEquals(9, matcher.lastFrom());
+	}
+
+	@Test
+	public void testRequiredLiteral() throws Exception {
+		assertTrue(prefilter("\\d{2,3}-abc") instanceof Seeker.LiteralSeeker);
+		assertSameAsJdk("\\d{2,3}-abc", 0, "12-ab 123-abc 1-abc 12-abc");
+		assertSameAsJdk("(x|yy)foo", 0, "xfo yyfoo xfoo");
+		assertSameAsJdk("[a-z]{2}ing\\b", 0, "ringing thing ing");
+		assertSameAsJdk("\\w?-[^a]", 0,
+				"a-\uD83D \uD83D\uDE00-\uD83D\uDE00");
+		// the literal is found in a longer window
+		assertSameAsJdk("a.{0,20}needle", 0, "a-needl a-----needle");
+		assertSameAsJdk("a.{0,20}needle", Pattern.CASE_INSENSITIVE,
+				"A-NEEDLE a-----needle");
+		// the part before the literal is not bounded
+		assertSameAsJdk("\\d+-abc", 0, "12-ab 123-abc");
+		// the part before the literal looks ahead or at the end
+		assertSameAsJdk("(?=\\d)\\w{2}x", 0, "1ax a1x 12");
+		assertSameAsJdk("\\w{0,2}$|ab", 0, "xyab");
+	}
+
+	@Test
+	public void testShiftAnd() throws Exception {
+		// each bit is followed by the next one
+		assertSkipsOnlyFailures("x\\d{2}y", 0, "x1y x12 x12y xx12y");
+		assertSkipsOnlyFailures("abc", Pattern.CASE_INSENSITIVE, "aBd ABC ab");
+		// a bit is followed by several bits
+		assertSkipsOnlyFailures("a(b|cd)e", 0, "abe acde acd ace ab");
+		assertSkipsOnlyFailures("ab?c", 0, "ac abc abb abc");
+		assertSkipsOnlyFailures("x(ab|ac){1,3}y", 0,
+				"xaby xabacy xabacaby xabacabacy xab");
+		// more than eight bits and chars above 255
+		assertSkipsOnlyFailures("[0-9]{3}-[0-9]{2}-[0-9]{4}", 0,
+				"123-45-678 123-45-6789 1-2-3");
+		assertSkipsOnlyFailures("\u00e4\u0416?x", 0,
+				"\u00e4\u0416x \u00e4x \u00e4\u0416");
+		// the properties match surrogate pairs
+		assertSkipsOnlyFailures("a.b", 0,
+				"a\uD83D\uDE00b a\uDE00b a\uD83Db ab");
+		assertSkipsOnlyFailures("[^x]{2}y", 0, "\uD83D\uDE00y x\uD83Dy xy");
+
+		assertSameAsJdk("x(ab|ac){1,3}y", 0, "xabacaby xabacabacy xab");
+		assertSameAsJdk("a.b", 0, "a\uD83D\uDE00b a\uDE00b a\uD83Db ab");
+
+		// assertions, loops and empty matches are not supported
+		assertNull(shiftAnd("\\bab", 0));
+		assertNull(shiftAnd("a+b", 0));
+		assertNull(shiftAnd("a?", 0));
+		// more than 64 bits
+		assertNull(shiftAnd("[a-z]{65}", 0));
+		assertNotNull(shiftAnd("[a-z]{64}", 0));
+	}
+
+	@Test
+	public void testRarestChar() throws Exception {
+		assertEquals(1, Seeker.rarest(codePoints("the")));
+		assertEquals(2, Seeker.rarest(codePoints("e_x")));
+		assertEquals(3, Seeker.rarest(codePoints("caf\u00e9")));
+		// k, i and s match non-ASCII chars with unicode case folding
+		assertEquals(2, Seeker.rarestFolded(codePoints("kiq"), false));
+		assertEquals(0, Seeker.rarestFolded(codePoints("eiks"), true));
+		assertEquals(-1, Seeker.rarestFolded(codePoints("\u00e4ks"), true));
+
+		assertTrue(seeker("the") instanceof Seeker.SliceSeeker);
+		assertSameAsJdk("the", 0, "hhe thh tthe th");
+		assertSameAsJdk("x_y", 0, "y_y x_x _y x_y");
+		assertSameAsJdk("caf\u00e9", 0, "\u00e9caf caf\u00e9 caf");
+		assertSameAsJdk("(?i)the", 0, "HHE tHh tTHE Th");
+		assertSameAsJdk("(?iu)kiss", 0, "KISS \u212aiss kis");
+		assertSameAsJdk("(?iu)eks", 0, "EK\u017f ekk eks ek");
+		// the rare char is the last char of the input
+		assertSameAsJdk("a-c", 0, "a-a-c");
+	}
+
+	private int[] codePoints(String literal) {
+		int[] codePoints = new int[literal.length()];
+		for (int index = 0; index < codePoints.length; index++) {
+			codePoints[index] = literal.charAt(index);
+		}
+		return codePoints;
+	}
+
+	/**
+	 * Asserts that matching fails without hitting the end at each position
+	 * the {@link Seeker.ShiftAndSeeker} of the given pattern skips.
+	 */
+	private void assertSkipsOnlyFailures(String regex, int flags,
+			String input) {
+		Seeker seeker = shiftAnd(regex, flags);
+		assertNotNull(regex, seeker);
+		java.util.regex.Matcher expected = java.util.regex.Pattern.compile(
+				regex, flags).matcher(input);
+		expected.useTransparentBounds(true);
+		expected.useAnchoringBounds(false);
+		Matcher matcher = Pattern.compile(regex, flags).matcher(input);
+		int length = input.length();
+		for (int maxFrom = 0; maxFrom <= length; maxFrom++) {
+			for (int from = 0; from <= maxFrom; from++) {
+				int next = seeker.seek(matcher, from, maxFrom, input);
+				assertTrue(next >= from);
+				for (int q = from; q < next && q <= maxFrom; q++) {
+					String message = regex + " in \"" + input + "\" at " + q
+							+ " skipped from " + from + " to " + maxFrom;
+					expected.region(q, length);
+					assertFalse(message, expected.lookingAt());
+					assertFalse(message, expected.hitEnd());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the {@link Seeker.ShiftAndSeeker} of the given pattern or null
+	 * if the pattern cannot be run this way.
+	 */
+	private Seeker shiftAnd(String regex, int flags) {
+		Pattern pattern = Pattern.compile(regex, flags);
+		Pattern.Node matchRoot = pattern.matchRoot;
+		if (matchRoot instanceof Pattern.Backtrack) {
+			matchRoot = ((Pattern.Backtrack) matchRoot).pattern;
+		}
+		Program program = Program.compile(matchRoot);
+		return program == null ? null : Seeker.ShiftAndSeeker.create(
+				Seeker.prefilter(matchRoot, pattern.root), program);
+	}
+
+	private Seeker seeker(String regex) {
+		return Pattern.compile(regex).seeker;
+	}
+
+	/**
+	 * Returns the prefilter of the given pattern that is not backtracked by
+	 * {@link Backtracker}.
+	 */
+	private Seeker prefilter(String regex) {
+		Pattern pattern = Pattern.compile(regex);
+		return Seeker.prefilter(pattern.matchRoot, pattern.root);
+	}
+}